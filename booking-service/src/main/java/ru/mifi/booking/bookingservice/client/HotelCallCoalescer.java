@@ -0,0 +1,178 @@
+package ru.mifi.booking.bookingservice.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mifi.booking.bookingservice.client.dto.RoomOperationResult;
+import ru.mifi.booking.bookingservice.client.dto.RoomOperationsRequest;
+import ru.mifi.booking.common.exception.ServiceUnavailableException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Склейка конкурентных confirm/release в один вызов POST /api/rooms/operations.
+ *
+ * <p>
+ * Вызывающий поток кладёт операцию в очередь и ждёт свой CompletableFuture.
+ * Поток-сборщик берёт первую операцию, добирает остальные в течение окна (windowMs)
+ * или до maxItems и отдаёт пачку на отправку; пока она летит, собирается следующая.
+ * Ответ hotel-service — по результату на операцию, и каждый ждущий получает свой.
+ * </p>
+ *
+ * <p>
+ * Ретраи всей пачки безопасны: confirm идемпотентен по requestId, release — по bookingId.
+ * Если пачку так и не удалось отправить, все её операции завершаются ServiceUnavailableException,
+ * как и одиночный вызов после исчерпания ретраев. Операции, которые hotel-service отложил с 503
+ * (не уложился в бюджет времени пачки), до {@value #MAX_REQUEUES} раз возвращаются в очередь.
+ * X-Request-Id у пачки один, поэтому исходный id каждой операции едет в её correlationId.
+ * </p>
+ */
+final class HotelCallCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(HotelCallCoalescer.class);
+
+    /**
+     * Сколько раз операция возвращается в очередь, если hotel-service не дошёл до неё в бюджет времени пачки.
+     */
+    private static final int MAX_REQUEUES = 2;
+
+    /**
+     * Операция в очереди. serviceJwt у всех операций равноправен — пачка уходит с токеном последней.
+     */
+    record Pending(RoomOperationsRequest.Operation operation,
+                   String serviceJwt,
+                   CompletableFuture<RoomOperationResult> result,
+                   int requeues) {
+    }
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final BiFunction<RoomOperationsRequest, String, List<RoomOperationResult>> sender;
+    private final long windowNanos;
+    private final int maxItems;
+    private final ExecutorService dispatchers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("hotel-batch-send-", 0).factory());
+    private final Thread collector;
+    private volatile boolean running = true;
+
+    HotelCallCoalescer(BiFunction<RoomOperationsRequest, String, List<RoomOperationResult>> sender,
+                       long windowMs,
+                       int maxItems) {
+        this.sender = sender;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMs));
+        this.maxItems = Math.max(1, maxItems);
+        this.collector = Thread.ofPlatform()
+                .daemon()
+                .name("hotel-batch-collector")
+                .start(this::collectLoop);
+    }
+
+    /**
+     * Поставить операцию в ближайшую пачку.
+     *
+     * @return результат именно этой операции
+     */
+    CompletableFuture<RoomOperationResult> submit(RoomOperationsRequest.Operation operation, String serviceJwt) {
+        CompletableFuture<RoomOperationResult> result = new CompletableFuture<>();
+        if (!running) {
+            result.completeExceptionally(new ServiceUnavailableException("Hotel service client is shutting down"));
+            return result;
+        }
+        Pending pending = new Pending(operation, serviceJwt, result, 0);
+        queue.add(pending);
+        // Гонка с shutdown(): если сборщик уже вышел, операцию никто не заберёт.
+        if (!running && queue.remove(pending)) {
+            result.completeExceptionally(new ServiceUnavailableException("Hotel service client is shutting down"));
+        }
+        return result;
+    }
+
+    /**
+     * Остановить сборщик; операции, оставшиеся в очереди, уходят последней пачкой.
+     */
+    void shutdown() {
+        running = false;
+        collector.interrupt();
+        try {
+            collector.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dispatchers.shutdown();
+    }
+
+    private void collectLoop() {
+        while (running || !queue.isEmpty()) {
+            Pending first = poll(TimeUnit.MILLISECONDS.toNanos(100));
+            if (first == null) {
+                continue;
+            }
+
+            List<Pending> batch = new ArrayList<>(maxItems);
+            batch.add(first);
+            long deadline = System.nanoTime() + windowNanos;
+            while (batch.size() < maxItems) {
+                Pending next = poll(deadline - System.nanoTime());
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+
+            dispatchers.execute(() -> dispatch(batch));
+        }
+    }
+
+    /**
+     * Ждать операцию не дольше timeoutNanos; после shutdown() — без ожидания, только дочистить очередь.
+     */
+    private Pending poll(long timeoutNanos) {
+        if (!running || timeoutNanos <= 0) {
+            return queue.poll();
+        }
+        try {
+            return queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            return queue.poll();
+        }
+    }
+
+    private void dispatch(List<Pending> batch) {
+        RoomOperationsRequest req = new RoomOperationsRequest(batch.stream().map(Pending::operation).toList());
+        String serviceJwt = batch.getLast().serviceJwt();
+
+        List<RoomOperationResult> results;
+        try {
+            results = sender.apply(req, serviceJwt);
+        } catch (RuntimeException ex) {
+            batch.forEach(p -> p.result().completeExceptionally(ex));
+            return;
+        }
+
+        if (results == null || results.size() != batch.size()) {
+            log.warn("Hotel service returned {} results for {} operations",
+                    results == null ? 0 : results.size(), batch.size());
+            ServiceUnavailableException ex =
+                    new ServiceUnavailableException("Hotel service returned malformed operations response");
+            batch.forEach(p -> p.result().completeExceptionally(ex));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Pending p = batch.get(i);
+            RoomOperationResult r = results.get(i);
+            // 503 на операцию — hotel-service исчерпал бюджет времени пачки и её не выполнял: в следующую пачку.
+            if (r.status() == 503 && p.requeues() < MAX_REQUEUES && running) {
+                queue.add(new Pending(p.operation(), p.serviceJwt(), p.result(), p.requeues() + 1));
+                continue;
+            }
+            p.result().complete(r);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ru.mifi.booking.bookingservice.client;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker одной операции hotel-service (recommend, confirm-availability, ...).
+ *
+ * <p>
+ * CLOSED: считаю исходы последних windowSize вызовов; когда их не меньше minimumCalls
+ * и доля сбоев достигла порога — OPEN. В OPEN вызовы не пропускаются вовсе (быстрый 503),
+ * через openNanos — HALF_OPEN: пропускаю halfOpenCalls пробных вызовов; все успешны — снова CLOSED,
+ * любой сбой — опять OPEN на тот же срок.
+ * </p>
+ *
+ * <p>
+ * Сбой — только «hotel-service не ответил по делу»: 5xx, тайм-аут, обрыв соединения.
+ * Отображённые 4xx (409, 404, ...) — это нормальный ответ, для breaker это успех.
+ * Состояние под ReentrantLock, а не synchronized: вызывающие могут быть виртуальными потоками.
+ * </p>
+ */
+final class HotelCircuitBreaker {
+
+    /**
+     * Состояния; code — значение gauge hotel.client.circuit.state.
+     */
+    enum State {
+        CLOSED(0), HALF_OPEN(1), OPEN(2);
+
+        final int code;
+
+        State(int code) {
+            this.code = code;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int recorded;
+    private int next;
+    private int failures;
+    private long openedAt;
+    private int halfOpenStarted;
+    private int halfOpenSucceeded;
+
+    HotelCircuitBreaker(int windowSize,
+                        int minimumCalls,
+                        int failureRatePercent,
+                        long openMs,
+                        int halfOpenCalls,
+                        LongSupplier nanoClock) {
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRatePercent = Math.min(100, Math.max(1, failureRatePercent));
+        this.openNanos = Math.max(0, openMs) * 1_000_000L;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Можно ли выполнить вызов сейчас. true в HALF_OPEN занимает один пробный слот —
+     * по завершении вызова нужно сообщить исход.
+     */
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                halfOpenStarted = 0;
+                halfOpenSucceeded = 0;
+            }
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> false;
+                case HALF_OPEN -> {
+                    if (halfOpenStarted >= halfOpenCalls) {
+                        yield false;
+                    }
+                    halfOpenStarted++;
+                    yield true;
+                }
+            };
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onSuccess() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                if (++halfOpenSucceeded >= halfOpenCalls) {
+                    close();
+                }
+                return;
+            }
+            if (state == State.CLOSED) {
+                record(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onFailure() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                open();
+                return;
+            }
+            if (state == State.CLOSED) {
+                record(true);
+                if (recorded >= minimumCalls && failures * 100 >= failureRatePercent * recorded) {
+                    open();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Вызов не дошёл до исхода (отменён): освободить пробный слот HALF_OPEN, ничего не записывая.
+     */
+    void onIgnored() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && halfOpenStarted > halfOpenSucceeded) {
+                halfOpenStarted--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    State state() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void reset() {
+        lock.lock();
+        try {
+            close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean failure) {
+        if (recorded == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,290 @@
+package ru.mifi.booking.bookingservice.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import ru.mifi.booking.common.exception.ApiException;
+import ru.mifi.booking.common.exception.ServiceUnavailableException;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Защита вызовов hotel-service: circuit breaker на операцию, bulkhead, бюджет ретраев и backoff с jitter.
+ *
+ * <p>
+ * Раньше при деградации hotel-service каждый вызов делал maxAttempts попыток с одинаковыми паузами
+ * 200/500/1000 мс — все вызывающие ретраили синхронно, утраивая нагрузку на лежащий сервис,
+ * а потоки бронирования копились в sleepBackoff. Теперь:
+ * - breaker операции после серии сбоев сразу отдаёт 503, не занимая поток ожиданием тайм-аута;
+ * - bulkhead (семафор) ограничивает одновременные вызовы;
+ * - ретрай возможен, только пока есть токен в общем {@link RetryBudget};
+ * - пауза — decorrelated jitter: случайная между base и 3×предыдущей, не больше cap,
+ *   поэтому ретраи разных вызовов расходятся во времени.
+ * </p>
+ *
+ * <p>
+ * Метрики: hotel.client.circuit.state (0 closed, 1 half-open, 2 open) и hotel.client.calls{outcome}
+ * по операции, hotel.client.bulkhead.available/rejected, hotel.client.retry.budget.balance
+ * и hotel.client.retries{outcome=allowed|budget_exhausted}.
+ * </p>
+ */
+@Component
+public class HotelClientResilience {
+
+    /**
+     * Breaker операции открыт: вызов не выполнялся, ретраить его бессмысленно.
+     */
+    static final class CircuitOpenException extends ServiceUnavailableException {
+        CircuitOpenException(String operationName) {
+            super("Hotel service circuit for '" + operationName + "' is open, failing fast");
+        }
+    }
+
+    private record Operation(HotelCircuitBreaker breaker, Counter success, Counter failure, Counter rejected) {
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final boolean breakerEnabled;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long openMs;
+    private final int halfOpenCalls;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    private final Semaphore bulkhead;
+    private final long bulkheadWaitMs;
+    private final Counter bulkheadRejected;
+
+    private final RetryBudget retryBudget;
+    private final Counter retriesAllowed;
+    private final Counter retriesExhausted;
+    private final long backoffBaseMs;
+    private final long backoffCapMs;
+
+    public HotelClientResilience(
+            MeterRegistry meterRegistry,
+            @Value("${services.hotel-service.circuit-breaker.enabled:true}") boolean breakerEnabled,
+            @Value("${services.hotel-service.circuit-breaker.window-size:50}") int windowSize,
+            @Value("${services.hotel-service.circuit-breaker.minimum-calls:20}") int minimumCalls,
+            @Value("${services.hotel-service.circuit-breaker.failure-rate-percent:50}") int failureRatePercent,
+            @Value("${services.hotel-service.circuit-breaker.open-ms:5000}") long openMs,
+            @Value("${services.hotel-service.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+            @Value("${services.hotel-service.max-concurrent-calls:200}") int maxConcurrentCalls,
+            @Value("${services.hotel-service.permit-wait-ms:2000}") long permitWaitMs,
+            @Value("${services.hotel-service.retry.budget.ratio:0.2}") double budgetRatio,
+            @Value("${services.hotel-service.retry.budget.min-per-second:10}") double budgetMinPerSecond,
+            @Value("${services.hotel-service.retry.budget.max-balance:100}") double budgetMaxBalance,
+            @Value("${services.hotel-service.retry.backoff-ms:200,500,1000}") String backoffMsCsv
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.breakerEnabled = breakerEnabled;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.openMs = openMs;
+        this.halfOpenCalls = halfOpenCalls;
+
+        this.bulkhead = new Semaphore(Math.max(1, maxConcurrentCalls), true);
+        this.bulkheadWaitMs = permitWaitMs;
+        Gauge.builder("hotel.client.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Свободные места bulkhead вызовов hotel-service")
+                .register(meterRegistry);
+        this.bulkheadRejected = Counter.builder("hotel.client.bulkhead.rejected")
+                .description("Вызовы hotel-service, не дождавшиеся места в bulkhead")
+                .register(meterRegistry);
+
+        this.retryBudget = new RetryBudget(budgetRatio, budgetMinPerSecond, budgetMaxBalance, System::nanoTime);
+        Gauge.builder("hotel.client.retry.budget.balance", retryBudget, RetryBudget::balance)
+                .description("Токены бюджета ретраев к hotel-service")
+                .register(meterRegistry);
+        this.retriesAllowed = retriesCounter("allowed");
+        this.retriesExhausted = retriesCounter("budget_exhausted");
+
+        // Прежний список пауз задаёт границы jitter: base — первая пауза, cap — наибольшая.
+        long[] backoff = parseBackoff(backoffMsCsv);
+        this.backoffBaseMs = backoff[0];
+        this.backoffCapMs = Arrays.stream(backoff).max().orElse(backoff[0]);
+    }
+
+    /**
+     * Одна попытка вызова: breaker, затем место в bulkhead (с ожиданием до permit-wait-ms).
+     *
+     * @throws CircuitOpenException breaker операции открыт
+     * @throws ServiceUnavailableException не дождались места в bulkhead
+     */
+    <T> T call(String operationName, Supplier<T> action) {
+        Operation op = acquireBreaker(operationName);
+        try {
+            if (!bulkhead.tryAcquire(bulkheadWaitMs, TimeUnit.MILLISECONDS)) {
+                op.breaker().onIgnored();
+                bulkheadRejected.increment();
+                throw new ServiceUnavailableException(
+                        "Too many concurrent calls to hotel service during '" + operationName + "'");
+            }
+        } catch (InterruptedException ie) {
+            op.breaker().onIgnored();
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting to call hotel service");
+        }
+
+        try {
+            T result = action.get();
+            onSuccess(op);
+            return result;
+        } catch (RuntimeException ex) {
+            onOutcome(op, ex);
+            throw ex;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Неблокирующая попытка: место в bulkhead берётся без ожидания — нет места, значит ошибка (её можно ретраить).
+     */
+    <T> Mono<T> callAsync(String operationName, Supplier<Mono<T>> action) {
+        return Mono.defer(() -> {
+            Operation op = acquireBreaker(operationName);
+            if (!bulkhead.tryAcquire()) {
+                op.breaker().onIgnored();
+                bulkheadRejected.increment();
+                return Mono.error(new ServiceUnavailableException(
+                        "Too many concurrent calls to hotel service during '" + operationName + "'"));
+            }
+            return Mono.defer(action)
+                    .doOnSuccess(v -> onSuccess(op))
+                    .doOnError(ex -> onOutcome(op, ex))
+                    .doOnCancel(() -> op.breaker().onIgnored())
+                    .doFinally(signal -> bulkhead.release());
+        });
+    }
+
+    /**
+     * Исходный вызов операции (не ретрай) — пополняет бюджет ретраев.
+     */
+    void onRequest() {
+        retryBudget.onRequest();
+    }
+
+    /**
+     * Разрешён ли ещё один ретрай (забирает токен бюджета).
+     */
+    boolean tryRetry() {
+        if (retryBudget.tryWithdraw()) {
+            retriesAllowed.increment();
+            return true;
+        }
+        retriesExhausted.increment();
+        return false;
+    }
+
+    /**
+     * Следующая пауза decorrelated jitter.
+     *
+     * @param previousMs предыдущая пауза этого вызова (0 — первый ретрай)
+     */
+    long nextBackoffMs(long previousMs) {
+        if (backoffCapMs <= 0) {
+            return 0L;
+        }
+        long base = Math.max(1, backoffBaseMs);
+        long upper = Math.max(base, Math.max(previousMs, base) * 3);
+        long delay = base == upper ? base : ThreadLocalRandom.current().nextLong(base, upper + 1);
+        return Math.min(backoffCapMs, delay);
+    }
+
+    /**
+     * Сбой с точки зрения breaker и ретраев: всё, кроме отображённых 4xx (400/401/403/404/409).
+     */
+    static boolean isFailure(Throwable ex) {
+        return !(ex instanceof ApiException) || ex instanceof ServiceUnavailableException;
+    }
+
+    /**
+     * Закрыть все breaker и восстановить бюджет ретраев (для тестов и ручного восстановления).
+     */
+    public void reset() {
+        operations.values().forEach(op -> op.breaker().reset());
+        retryBudget.reset();
+    }
+
+    private Operation acquireBreaker(String operationName) {
+        Operation op = operations.computeIfAbsent(operationName, this::newOperation);
+        if (breakerEnabled && !op.breaker().tryAcquire()) {
+            op.rejected().increment();
+            throw new CircuitOpenException(operationName);
+        }
+        return op;
+    }
+
+    private void onOutcome(Operation op, Throwable ex) {
+        if (isFailure(ex)) {
+            op.failure().increment();
+            op.breaker().onFailure();
+        } else {
+            onSuccess(op);
+        }
+    }
+
+    private void onSuccess(Operation op) {
+        op.success().increment();
+        op.breaker().onSuccess();
+    }
+
+    private Operation newOperation(String operationName) {
+        HotelCircuitBreaker breaker = new HotelCircuitBreaker(
+                windowSize, minimumCalls, failureRatePercent, openMs, halfOpenCalls, System::nanoTime);
+        Gauge.builder("hotel.client.circuit.state", breaker, b -> b.state().code)
+                .description("Состояние circuit breaker операции hotel-service: 0 closed, 1 half-open, 2 open")
+                .tag("operation", operationName)
+                .register(meterRegistry);
+        return new Operation(
+                breaker,
+                callsCounter(operationName, "success"),
+                callsCounter(operationName, "failure"),
+                callsCounter(operationName, "rejected")
+        );
+    }
+
+    private Counter callsCounter(String operationName, String outcome) {
+        return Counter.builder("hotel.client.calls")
+                .description("Вызовы hotel-service по исходу (rejected — отказ открытого breaker)")
+                .tag("operation", operationName)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private Counter retriesCounter(String outcome) {
+        return Counter.builder("hotel.client.retries")
+                .description("Ретраи вызовов hotel-service: разрешённые и отклонённые бюджетом")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static long[] parseBackoff(String csv) {
+        long[] defaults = {200, 500, 1000};
+        if (csv == null || csv.isBlank()) {
+            return defaults;
+        }
+        try {
+            long[] parsed = Arrays.stream(csv.split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isBlank())
+                    .mapToLong(Long::parseLong)
+                    .toArray();
+            return parsed.length == 0 ? defaults : parsed;
+        } catch (Exception ex) {
+            return defaults;
+        }
+    }
+}
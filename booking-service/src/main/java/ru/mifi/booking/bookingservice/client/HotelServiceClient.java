@@ -1,57 +1,89 @@
 package ru.mifi.booking.bookingservice.client;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.mifi.booking.bookingservice.client.dto.ConfirmAvailabilityBatchRequest;
 import ru.mifi.booking.bookingservice.client.dto.ConfirmAvailabilityRequest;
 import ru.mifi.booking.bookingservice.client.dto.HotelRoomDto;
+import ru.mifi.booking.bookingservice.client.dto.RoomOperationResult;
+import ru.mifi.booking.bookingservice.client.dto.RoomOperationsRequest;
 import ru.mifi.booking.common.dto.ErrorDto;
+import ru.mifi.booking.common.exception.ApiException;
 import ru.mifi.booking.common.exception.ConflictException;
 import ru.mifi.booking.common.exception.BadRequestException;
 import ru.mifi.booking.common.exception.NotFoundException;
 import ru.mifi.booking.common.exception.ServiceUnavailableException;
 import ru.mifi.booking.common.exception.UnauthorizedException;
 import ru.mifi.booking.common.http.RequestHeaders;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Supplier;
 
 @Service
 public class HotelServiceClient {
 
     private final RestTemplate restTemplate;
+    private final WebClient webClient;
     private final ObjectMapper objectMapper;
     private final String baseUrl;
     private final int maxAttempts;
-    private final long[] backoffMs;
+    private final HotelClientResilience resilience;
+    private final HotelCallCoalescer coalescer;
 
     public HotelServiceClient(
             RestTemplate restTemplate,
+            WebClient hotelServiceWebClient,
             ObjectMapper objectMapper,
+            HotelClientResilience resilience,
             @Value("${services.hotel-service.base-url}") String baseUrl,
             @Value("${services.hotel-service.retry.max-attempts:3}") int maxAttempts,
-            @Value("${services.hotel-service.retry.backoff-ms:200,500,1000}") String backoffMsCsv
+            @Value("${services.hotel-service.batching.enabled:false}") boolean batchingEnabled,
+            @Value("${services.hotel-service.batching.window-ms:2}") long batchingWindowMs,
+            @Value("${services.hotel-service.batching.max-items:64}") int batchingMaxItems
     ) {
         this.restTemplate = restTemplate;
+        this.webClient = hotelServiceWebClient;
         this.objectMapper = objectMapper;
         this.baseUrl = baseUrl;
         this.maxAttempts = Math.max(1, maxAttempts);
-        this.backoffMs = parseBackoff(backoffMsCsv);
+        this.resilience = resilience;
+        this.coalescer = batchingEnabled
+                ? new HotelCallCoalescer(this::sendOperations, batchingWindowMs, batchingMaxItems)
+                : null;
     }
 
-    public List<HotelRoomDto> recommendRooms(LocalDate start, LocalDate end, String serviceJwt, String requestId) {
+    @PreDestroy
+    void shutdown() {
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+    }
+
+    /**
+     * Top-K рекомендованных номеров: hotel-service сам сортирует и отдаёт не больше limit кандидатов.
+     */
+    public List<HotelRoomDto> recommendRooms(LocalDate start, LocalDate end, int limit, String serviceJwt, String requestId) {
         String url = UriComponentsBuilder
                 .fromUriString(baseUrl)
                 .path("/api/rooms/recommend")
                 .queryParam("start", start)
                 .queryParam("end", end)
+                .queryParam("limit", limit)
                 .toUriString();
 
         HttpHeaders headers = new HttpHeaders();
@@ -75,6 +107,19 @@ public class HotelServiceClient {
     }
 
     public void confirmAvailability(Long roomId, ConfirmAvailabilityRequest req, String serviceJwt, String requestId) {
+        if (coalescer != null) {
+            awaitOperation(new RoomOperationsRequest.Operation(
+                    RoomOperationsRequest.Type.CONFIRM,
+                    roomId,
+                    req.startDate(),
+                    req.endDate(),
+                    req.bookingId(),
+                    req.requestId(),
+                    requestId
+            ), serviceJwt, "confirm-availability");
+            return;
+        }
+
         String url = baseUrl + "/api/rooms/" + roomId + "/confirm-availability";
 
         HttpHeaders headers = new HttpHeaders();
@@ -97,7 +142,134 @@ public class HotelServiceClient {
         }, "confirm-availability");
     }
 
+    /**
+     * Групповая бронь: hotel-service блокирует все номера одной транзакцией (всё или ничего).
+     */
+    public void confirmAvailabilityBatch(ConfirmAvailabilityBatchRequest req, String serviceJwt, String requestId) {
+        String url = baseUrl + "/api/rooms/confirm-availability/batch";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(serviceJwt);
+        if (requestId != null && !requestId.isBlank()) {
+            headers.set(RequestHeaders.X_REQUEST_ID, requestId);
+        }
+
+        HttpEntity<ConfirmAvailabilityBatchRequest> entity = new HttpEntity<>(req, headers);
+
+        executeWithRetry(() -> {
+            try {
+                restTemplate.exchange(url, HttpMethod.POST, entity, Void.class);
+                return null;
+            } catch (HttpClientErrorException ex) {
+                mapAndThrow(ex);
+                return null;
+            }
+        }, "confirm-availability-batch");
+    }
+
+    /**
+     * autoSelect за один вызов: hotel-service сам выбирает лучший свободный номер и блокирует его.
+     *
+     * @return заблокированный номер
+     */
+    public HotelRoomDto reserveRoom(ConfirmAvailabilityRequest req, String serviceJwt, String requestId) {
+        String url = baseUrl + "/api/rooms/reserve";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(serviceJwt);
+        if (requestId != null && !requestId.isBlank()) {
+            headers.set(RequestHeaders.X_REQUEST_ID, requestId);
+        }
+
+        HttpEntity<ConfirmAvailabilityRequest> entity = new HttpEntity<>(req, headers);
+
+        return executeWithRetry(() -> {
+            try {
+                ResponseEntity<HotelRoomDto> resp = restTemplate.exchange(url, HttpMethod.POST, entity, HotelRoomDto.class);
+                HotelRoomDto body = resp.getBody();
+                if (body == null || body.id() == null) {
+                    throw new ServiceUnavailableException("Hotel service returned empty reserve response");
+                }
+                return body;
+            } catch (HttpClientErrorException ex) {
+                mapAndThrow(ex);
+                return null;
+            }
+        }, "reserve");
+    }
+
+    /**
+     * Бронь зафиксирована в booking-service — удержания номеров в hotel-service больше не истекают.
+     * 404 — какое-то удержание уже истекло и снято.
+     */
+    public void commitHolds(List<String> bookingIds, String serviceJwt, String requestId) {
+        if (coalescer != null && bookingIds.size() == 1) {
+            awaitOperation(new RoomOperationsRequest.Operation(
+                    RoomOperationsRequest.Type.COMMIT, null, null, null, bookingIds.getFirst(), null, requestId
+            ), serviceJwt, "commit");
+            return;
+        }
+
+        String url = UriComponentsBuilder
+                .fromUriString(baseUrl)
+                .path("/api/rooms/commit")
+                .queryParam("bookingId", bookingIds.toArray())
+                .toUriString();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(serviceJwt);
+        if (requestId != null && !requestId.isBlank()) {
+            headers.set(RequestHeaders.X_REQUEST_ID, requestId);
+        }
+
+        HttpEntity<Void> entity = new HttpEntity<>(headers);
+
+        executeWithRetry(() -> {
+            try {
+                restTemplate.exchange(url, HttpMethod.POST, entity, Void.class);
+                return null;
+            } catch (HttpClientErrorException ex) {
+                mapAndThrow(ex);
+                return null;
+            }
+        }, "commit");
+    }
+
+    /**
+     * Компенсация по bookingId, когда номер неизвестен (например, reserve не дождался ответа).
+     */
+    public void releaseBooking(String bookingId, String serviceJwt, String requestId) {
+        String url = baseUrl + "/api/rooms/release?bookingId=" + bookingId;
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(serviceJwt);
+        if (requestId != null && !requestId.isBlank()) {
+            headers.set(RequestHeaders.X_REQUEST_ID, requestId);
+        }
+
+        HttpEntity<Void> entity = new HttpEntity<>(headers);
+
+        executeWithRetry(() -> {
+            try {
+                restTemplate.exchange(url, HttpMethod.POST, entity, Void.class);
+                return null;
+            } catch (HttpClientErrorException ex) {
+                mapAndThrow(ex);
+                return null;
+            }
+        }, "release-booking");
+    }
+
     public void release(Long roomId, String bookingId, String serviceJwt, String requestId) {
+        if (coalescer != null) {
+            awaitOperation(new RoomOperationsRequest.Operation(
+                    RoomOperationsRequest.Type.RELEASE, roomId, null, null, bookingId, null, requestId
+            ), serviceJwt, "release");
+            return;
+        }
+
         String url = baseUrl + "/api/rooms/" + roomId + "/release?bookingId=" + bookingId;
 
         HttpHeaders headers = new HttpHeaders();
@@ -119,93 +291,294 @@ public class HotelServiceClient {
         }, "release");
     }
 
+    /**
+     * Поставить операцию в микробатч и дождаться её собственного результата.
+     * Ошибки отображаются так же, как у одиночного вызова (409 → ConflictException и т.д.).
+     */
+    private void awaitOperation(RoomOperationsRequest.Operation operation, String serviceJwt, String operationName) {
+        RoomOperationResult result;
+        try {
+            result = coalescer.submit(operation, serviceJwt).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new ServiceUnavailableException("Hotel service is unavailable during '" + operationName + "'");
+        }
+        checkOperationResult(result, operationName);
+    }
+
+    private void checkOperationResult(RoomOperationResult result, String operationName) {
+        int code = result.status();
+        if (code >= 200 && code < 300) {
+            return;
+        }
+
+        ApiException mapped = toApiException(code, result.message());
+        if (mapped != null) {
+            throw mapped;
+        }
+        throw new ServiceUnavailableException(
+                "Hotel service failed '" + operationName + "' with status " + code);
+    }
+
+    /**
+     * Один HTTP-вызов на пачку операций (с ретраями всей пачки: операции идемпотентны).
+     */
+    private List<RoomOperationResult> sendOperations(RoomOperationsRequest req, String serviceJwt) {
+        String url = baseUrl + "/api/rooms/operations";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(serviceJwt);
+
+        HttpEntity<RoomOperationsRequest> entity = new HttpEntity<>(req, headers);
+
+        return executeWithRetry(() -> {
+            try {
+                ResponseEntity<RoomOperationResult[]> resp =
+                        restTemplate.exchange(url, HttpMethod.POST, entity, RoomOperationResult[].class);
+                RoomOperationResult[] body = resp.getBody();
+                return body == null ? List.of() : Arrays.asList(body);
+            } catch (HttpClientErrorException ex) {
+                mapAndThrow(ex);
+                return List.of();
+            }
+        }, "operations");
+    }
+
+    /**
+     * Неблокирующий вариант {@link #recommendRooms}.
+     */
+    public CompletableFuture<List<HotelRoomDto>> recommendRoomsAsync(LocalDate start, LocalDate end, int limit,
+                                                                     String serviceJwt, String requestId) {
+        String url = UriComponentsBuilder
+                .fromUriString(baseUrl)
+                .path("/api/rooms/recommend")
+                .queryParam("start", start)
+                .queryParam("end", end)
+                .queryParam("limit", limit)
+                .toUriString();
+
+        return executeWithRetryAsync(() -> webClient.get()
+                .uri(url)
+                .headers(h -> serviceHeaders(h, serviceJwt, requestId))
+                .exchangeToMono(resp -> bodyOrError(resp, HotelRoomDto[].class))
+                .map(body -> Arrays.asList(body))
+                .defaultIfEmpty(List.of()), "recommend").toFuture();
+    }
+
+    /**
+     * Неблокирующий вариант {@link #confirmAvailability}: при включённом микробатче операция уходит в ту же пачку.
+     */
+    public CompletableFuture<Void> confirmAvailabilityAsync(Long roomId, ConfirmAvailabilityRequest req,
+                                                            String serviceJwt, String requestId) {
+        if (coalescer != null) {
+            return submitOperation(new RoomOperationsRequest.Operation(
+                    RoomOperationsRequest.Type.CONFIRM,
+                    roomId,
+                    req.startDate(),
+                    req.endDate(),
+                    req.bookingId(),
+                    req.requestId(),
+                    requestId
+            ), serviceJwt, "confirm-availability");
+        }
+
+        String url = baseUrl + "/api/rooms/" + roomId + "/confirm-availability";
+
+        return executeWithRetryAsync(() -> webClient.post()
+                .uri(url)
+                .headers(h -> serviceHeaders(h, serviceJwt, requestId))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(req)
+                .exchangeToMono(resp -> bodyOrError(resp, Void.class)), "confirm-availability").toFuture();
+    }
+
+    /**
+     * Неблокирующий вариант {@link #release}.
+     */
+    public CompletableFuture<Void> releaseAsync(Long roomId, String bookingId, String serviceJwt, String requestId) {
+        if (coalescer != null) {
+            return submitOperation(new RoomOperationsRequest.Operation(
+                    RoomOperationsRequest.Type.RELEASE, roomId, null, null, bookingId, null, requestId
+            ), serviceJwt, "release");
+        }
+
+        String url = baseUrl + "/api/rooms/" + roomId + "/release?bookingId=" + bookingId;
+
+        return executeWithRetryAsync(() -> webClient.post()
+                .uri(url)
+                .headers(h -> serviceHeaders(h, serviceJwt, requestId))
+                .exchangeToMono(resp -> bodyOrError(resp, Void.class)), "release").toFuture();
+    }
+
+    private CompletableFuture<Void> submitOperation(RoomOperationsRequest.Operation operation,
+                                                    String serviceJwt,
+                                                    String operationName) {
+        return coalescer.submit(operation, serviceJwt)
+                .thenAccept(result -> checkOperationResult(result, operationName));
+    }
+
+    private static void serviceHeaders(HttpHeaders headers, String serviceJwt, String requestId) {
+        headers.setBearerAuth(serviceJwt);
+        if (requestId != null && !requestId.isBlank()) {
+            headers.set(RequestHeaders.X_REQUEST_ID, requestId);
+        }
+    }
+
+    /**
+     * Тело 2xx-ответа; 4xx — то же отображение, что у {@link #mapAndThrow}.
+     * Неотображаемый 4xx и 5xx — ошибка, которую ретраит {@link #executeWithRetryAsync}.
+     */
+    private <T> Mono<T> bodyOrError(ClientResponse resp, Class<T> type) {
+        int code = resp.statusCode().value();
+        if (resp.statusCode().is2xxSuccessful()) {
+            return resp.bodyToMono(type);
+        }
+        return resp.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(body -> {
+                    ApiException mapped = resp.statusCode().is4xxClientError()
+                            ? toApiException(code, extractMessage(body))
+                            : null;
+                    return Mono.error(mapped != null
+                            ? mapped
+                            : new RetryableStatusException(code));
+                });
+    }
+
+    /**
+     * Ретраи неблокирующего вызова: те же maxAttempts, бюджет и retryable-ошибки, что у
+     * {@link #executeWithRetry}, но пауза — Mono.delay на таймере Reactor, а не Thread.sleep.
+     */
+    private <T> Mono<T> executeWithRetryAsync(Supplier<Mono<T>> call, String operationName) {
+        return Mono.defer(() -> {
+            resilience.onRequest();
+            return attemptAsync(call, operationName, 1, 0L);
+        });
+    }
+
+    private <T> Mono<T> attemptAsync(Supplier<Mono<T>> call, String operationName, int attempt, long previousDelayMs) {
+        return resilience.callAsync(operationName, call)
+                .onErrorResume(HotelServiceClient::isRetryable, ex -> {
+                    if (attempt >= maxAttempts || !resilience.tryRetry()) {
+                        return Mono.error(ex instanceof ServiceUnavailableException
+                                ? ex
+                                : new ServiceUnavailableException("Hotel service is unavailable during '"
+                                + operationName + "' after " + attempt + " attempt(s)"));
+                    }
+                    long delayMs = resilience.nextBackoffMs(previousDelayMs);
+                    return Mono.delay(Duration.ofMillis(delayMs))
+                            .then(Mono.defer(() -> attemptAsync(call, operationName, attempt + 1, delayMs)));
+                });
+    }
+
+    /**
+     * Ретраим всё, кроме отображённых 4xx (400/401/403/404/409): они не исправятся повтором,
+     * и кроме отказа открытого breaker — он и нужен, чтобы не долбить лежащий сервис.
+     */
+    private static boolean isRetryable(Throwable ex) {
+        return HotelClientResilience.isFailure(ex) && !(ex instanceof HotelClientResilience.CircuitOpenException);
+    }
+
+    /**
+     * 5xx или неотображаемый 4xx в неблокирующем вызове (аналог HttpStatusCodeException у RestTemplate).
+     */
+    private static final class RetryableStatusException extends RuntimeException {
+        RetryableStatusException(int status) {
+            super("Hotel service responded with status " + status);
+        }
+    }
+
+    /**
+     * Вызов с ретраями. Каждая попытка идёт через breaker и bulkhead ({@link HotelClientResilience#call}),
+     * ретрай — только при свободном токене бюджета, пауза — decorrelated jitter.
+     */
     private <T> T executeWithRetry(Supplier<T> action, String operationName) {
+        resilience.onRequest();
         int attempt = 0;
+        long delayMs = 0L;
 
         while (true) {
             try {
                 attempt++;
-                return action.get();
+                return resilience.call(operationName, action);
+
+            } catch (HotelClientResilience.CircuitOpenException ex) {
+                throw ex;
 
             } catch (RestClientException ex) {
-                if (attempt >= maxAttempts) {
+                if (attempt >= maxAttempts || !resilience.tryRetry()) {
                     throw new ServiceUnavailableException(
                             "Hotel service is unavailable during '" + operationName + "' after " + attempt + " attempt(s)"
                     );
                 }
-                sleepBackoff(attempt);
+                delayMs = resilience.nextBackoffMs(delayMs);
+                sleepBackoff(delayMs);
 
             } catch (ServiceUnavailableException ex) {
                 // внутренний фейл (например, бросили мы сами) — тоже ретраим
-                if (attempt >= maxAttempts) {
+                if (attempt >= maxAttempts || !resilience.tryRetry()) {
                     throw ex;
                 }
-                sleepBackoff(attempt);
+                delayMs = resilience.nextBackoffMs(delayMs);
+                sleepBackoff(delayMs);
             }
         }
     }
 
-    private void sleepBackoff(int attempt) {
-        long delay = 0L;
-        if (backoffMs.length > 0) {
-            int idx = Math.min(Math.max(0, attempt - 1), backoffMs.length - 1);
-            delay = backoffMs[idx];
-        }
-
-        if (delay <= 0) {
+    private void sleepBackoff(long delayMs) {
+        if (delayMs <= 0) {
             return;
         }
 
         try {
-            Thread.sleep(delay);
+            Thread.sleep(delayMs);
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
         }
     }
 
-    private long[] parseBackoff(String csv) {
-        if (csv == null || csv.isBlank()) {
-            return new long[]{200, 500, 1000};
-        }
-        try {
-            return Arrays.stream(csv.split(","))
-                    .map(String::trim)
-                    .filter(s -> !s.isBlank())
-                    .mapToLong(Long::parseLong)
-                    .toArray();
-        } catch (Exception ex) {
-            return new long[]{200, 500, 1000};
-        }
-    }
-
     private void mapAndThrow(HttpClientErrorException ex) {
-        HttpStatusCode code = ex.getStatusCode();
+        ApiException mapped = toApiException(ex.getStatusCode().value(), extractMessage(ex));
+        if (mapped != null) {
+            throw mapped;
+        }
 
-        String message = extractMessage(ex);
+        throw ex;
+    }
 
-        if (code.value() == 400) {
-            throw new BadRequestException(message == null || message.isBlank()
+    /**
+     * Отобразить 4xx hotel-service в исключение booking-service (null — статус не отображается).
+     */
+    private ApiException toApiException(int code, String message) {
+        if (code == 400) {
+            return new BadRequestException(message == null || message.isBlank()
                     ? "Bad request to hotel service"
                     : message);
         }
 
-        if (code.value() == 401 || code.value() == 403) {
-            throw new UnauthorizedException("Hotel service rejected service token");
+        if (code == 401 || code == 403) {
+            return new UnauthorizedException("Hotel service rejected service token");
         }
-        if (code.value() == 404) {
-            throw new NotFoundException("Hotel service resource not found");
+        if (code == 404) {
+            return new NotFoundException("Hotel service resource not found");
         }
-        if (code.value() == 409) {
-            throw new ConflictException(message == null || message.isBlank()
+        if (code == 409) {
+            return new ConflictException(message == null || message.isBlank()
                     ? "Hotel service conflict"
                     : message);
         }
 
-        throw ex;
+        return null;
     }
 
     private String extractMessage(HttpClientErrorException ex) {
-        String body = ex.getResponseBodyAsString();
+        return extractMessage(ex.getResponseBodyAsString());
+    }
+
+    private String extractMessage(String body) {
         if (body == null || body.isBlank()) {
             return null;
         }
@@ -0,0 +1,102 @@
+package ru.mifi.booking.bookingservice.client;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Общий бюджет ретраев к hotel-service: ретраев не больше доли живого трафика.
+ *
+ * <p>
+ * Каждый исходный вызов кладёт в бюджет ratio токена, каждый ретрай забирает целый токен.
+ * Плюс пол: minPerSecond токенов в секунду начисляются независимо от трафика, чтобы при малой
+ * нагрузке единичные сбои всё же ретраились. Баланс ограничен maxBalance — накопленное в тихий период
+ * не превращается в залп ретраев при падении hotel-service.
+ * </p>
+ *
+ * <p>
+ * Когда бюджет исчерпан, вызов завершается ошибкой после текущей попытки: при деградации
+ * hotel-service получает примерно (1 + ratio) от обычной нагрузки, а не maxAttempts-кратную.
+ * </p>
+ */
+final class RetryBudget {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final double ratio;
+    private final double minPerSecond;
+    private final double maxBalance;
+    private final LongSupplier nanoClock;
+
+    private double balance;
+    private long refilledAt;
+
+    RetryBudget(double ratio, double minPerSecond, double maxBalance, LongSupplier nanoClock) {
+        this.ratio = Math.max(0, ratio);
+        this.minPerSecond = Math.max(0, minPerSecond);
+        this.maxBalance = Math.max(1, maxBalance);
+        this.nanoClock = nanoClock;
+        reset();
+    }
+
+    /**
+     * Исходный (не повторный) вызов: пополнить бюджет на ratio.
+     */
+    void onRequest() {
+        lock.lock();
+        try {
+            balance = Math.min(maxBalance, balance + ratio);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Забрать токен под ретрай.
+     *
+     * @return false — бюджет исчерпан, ретраить нельзя
+     */
+    boolean tryWithdraw() {
+        lock.lock();
+        try {
+            refill();
+            if (balance < 1.0) {
+                return false;
+            }
+            balance -= 1.0;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double balance() {
+        lock.lock();
+        try {
+            refill();
+            return balance;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Начальный баланс — секунда «пола».
+     */
+    void reset() {
+        lock.lock();
+        try {
+            balance = Math.min(maxBalance, minPerSecond);
+            refilledAt = nanoClock.getAsLong();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        double seconds = (now - refilledAt) / 1_000_000_000.0;
+        if (seconds > 0) {
+            balance = Math.min(maxBalance, balance + seconds * minPerSecond);
+            refilledAt = now;
+        }
+    }
+}
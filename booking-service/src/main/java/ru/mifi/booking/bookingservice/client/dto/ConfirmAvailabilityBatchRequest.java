@@ -0,0 +1,22 @@
+package ru.mifi.booking.bookingservice.client.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * DTO для вызова internal endpoint hotel-service:
+ * POST /api/rooms/confirm-availability/batch (всё или ничего)
+ */
+public record ConfirmAvailabilityBatchRequest(
+        List<Item> items
+) {
+
+    public record Item(
+            Long roomId,
+            LocalDate startDate,
+            LocalDate endDate,
+            String bookingId,
+            String requestId
+    ) {
+    }
+}
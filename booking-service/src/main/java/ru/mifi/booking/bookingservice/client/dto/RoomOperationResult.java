@@ -0,0 +1,10 @@
+package ru.mifi.booking.bookingservice.client.dto;
+
+/**
+ * Результат одной операции из POST /api/rooms/operations: статус, который вернул бы одиночный вызов.
+ */
+public record RoomOperationResult(
+        int status,
+        String message
+) {
+}
@@ -0,0 +1,34 @@
+package ru.mifi.booking.bookingservice.client.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * DTO для вызова internal endpoint hotel-service:
+ * POST /api/rooms/operations (пачка независимых confirm/release)
+ */
+public record RoomOperationsRequest(
+        List<Operation> operations
+) {
+
+    public enum Type {
+        CONFIRM,
+        RELEASE,
+        COMMIT
+    }
+
+    /**
+     * requestId — ключ идемпотентности confirm, correlationId — X-Request-Id исходного запроса:
+     * у пачки общий заголовок, поэтому свой id каждая операция несёт в теле (для логов hotel-service).
+     */
+    public record Operation(
+            Type type,
+            Long roomId,
+            LocalDate startDate,
+            LocalDate endDate,
+            String bookingId,
+            String requestId,
+            String correlationId
+    ) {
+    }
+}
@@ -0,0 +1,49 @@
+package ru.mifi.booking.bookingservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пул для асинхронной саги (POST /api/booking?async=true).
+ *
+ * <p>
+ * Пул и очередь ограничены: при деградации hotel-service саги копятся в очереди, а не в потоках запросов;
+ * переполнение очереди отклоняет новую бронь сразу (503), а не растит память без предела.
+ * </p>
+ *
+ * <p>
+ * При spring.threads.virtual.enabled=true каждая сага получает свой виртуальный поток: она почти всё время
+ * ждёт hotel-service или backoff, и платформенный пул из 16 потоков стал бы узким местом.
+ * Предел саг в полёте тот же — threads + queue-capacity, сверх него новая бронь так же получает 503.
+ * </p>
+ */
+@Configuration
+public class BookingSagaExecutorConfig {
+
+    @Bean(name = "bookingSagaExecutor", destroyMethod = "shutdown")
+    public ExecutorService bookingSagaExecutor(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${booking.async.threads:16}") int threads,
+            @Value("${booking.async.queue-capacity:1000}") int queueCapacity
+    ) {
+        int size = Math.max(1, threads);
+        if (virtualThreads) {
+            return new BoundedVirtualThreadExecutor("booking-saga-v-", size + Math.max(1, queueCapacity));
+        }
+        return new ThreadPoolExecutor(
+                size,
+                size,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().name("booking-saga-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+}
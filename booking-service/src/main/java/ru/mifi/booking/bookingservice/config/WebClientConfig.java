@@ -0,0 +1,69 @@
+package ru.mifi.booking.bookingservice.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancedExchangeFilterFunction;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Неблокирующий клиент к hotel-service для *Async-методов HotelServiceClient.
+ *
+ * <p>
+ * Reactor Netty со своим пулом соединений: ожидание ответа не занимает поток, а паузы между
+ * ретраями идут по таймеру Reactor. Размеры и тайм-ауты пула — те же services.hotel-service.pool.*,
+ * что и у пула RestTemplate; метрики — reactor.netty.connection.provider.* в /actuator/metrics.
+ * </p>
+ *
+ * <p>
+ * Клиент собирается из прототипного WebClient.Builder Spring Boot: кодеки Jackson с общим ObjectMapper
+ * (LocalDate в ISO, а не массивом) и наблюдаемость приходят из его кастомайзеров. Собственный бин
+ * WebClient.Builder (даже @LoadBalanced) я не объявляю: на него автоконфигурация отключила бы свой билдер
+ * для всего приложения. Имя сервиса в base-url разрешается через Eureka фильтром балансировщика
+ * Spring Cloud — тем же, что вешает @LoadBalanced, — и только у этого клиента.
+ * </p>
+ */
+@Configuration
+public class WebClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider hotelServiceConnectionProvider(
+            @Value("${services.hotel-service.pool.max-total:200}") int maxTotal,
+            @Value("${services.hotel-service.pool.acquire-timeout-ms:1000}") long acquireTimeoutMs,
+            @Value("${services.hotel-service.pool.time-to-live-ms:60000}") long timeToLiveMs,
+            @Value("${services.hotel-service.pool.evict-idle-ms:30000}") long evictIdleMs
+    ) {
+        return ConnectionProvider.builder("hotel-service")
+                .maxConnections(Math.max(1, maxTotal))
+                .pendingAcquireTimeout(Duration.ofMillis(acquireTimeoutMs))
+                .maxLifeTime(Duration.ofMillis(timeToLiveMs))
+                .maxIdleTime(Duration.ofMillis(evictIdleMs))
+                .evictInBackground(Duration.ofMillis(evictIdleMs))
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient hotelServiceWebClient(
+            WebClient.Builder webClientBuilder,
+            ObjectProvider<LoadBalancedExchangeFilterFunction> loadBalancerFilter,
+            ConnectionProvider hotelServiceConnectionProvider,
+            @Value("${services.hotel-service.connect-timeout-ms:2000}") int connectTimeoutMs,
+            @Value("${services.hotel-service.read-timeout-ms:3000}") long readTimeoutMs
+    ) {
+        HttpClient httpClient = HttpClient.create(hotelServiceConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));
+        WebClient.Builder builder = webClientBuilder.clientConnector(new ReactorClientHttpConnector(httpClient));
+        // без балансировщика (spring.cloud.loadbalancer.enabled=false) base-url — обычный адрес
+        loadBalancerFilter.ifAvailable(builder::filter);
+        return builder.build();
+    }
+}
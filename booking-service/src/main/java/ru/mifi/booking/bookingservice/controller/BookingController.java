@@ -5,14 +5,20 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import ru.mifi.booking.bookingservice.dto.BookingDtos;
 import ru.mifi.booking.common.exception.UnauthorizedException;
 import ru.mifi.booking.bookingservice.service.BookingServiceFacade;
+import ru.mifi.booking.bookingservice.service.BookingStatusEvents;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.net.URI;
+import java.util.List;
 import java.util.UUID;
 
 @SecurityRequirement(name = "bearerAuth")
@@ -21,15 +27,22 @@ import java.util.UUID;
 public class BookingController {
 
     private final BookingServiceFacade bookingService;
+    private final BookingStatusEvents statusEvents;
 
-    public BookingController(BookingServiceFacade bookingService) {
+    public BookingController(BookingServiceFacade bookingService, BookingStatusEvents statusEvents) {
         this.bookingService = bookingService;
+        this.statusEvents = statusEvents;
     }
 
+    /**
+     * Создать бронь. По умолчанию ответ — после завершения саги (CONFIRMED или ошибка).
+     * С async=true — сразу 202 с бронью в PENDING; итог — GET /api/booking/{id} или SSE /api/booking/{id}/events.
+     */
     @PostMapping("/booking")
-    public BookingDtos.BookingResponse create(@Valid @RequestBody BookingDtos.CreateBookingRequest req,
-                                              Authentication auth,
-                                              @RequestHeader(name = "X-Request-Id", required = false) String requestId) {
+    public ResponseEntity<BookingDtos.BookingResponse> create(@Valid @RequestBody BookingDtos.CreateBookingRequest req,
+                                                              Authentication auth,
+                                                              @RequestHeader(name = "X-Request-Id", required = false) String requestId,
+                                                              @RequestParam(name = "async", defaultValue = "false") boolean async) {
 
         if (auth == null) {
             throw new UnauthorizedException("No auth");
@@ -41,7 +54,35 @@ public class BookingController {
             requestId = UUID.randomUUID().toString();
         }
 
-        return bookingService.create(userId, req, requestId);
+        if (!async) {
+            return ResponseEntity.ok(bookingService.create(userId, req, requestId));
+        }
+
+        BookingDtos.BookingResponse pending = bookingService.createAsync(userId, req, requestId);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/booking/" + pending.id()))
+                .body(pending);
+    }
+
+    /**
+     * Групповое бронирование: все номера на один период подтверждаются одним вызовом hotel-service (всё или ничего).
+     */
+    @PostMapping("/booking/group")
+    public List<BookingDtos.BookingResponse> createGroup(@Valid @RequestBody BookingDtos.CreateGroupBookingRequest req,
+                                                         Authentication auth,
+                                                         @RequestHeader(name = "X-Request-Id", required = false) String requestId) {
+
+        if (auth == null) {
+            throw new UnauthorizedException("No auth");
+        }
+
+        Long userId = Long.parseLong(auth.getName());
+
+        if (requestId == null || requestId.isBlank()) {
+            requestId = UUID.randomUUID().toString();
+        }
+
+        return bookingService.createGroup(userId, req, requestId);
     }
 
     @GetMapping("/bookings")
@@ -61,6 +102,17 @@ public class BookingController {
         return bookingService.get(id, userId);
     }
 
+    /**
+     * SSE-поток статуса брони: текущее состояние сразу, затем изменения до CONFIRMED/CANCELLED.
+     */
+    @GetMapping(value = "/booking/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable Long id, Authentication auth) {
+        if (auth == null) throw new UnauthorizedException("No auth");
+        Long userId = Long.parseLong(auth.getName());
+        bookingService.get(id, userId);
+        return statusEvents.subscribe(id, () -> bookingService.get(id, userId));
+    }
+
     @DeleteMapping("/booking/{id}")
     public void cancel(@PathVariable Long id,
                        Authentication auth,
@@ -1,9 +1,11 @@
 package ru.mifi.booking.bookingservice.dto;
 
 import ru.mifi.booking.bookingservice.entity.BookingStatus;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 
 import java.time.LocalDate;
+import java.util.List;
 
 public final class BookingDtos {
 
@@ -17,6 +19,12 @@ public final class BookingDtos {
             Long roomId
     ) {}
 
+    public record CreateGroupBookingRequest(
+            @NotNull LocalDate startDate,
+            @NotNull LocalDate endDate,
+            @NotEmpty List<@NotNull Long> roomIds
+    ) {}
+
     public record BookingResponse(
             Long id,
             String bookingUid,
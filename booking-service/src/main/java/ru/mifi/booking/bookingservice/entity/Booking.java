@@ -15,17 +15,20 @@ import java.time.OffsetDateTime;
 )
 public class Booking {
 
+    /** Id из последовательности блоками: брони группы уходят одним JDBC batch INSERT. */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "booking_seq")
+    @SequenceGenerator(name = "booking_seq", sequenceName = "booking_seq", allocationSize = 50)
     private Long id;
 
+    @Convert(converter = UuidKeyConverter.class)
     @Column(nullable = false, unique = true)
     private String bookingUid;
 
     @Column(nullable = false)
     private Long userId;
 
-    @Column(nullable = false)
+    /** Пуст, пока асинхронный autoSelect ещё не получил номер от hotel-service. */
     private Long roomId;
 
     @Column(nullable = false)
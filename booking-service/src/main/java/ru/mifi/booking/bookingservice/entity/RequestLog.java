@@ -11,9 +11,12 @@ import java.time.OffsetDateTime;
 public class RequestLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "request_log_seq")
+    @SequenceGenerator(name = "request_log_seq", sequenceName = "request_log_seq", allocationSize = 50)
     private Long id;
 
+    /** X-Request-Id клиента: UUID хранится как есть, произвольная строка — как name-based UUID. */
+    @Convert(converter = UuidKeyConverter.class)
     @Column(nullable = false, unique = true)
     private String requestId;
 
@@ -0,0 +1,42 @@
+package ru.mifi.booking.bookingservice.init;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.mifi.booking.common.id.IdSequences;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Догоняет последовательности booking_seq / request_log_seq до max(id) таблиц, заполненных ещё при IDENTITY
+ * ({@link IdSequences#alignPastMaxId}). Выполняется после обновления схемы и до приёма запросов.
+ */
+@Component
+public class IdSequenceMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceMigration.class);
+
+    /** Таблица → последовательность её id. */
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "booking", "booking_seq",
+            "request_log", "request_log_seq"
+    );
+
+    private final DataSource dataSource;
+
+    /**
+     * @param entityManagerFactory не используется напрямую — гарантирует, что схема уже обновлена
+     */
+    public IdSequenceMigration(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    void migrate() {
+        IdSequences.alignPastMaxId(dataSource, SEQUENCES).forEach((sequence, restartWith) ->
+                log.info("Sequence {} moved past existing ids: restart with {}", sequence, restartWith));
+    }
+}
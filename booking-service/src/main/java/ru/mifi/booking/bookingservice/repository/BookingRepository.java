@@ -1,9 +1,13 @@
 package ru.mifi.booking.bookingservice.repository;
 
 import ru.mifi.booking.bookingservice.entity.Booking;
+import ru.mifi.booking.bookingservice.entity.BookingStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -11,4 +15,41 @@ public interface BookingRepository extends JpaRepository<Booking, Long> {
     List<Booking> findByUserId(Long userId);
 
     Page<Booking> findByUserId(Long userId, Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Перевести бронь из одного статуса в другой, только если она всё ещё в from.
+     * Сага и отмена пользователем не перетирают друг друга: проигравший получает 0.
+     * Контекст после UPDATE очищаю (здесь и ниже), иначе следующий findById вернёт закэшированную
+     * бронь со старым статусом.
+     *
+     * @return 1 — статус изменён, 0 — бронь уже в другом статусе
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("update Booking b set b.status = :to where b.id = :id and b.status = :from")
+    int updateStatusIf(@Param("id") Long id, @Param("from") BookingStatus from, @Param("to") BookingStatus to);
+
+    /**
+     * Отмена пользователем: PENDING или CONFIRMED → CANCELLED одним условным UPDATE.
+     *
+     * @return 1 — бронь отменена этим вызовом, 0 — уже отменена
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+            update Booking b set b.status = ru.mifi.booking.bookingservice.entity.BookingStatus.CANCELLED
+            where b.id = :id and b.status in (ru.mifi.booking.bookingservice.entity.BookingStatus.PENDING,
+                                              ru.mifi.booking.bookingservice.entity.BookingStatus.CONFIRMED)
+            """)
+    int cancelIfActive(@Param("id") Long id);
+
+    /**
+     * Записать номер, выбранный hotel-service для autoSelect, пока бронь ещё PENDING.
+     *
+     * @return 1 — номер записан, 0 — бронь уже отменена
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+            update Booking b set b.roomId = :roomId
+            where b.id = :id and b.status = ru.mifi.booking.bookingservice.entity.BookingStatus.PENDING
+            """)
+    int assignRoomIfPending(@Param("id") Long id, @Param("roomId") Long roomId);
+}
@@ -1,11 +1,17 @@
 package ru.mifi.booking.bookingservice.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 import ru.mifi.booking.bookingservice.client.HotelServiceClient;
+import ru.mifi.booking.bookingservice.client.dto.ConfirmAvailabilityBatchRequest;
 import ru.mifi.booking.bookingservice.client.dto.ConfirmAvailabilityRequest;
 import ru.mifi.booking.bookingservice.client.dto.HotelRoomDto;
 import ru.mifi.booking.bookingservice.dto.BookingDtos;
@@ -21,39 +27,57 @@ import ru.mifi.booking.common.exception.ServiceUnavailableException;
 
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 public class BookingServiceFacade {
 
+    private static final Logger log = LoggerFactory.getLogger(BookingServiceFacade.class);
+
+    /** Ключ MDC, который ставит RequestIdFilter; в потоке саги выставляю его сам. */
+    private static final String MDC_REQUEST_ID = "requestId";
+
     private final BookingRepository bookingRepository;
     private final IdempotencyService idempotencyService;
     private final HotelServiceClient hotelServiceClient;
     private final JwtService jwtService;
     private final TransactionTemplate transactionTemplate;
+    private final ExecutorService sagaExecutor;
+    private final BookingStatusEvents statusEvents;
+    private final DbConcurrencyLimiter dbLimiter;
 
     public BookingServiceFacade(
             BookingRepository bookingRepository,
             IdempotencyService idempotencyService,
             HotelServiceClient hotelServiceClient,
             JwtService jwtService,
-            PlatformTransactionManager transactionManager
+            PlatformTransactionManager transactionManager,
+            @Qualifier("bookingSagaExecutor") ExecutorService sagaExecutor,
+            BookingStatusEvents statusEvents,
+            DbConcurrencyLimiter dbLimiter
     ) {
         this.bookingRepository = bookingRepository;
         this.idempotencyService = idempotencyService;
         this.hotelServiceClient = hotelServiceClient;
         this.jwtService = jwtService;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sagaExecutor = sagaExecutor;
+        this.statusEvents = statusEvents;
+        this.dbLimiter = dbLimiter;
     }
 
     public Page<BookingDtos.BookingResponse> listByUser(Long userId, Pageable pageable) {
-        return bookingRepository.findByUserId(userId, pageable).map(this::toDto);
+        return dbLimiter.call(() -> bookingRepository.findByUserId(userId, pageable)).map(this::toDto);
     }
 
     public BookingDtos.BookingResponse get(Long id, Long userId) {
-        Booking b = bookingRepository.findById(id)
-                .orElseThrow(() -> new NotFoundException("Booking " + id + " not found"));
+        Booking b = getBookingOrThrow(id);
 
         if (!b.getUserId().equals(userId)) {
             throw new NotFoundException("Booking " + id + " not found");
@@ -64,13 +88,82 @@ public class BookingServiceFacade {
     public BookingDtos.BookingResponse create(Long userId, BookingDtos.CreateBookingRequest req, String requestId) {
         validateDates(req.startDate(), req.endDate());
 
-        idempotencyService.rememberOrThrow(requestId);
+        dbLimiter.run(() -> idempotencyService.rememberOrThrow(requestId));
 
         String serviceJwt = jwtService.generateServiceToken();
-        Long roomId = resolveRoomId(req, serviceJwt, requestId);
+        if (req.autoSelect()) {
+            return createAutoSelected(userId, req, serviceJwt, requestId);
+        }
+        Long roomId = requireRoomId(req);
+
+        Booking pending = createBooking(userId, roomId, req.startDate(), req.endDate(),
+                UUID.randomUUID().toString(), BookingStatus.PENDING);
 
-        Booking pending = createPendingBooking(userId, roomId, req.startDate(), req.endDate(), requestId);
+        return confirmPending(pending, serviceJwt, requestId);
+    }
+
+    /**
+     * Асинхронная бронь (POST /api/booking?async=true): поток запроса только проверяет даты, запоминает
+     * X-Request-Id и сохраняет бронь в PENDING, а шаги hotel-service выполняет ограниченный пул
+     * bookingSagaExecutor. Итог клиент узнаёт через GET /api/booking/{id} или SSE /api/booking/{id}/events.
+     *
+     * <p>
+     * Для autoSelect бронь сохраняется без номера: его выбирает reserve уже в фоне.
+     * Если очередь пула переполнена, бронь сразу отменяется и клиент получает 503.
+     * </p>
+     *
+     * @return бронь в статусе PENDING
+     */
+    public BookingDtos.BookingResponse createAsync(Long userId, BookingDtos.CreateBookingRequest req, String requestId) {
+        validateDates(req.startDate(), req.endDate());
+
+        dbLimiter.run(() -> idempotencyService.rememberOrThrow(requestId));
+
+        Long roomId = req.autoSelect() ? null : requireRoomId(req);
+        Booking pending = createBooking(userId, roomId, req.startDate(), req.endDate(),
+                UUID.randomUUID().toString(), BookingStatus.PENDING);
+
+        try {
+            sagaExecutor.execute(() -> runSaga(pending, requestId));
+        } catch (RejectedExecutionException ex) {
+            transition(pending.getId(), BookingStatus.CANCELLED);
+            throw new ServiceUnavailableException("Too many bookings in progress, retry later");
+        }
+        return toDto(pending);
+    }
 
+    /**
+     * Сага асинхронной брони в потоке пула. Шаги сами отменяют бронь и снимают удержание при сбое;
+     * здесь — только страховка для неожиданных ошибок и рассылка итогового статуса подписчикам.
+     */
+    private void runSaga(Booking pending, String requestId) {
+        MDC.put(MDC_REQUEST_ID, requestId);
+        String serviceJwt = null;
+        try {
+            serviceJwt = jwtService.generateServiceToken();
+            if (pending.getRoomId() == null) {
+                reservePending(pending, serviceJwt, requestId);
+            } else {
+                confirmPending(pending, serviceJwt, requestId);
+            }
+        } catch (RuntimeException ex) {
+            log.info("Async booking {} was not confirmed: {}", pending.getId(), ex.getMessage());
+            if (transition(pending.getId(), BookingStatus.CANCELLED) && serviceJwt != null) {
+                safeReleaseBooking(pending.getBookingUid(), serviceJwt, requestId);
+            }
+        } finally {
+            dbLimiter.call(() -> bookingRepository.findById(pending.getId()))
+                    .map(this::toDto)
+                    .ifPresent(statusEvents::publish);
+            MDC.remove(MDC_REQUEST_ID);
+        }
+    }
+
+    /**
+     * confirm → commit → CONFIRMED для брони с выбранным номером; при сбое — CANCELLED и компенсация.
+     */
+    private BookingDtos.BookingResponse confirmPending(Booking pending, String serviceJwt, String requestId) {
+        Long roomId = pending.getRoomId();
         ConfirmAvailabilityRequest confirmReq = new ConfirmAvailabilityRequest(
                 pending.getStartDate(),
                 pending.getEndDate(),
@@ -80,17 +173,18 @@ public class BookingServiceFacade {
 
         try {
             hotelServiceClient.confirmAvailability(roomId, confirmReq, serviceJwt, requestId);
+            commitHolds(List.of(pending.getBookingUid()), serviceJwt, requestId);
 
-            updateStatus(pending.getId(), BookingStatus.CONFIRMED);
+            markConfirmed(pending.getId());
             return toDto(getBookingOrThrow(pending.getId()));
 
         } catch (ConflictException ex) {
-            updateStatus(pending.getId(), BookingStatus.CANCELLED);
+            transition(pending.getId(), BookingStatus.CANCELLED);
             safeRelease(roomId, pending.getBookingUid(), serviceJwt, requestId);
             throw ex;
 
         } catch (Exception ex) {
-            updateStatus(pending.getId(), BookingStatus.CANCELLED);
+            transition(pending.getId(), BookingStatus.CANCELLED);
             safeRelease(roomId, pending.getBookingUid(), serviceJwt, requestId);
 
             if (ex instanceof ApiException apiEx) {
@@ -101,69 +195,302 @@ public class BookingServiceFacade {
         }
     }
 
+    /**
+     * Асинхронный autoSelect: reserve выбирает и блокирует номер под bookingUid уже сохранённой брони,
+     * номер записывается в бронь (если её не отменили), удержание подтверждается — CONFIRMED.
+     */
+    private void reservePending(Booking pending, String serviceJwt, String requestId) {
+        String bookingUid = pending.getBookingUid();
+        ConfirmAvailabilityRequest reserveReq = new ConfirmAvailabilityRequest(
+                pending.getStartDate(),
+                pending.getEndDate(),
+                bookingUid,
+                requestId
+        );
+
+        HotelRoomDto room;
+        try {
+            room = hotelServiceClient.reserveRoom(reserveReq, serviceJwt, requestId);
+        } catch (RuntimeException ex) {
+            transition(pending.getId(), BookingStatus.CANCELLED);
+            if (ex instanceof ServiceUnavailableException) {
+                // Номер мог успеть заблокироваться, а ответ потерялся.
+                safeReleaseBooking(bookingUid, serviceJwt, requestId);
+            }
+            throw ex;
+        }
+
+        try {
+            Integer assigned = inTx(tx -> bookingRepository.assignRoomIfPending(pending.getId(), room.id()));
+            if (assigned == null || assigned == 0) {
+                throw new ConflictException("Booking " + pending.getId() + " was cancelled before a room was reserved");
+            }
+            commitHolds(List.of(bookingUid), serviceJwt, requestId);
+            markConfirmed(pending.getId());
+        } catch (RuntimeException ex) {
+            transition(pending.getId(), BookingStatus.CANCELLED);
+            safeRelease(room.id(), bookingUid, serviceJwt, requestId);
+            throw ex;
+        }
+    }
+
+    /**
+     * Групповая бронь: N номеров на один период одним вызовом hotel-service и одним коммитом там.
+     *
+     * <p>
+     * Брони создаю разом в PENDING, затем hotel-service блокирует все номера в одной транзакции.
+     * requestId блокировки — X-Request-Id группы + roomId, поэтому ретрай клиента по таймауту идемпотентен.
+     * При 409 на блокировке hotel-service ничего не заблокировал (всё или ничего), и компенсация не нужна;
+     * при прочих сбоях ответ мог потеряться после коммита — тогда снимаю блокировки по каждой брони.
+     * После успешной блокировки удержания подтверждаются одним commit.
+     * Статусы меняю условно, как и у одиночной брони: участника, которого пользователь успел отменить,
+     * CONFIRMED не перетирает, а его удержание снимаю повторно — release отмены мог уйти раньше блокировки.
+     * </p>
+     */
+    public List<BookingDtos.BookingResponse> createGroup(Long userId,
+                                                         BookingDtos.CreateGroupBookingRequest req,
+                                                         String requestId) {
+        validateDates(req.startDate(), req.endDate());
+        if (new HashSet<>(req.roomIds()).size() != req.roomIds().size()) {
+            throw new BadRequestException("roomIds must not contain duplicates");
+        }
+
+        dbLimiter.run(() -> idempotencyService.rememberOrThrow(requestId));
+
+        String serviceJwt = jwtService.generateServiceToken();
+
+        List<Booking> pending = inTx(status -> req.roomIds().stream()
+                .map(roomId -> newBooking(userId, roomId, req.startDate(), req.endDate(),
+                        UUID.randomUUID().toString(), BookingStatus.PENDING))
+                .toList());
+        List<Long> ids = pending.stream().map(Booking::getId).toList();
+
+        ConfirmAvailabilityBatchRequest batchReq = new ConfirmAvailabilityBatchRequest(pending.stream()
+                .map(b -> new ConfirmAvailabilityBatchRequest.Item(
+                        b.getRoomId(),
+                        b.getStartDate(),
+                        b.getEndDate(),
+                        b.getBookingUid(),
+                        requestId + ":" + b.getRoomId()
+                ))
+                .toList());
+
+        boolean locked = false;
+        try {
+            hotelServiceClient.confirmAvailabilityBatch(batchReq, serviceJwt, requestId);
+            locked = true;
+            commitHolds(pending.stream().map(Booking::getBookingUid).toList(), serviceJwt, requestId);
+
+            List<Booking> cancelled = transitionAll(pending, BookingStatus.CONFIRMED);
+            if (!cancelled.isEmpty()) {
+                safeReleaseAll(cancelled, serviceJwt, requestId);
+            }
+
+        } catch (ConflictException ex) {
+            transitionAll(pending, BookingStatus.CANCELLED);
+            if (locked) {
+                // Группа заблокирована, но часть удержаний истекла до commit — снимаю остальные.
+                safeReleaseAll(pending, serviceJwt, requestId);
+            }
+            throw ex;
+
+        } catch (Exception ex) {
+            transitionAll(pending, BookingStatus.CANCELLED);
+            safeReleaseAll(pending, serviceJwt, requestId);
+
+            if (ex instanceof ApiException apiEx) {
+                throw apiEx;
+            }
+
+            throw new ServiceUnavailableException("Hotel service call failed: " + ex.getMessage());
+        }
+
+        return dbLimiter.call(() -> bookingRepository.findAllById(ids)).stream()
+                .sorted(Comparator.comparing(Booking::getId))
+                .map(this::toDto)
+                .toList();
+    }
+
+    /**
+     * Отмена брони пользователем.
+     *
+     * <p>
+     * Сначала условный UPDATE в CANCELLED, потом release в hotel-service. В обратном порядке была гонка
+     * с сагой: release уходил раньше, чем сага успевала заблокировать номер, а затем безусловная запись
+     * CANCELLED затирала только что выставленный CONFIRMED — удержание оставалось навсегда.
+     * Теперь если сага ещё идёт, её markConfirmed/assignRoomIfPending проигрывают (бронь уже не PENDING),
+     * и сага сама снимает созданную блокировку; release здесь снимает то, что успело появиться раньше.
+     * </p>
+     */
     public void cancel(Long id, Long userId) {
-        Booking b = bookingRepository.findById(id)
-                .orElseThrow(() -> new NotFoundException("Booking " + id + " not found"));
+        Booking b = getBookingOrThrow(id);
 
         if (!b.getUserId().equals(userId)) {
             throw new NotFoundException("Booking " + id + " not found");
         }
 
-        if (b.getStatus() == BookingStatus.CANCELLED) {
+        Integer cancelled = inTx(tx -> bookingRepository.cancelIfActive(b.getId()));
+        if (cancelled == null || cancelled == 0) {
             return;
         }
 
+        // roomId перечитываю: асинхронный autoSelect мог записать номер между findById и отменой
+        // (cancelIfActive очистил контекст, так что это уже строка из БД со статусом CANCELLED)
+        Booking current = getBookingOrThrow(b.getId());
         String serviceJwt = jwtService.generateServiceToken();
-        safeRelease(b.getRoomId(), b.getBookingUid(), serviceJwt, null);
+        if (current.getRoomId() == null) {
+            // асинхронный autoSelect ещё не получил номер: снимаю возможное удержание по bookingId
+            safeReleaseBooking(current.getBookingUid(), serviceJwt, null);
+        } else {
+            safeRelease(current.getRoomId(), current.getBookingUid(), serviceJwt, null);
+        }
+
+        statusEvents.publish(toDto(current));
+    }
+
+    /**
+     * autoSelect: hotel-service выбирает и блокирует номер одним вызовом (reserve),
+     * поэтому отдельные recommend + confirm не нужны.
+     *
+     * <p>
+     * bookingUid генерирую заранее — он уходит в блокировку и позволяет снять её по bookingId,
+     * если ответа reserve мы так и не дождались. Дальше как в ручном выборе: бронь в PENDING,
+     * подтверждение удержания в hotel-service, затем CONFIRMED; при сбое — отмена и компенсация.
+     * </p>
+     */
+    private BookingDtos.BookingResponse createAutoSelected(Long userId,
+                                                           BookingDtos.CreateBookingRequest req,
+                                                           String serviceJwt,
+                                                           String requestId) {
+        String bookingUid = UUID.randomUUID().toString();
+        ConfirmAvailabilityRequest reserveReq = new ConfirmAvailabilityRequest(
+                req.startDate(),
+                req.endDate(),
+                bookingUid,
+                requestId
+        );
+
+        HotelRoomDto room;
+        try {
+            room = hotelServiceClient.reserveRoom(reserveReq, serviceJwt, requestId);
+        } catch (ServiceUnavailableException ex) {
+            // Номер мог успеть заблокироваться, а ответ потерялся.
+            safeReleaseBooking(bookingUid, serviceJwt, requestId);
+            throw ex;
+        }
+
+        Booking pending;
+        try {
+            pending = createBooking(userId, room.id(), req.startDate(), req.endDate(),
+                    bookingUid, BookingStatus.PENDING);
+        } catch (RuntimeException ex) {
+            safeRelease(room.id(), bookingUid, serviceJwt, requestId);
+            throw ex;
+        }
+
+        try {
+            commitHolds(List.of(bookingUid), serviceJwt, requestId);
+            markConfirmed(pending.getId());
+        } catch (RuntimeException ex) {
+            transition(pending.getId(), BookingStatus.CANCELLED);
+            safeRelease(room.id(), bookingUid, serviceJwt, requestId);
+            throw ex;
+        }
 
-        updateStatus(b.getId(), BookingStatus.CANCELLED);
+        return toDto(getBookingOrThrow(pending.getId()));
     }
 
-    private Booking createPendingBooking(Long userId,
-                                         Long roomId,
-                                         LocalDate startDate,
-                                         LocalDate endDate,
-                                         String requestId) {
+    /**
+     * Бронь сохранена — удержания номеров в hotel-service становятся постоянными.
+     * Если удержание уже истекло и снято сборщиком, номер могли продать — это конфликт, а не 404.
+     */
+    private void commitHolds(List<String> bookingUids, String serviceJwt, String requestId) {
+        try {
+            hotelServiceClient.commitHolds(bookingUids, serviceJwt, requestId);
+        } catch (NotFoundException ex) {
+            throw new ConflictException("Room hold expired before the booking was confirmed");
+        }
+    }
 
-        return transactionTemplate.execute(status -> {
-            Booking booking = new Booking();
-            booking.setUserId(userId);
-            booking.setRoomId(roomId);
-            booking.setStartDate(startDate);
-            booking.setEndDate(endDate);
-            booking.setStatus(BookingStatus.PENDING);
-            booking.setCreatedAt(OffsetDateTime.now());
-            booking.setBookingUid(UUID.randomUUID().toString());
+    private Booking createBooking(Long userId,
+                                  Long roomId,
+                                  LocalDate startDate,
+                                  LocalDate endDate,
+                                  String bookingUid,
+                                  BookingStatus initialStatus) {
 
-            return bookingRepository.save(booking);
-        });
+        return inTx(status -> newBooking(userId, roomId, startDate, endDate, bookingUid, initialStatus));
     }
 
-    private void updateStatus(Long bookingId, BookingStatus status) {
-        transactionTemplate.executeWithoutResult(tx -> {
-            Booking b = getBookingOrThrow(bookingId);
-            b.setStatus(status);
-        });
+    /**
+     * Сохранить бронь в уже открытой транзакции (группа пишет все брони одной).
+     */
+    private Booking newBooking(Long userId,
+                               Long roomId,
+                               LocalDate startDate,
+                               LocalDate endDate,
+                               String bookingUid,
+                               BookingStatus initialStatus) {
+        Booking booking = new Booking();
+        booking.setUserId(userId);
+        booking.setRoomId(roomId);
+        booking.setStartDate(startDate);
+        booking.setEndDate(endDate);
+        booking.setStatus(initialStatus);
+        booking.setCreatedAt(OffsetDateTime.now());
+        booking.setBookingUid(bookingUid);
+
+        return bookingRepository.save(booking);
     }
 
-    private Booking getBookingOrThrow(Long bookingId) {
-        return bookingRepository.findById(bookingId)
-                .orElseThrow(() -> new NotFoundException("Booking " + bookingId + " not found"));
+    /**
+     * Транзакция под разрешением {@link DbConcurrencyLimiter}. Вызовы hotel-service внутрь не попадают:
+     * соединение занято только на время самих запросов к БД.
+     */
+    private <T> T inTx(TransactionCallback<T> action) {
+        return dbLimiter.call(() -> transactionTemplate.execute(action));
     }
 
-    private Long resolveRoomId(BookingDtos.CreateBookingRequest req, String serviceJwt, String requestId) {
-        if (!req.autoSelect()) {
-            if (req.roomId() == null) {
-                throw new BadRequestException("roomId is required when autoSelect=false");
-            }
-            return req.roomId();
+    /**
+     * PENDING → status. false — бронь уже не PENDING (например, её отменил пользователь, пока шла сага).
+     */
+    private boolean transition(Long bookingId, BookingStatus status) {
+        Integer updated = inTx(tx ->
+                bookingRepository.updateStatusIf(bookingId, BookingStatus.PENDING, status));
+        return updated != null && updated == 1;
+    }
+
+    /**
+     * Удержание подтверждено — бронь становится CONFIRMED, если её не отменили за это время;
+     * иначе 409, и вызывающий снимает удержание.
+     */
+    private void markConfirmed(Long bookingId) {
+        if (!transition(bookingId, BookingStatus.CONFIRMED)) {
+            throw new ConflictException("Booking " + bookingId + " was cancelled before it was confirmed");
         }
+    }
 
-        List<HotelRoomDto> rooms = hotelServiceClient.recommendRooms(req.startDate(), req.endDate(), serviceJwt, requestId);
-        if (rooms == null || rooms.isEmpty()) {
-            throw new ConflictException("No available rooms for this period");
+    /**
+     * PENDING → status для всех броней группы одной транзакцией, каждой — своим условным UPDATE.
+     *
+     * @return брони, которые уже не были PENDING (их отменил пользователь)
+     */
+    private List<Booking> transitionAll(List<Booking> bookings, BookingStatus status) {
+        return inTx(tx -> bookings.stream()
+                .filter(b -> bookingRepository.updateStatusIf(b.getId(), BookingStatus.PENDING, status) == 0)
+                .toList());
+    }
+
+    private Booking getBookingOrThrow(Long bookingId) {
+        return dbLimiter.call(() -> bookingRepository.findById(bookingId))
+                .orElseThrow(() -> new NotFoundException("Booking " + bookingId + " not found"));
+    }
+
+    private Long requireRoomId(BookingDtos.CreateBookingRequest req) {
+        if (req.roomId() == null) {
+            throw new BadRequestException("roomId is required when autoSelect=false");
         }
-        return rooms.getFirst().id();
+        return req.roomId();
     }
 
     private void safeRelease(Long roomId, String bookingUid, String serviceJwt, String requestId) {
@@ -173,6 +500,26 @@ public class BookingServiceFacade {
         }
     }
 
+    /**
+     * Компенсация группы: release всех номеров уходят разом (неблокирующий клиент), а не по очереди
+     * с backoff каждого; жду, пока завершатся все. Ошибки, как и в {@link #safeRelease}, глотаю —
+     * недоснятые удержания истекут сами.
+     */
+    private void safeReleaseAll(List<Booking> bookings, String serviceJwt, String requestId) {
+        CompletableFuture<?>[] releases = bookings.stream()
+                .map(b -> hotelServiceClient.releaseAsync(b.getRoomId(), b.getBookingUid(), serviceJwt, requestId)
+                        .exceptionally(ex -> null))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(releases).join();
+    }
+
+    private void safeReleaseBooking(String bookingUid, String serviceJwt, String requestId) {
+        try {
+            hotelServiceClient.releaseBooking(bookingUid, serviceJwt, requestId);
+        } catch (Exception ignored) {
+        }
+    }
+
     private void validateDates(LocalDate start, LocalDate end) {
         if (start == null || end == null) {
             throw new BadRequestException("startDate and endDate are required");
@@ -0,0 +1,84 @@
+package ru.mifi.booking.bookingservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.mifi.booking.bookingservice.dto.BookingDtos;
+import ru.mifi.booking.bookingservice.entity.BookingStatus;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * SSE-подписки на статус брони (GET /api/booking/{id}/events).
+ *
+ * <p>
+ * Подписчик сразу получает текущее состояние, затем каждое изменение; на финальном статусе
+ * (CONFIRMED/CANCELLED) поток закрывается. Подписки живут в памяти этого инстанса: события видит тот,
+ * кто подписан на инстансе, где идёт сага. Для остальных (и после таймаута) источник правды —
+ * обычный GET /api/booking/{id}.
+ * </p>
+ */
+@Component
+public class BookingStatusEvents {
+
+    private final Map<Long, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    private final long timeoutMs;
+
+    public BookingStatusEvents(@Value("${booking.async.sse-timeout-ms:60000}") long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Подписаться на статус брони.
+     *
+     * @param bookingId идентификатор брони
+     * @param current   текущее состояние (читается после регистрации, чтобы не пропустить изменение между ними)
+     * @return поток событий "status"
+     */
+    public SseEmitter subscribe(Long bookingId, Supplier<BookingDtos.BookingResponse> current) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        emitters.computeIfAbsent(bookingId, id -> ConcurrentHashMap.newKeySet()).add(emitter);
+
+        Runnable unsubscribe = () -> remove(bookingId, emitter);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(ex -> unsubscribe.run());
+
+        send(emitter, current.get());
+        return emitter;
+    }
+
+    /**
+     * Разослать новое состояние брони подписчикам (если они есть).
+     */
+    public void publish(BookingDtos.BookingResponse booking) {
+        Set<SseEmitter> subscribers = emitters.get(booking.id());
+        if (subscribers == null) {
+            return;
+        }
+        subscribers.forEach(emitter -> send(emitter, booking));
+    }
+
+    private void send(SseEmitter emitter, BookingDtos.BookingResponse booking) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(booking));
+            if (booking.status() != BookingStatus.PENDING) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException ex) {
+            // клиент ушёл или поток уже закрыт
+            emitter.completeWithError(ex);
+        }
+    }
+
+    private void remove(Long bookingId, SseEmitter emitter) {
+        emitters.computeIfPresent(bookingId, (id, set) -> {
+            set.remove(emitter);
+            return set.isEmpty() ? null : set;
+        });
+    }
+}
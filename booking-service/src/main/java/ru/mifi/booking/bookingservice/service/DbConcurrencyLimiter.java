@@ -0,0 +1,93 @@
+package ru.mifi.booking.bookingservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.mifi.booking.common.exception.ServiceUnavailableException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Семафор на обращения бронирования к своей БД.
+ *
+ * <p>
+ * Bulkhead клиента ограничивает только вызовы hotel-service. Запрос брони между ними несколько раз коротко
+ * ходит в БД (request_log, PENDING, смена статуса), и на виртуальных потоках таких обращений разом
+ * столько же, сколько запросов в полёте: сотни потоков стоят в очереди Hikari и падают с 500
+ * по connectionTimeout. Поэтому каждое обращение берёт разрешение до того, как взять соединение,
+ * а соединение не живёт дольше своей транзакции (open-in-view выключен) и не держится,
+ * пока бронь ждёт hotel-service.
+ * </p>
+ *
+ * <p>
+ * Разрешения не вкладываются: внутри {@link #call} второй раз лимитер не вызываю, иначе при занятом
+ * семафоре поток ждал бы сам себя. По умолчанию включён вместе с виртуальными потоками,
+ * число разрешений — размер пула Hikari.
+ * </p>
+ */
+@Component
+public class DbConcurrencyLimiter {
+
+    private final boolean enabled;
+    private final Semaphore permits;
+    private final long waitMs;
+
+    public DbConcurrencyLimiter(
+            @Value("${booking.db.limiter.enabled:${spring.threads.virtual.enabled:false}}") boolean enabled,
+            @Value("${booking.db.limiter.max-concurrent:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrent,
+            @Value("${booking.db.limiter.wait-ms:5000}") long waitMs
+    ) {
+        this.enabled = enabled;
+        this.permits = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.waitMs = waitMs;
+    }
+
+    /**
+     * Выполнить обращение к БД (транзакцию или одиночный запрос репозитория) под разрешением.
+     *
+     * @param action действие
+     * @return результат действия
+     */
+    public <T> T call(Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+
+        try {
+            if (!permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                throw new ServiceUnavailableException("Too many concurrent database operations, retry later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for a database permit");
+        }
+
+        try {
+            return action.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Вариант {@link #call} без результата.
+     */
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Свободные разрешения (для тестов и диагностики).
+     */
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+}
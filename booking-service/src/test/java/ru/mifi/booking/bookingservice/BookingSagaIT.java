@@ -1,6 +1,7 @@
 package ru.mifi.booking.bookingservice;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import okhttp3.mockwebserver.*;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,6 +16,7 @@ import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
@@ -23,23 +25,36 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.RequestPostProcessor;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import ru.mifi.booking.bookingservice.client.HotelClientResilience;
+import ru.mifi.booking.bookingservice.client.HotelServiceClient;
+import ru.mifi.booking.bookingservice.client.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.bookingservice.client.dto.HotelRoomDto;
 
 import ru.mifi.booking.bookingservice.dto.BookingDtos;
 import ru.mifi.booking.bookingservice.entity.Booking;
 import ru.mifi.booking.bookingservice.repository.BookingRepository;
+import ru.mifi.booking.bookingservice.service.BookingServiceFacade;
 // ✅ если есть таблица идемпотентности:
 import ru.mifi.booking.bookingservice.repository.RequestLogRepository;
 
 import ru.mifi.booking.common.dto.ErrorDto;
+import ru.mifi.booking.common.exception.ConflictException;
+import ru.mifi.booking.common.exception.ServiceUnavailableException;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -56,6 +71,12 @@ class BookingSagaIT {
     @Autowired private MockMvc mockMvc;
     @Autowired private ObjectMapper objectMapper;
     @Autowired private BookingRepository bookingRepository;
+    @Autowired private RestTemplate restTemplate;
+    @Autowired private WebClient webClient;
+    @Autowired private HotelServiceClient hotelServiceClient;
+    @Autowired private HotelClientResilience resilience;
+    @Autowired private MeterRegistry meterRegistry;
+    @Autowired private BookingServiceFacade bookingService;
 
     // ✅ если у вас есть RequestLogRepository — обязательно чистим для изоляции тестов
     @Autowired(required = false)
@@ -83,6 +104,8 @@ class BookingSagaIT {
         registry.add("services.hotel-service.retry.backoff-ms", () -> "10,10,10");
         registry.add("services.hotel-service.connect-timeout-ms", () -> "50");
         registry.add("services.hotel-service.read-timeout-ms", () -> "50");
+        // бюджет ретраев — 3 токена после reset(): хватает тестам с двумя ретраями, а исчерпание видно быстро
+        registry.add("services.hotel-service.retry.budget.min-per-second", () -> "3");
 
         // в тестах discovery не нужен
         registry.add("spring.cloud.discovery.enabled", () -> "false");
@@ -106,7 +129,10 @@ class BookingSagaIT {
             }
         });
 
+        warmUpHttpClient();
         drainRequests();
+        // breaker и бюджет ретраев общие на контекст: сбои одного теста не должны открывать breaker другому
+        resilience.reset();
         bookingRepository.deleteAll();
         if (requestLogRepository != null) {
             requestLogRepository.deleteAll();
@@ -122,17 +148,15 @@ class BookingSagaIT {
             public MockResponse dispatch(RecordedRequest request) {
                 String path = request.getPath();
 
-                if (path != null && path.startsWith("/api/rooms/recommend")) {
+                if ("/api/rooms/reserve".equals(path)) {
                     // базовые проверки корреляции
                     assertThat(request.getHeader("X-Request-Id")).isEqualTo(requestId);
                     assertThat(request.getHeader("Authorization")).startsWith("Bearer ");
 
-                    return json(200, "[{\"id\":1,\"hotelId\":77,\"number\":\"101\",\"available\":true}]");
+                    return json(200, "{\"id\":1,\"hotelId\":77,\"number\":\"101\",\"available\":true}");
                 }
 
-                if ("/api/rooms/1/confirm-availability".equals(path)) {
-                    assertThat(request.getHeader("X-Request-Id")).isEqualTo(requestId);
-                    assertThat(request.getHeader("Authorization")).startsWith("Bearer ");
+                if (request.getPath() != null && request.getPath().startsWith("/api/rooms/commit")) {
                     return new MockResponse().setResponseCode(200);
                 }
 
@@ -164,10 +188,116 @@ class BookingSagaIT {
         assertThat(bookings.getFirst().getRoomId()).isEqualTo(1L);
         assertThat(bookings.getFirst().getStatus().name()).isEqualTo("CONFIRMED");
 
+        // autoSelect: один вызов reserve вместо recommend + confirm
         List<RecordedRequest> requests = takeAllRequests(400);
-        assertThat(countPathStartsWith(requests, "/api/rooms/recommend")).isEqualTo(1);
-        assertThat(countPathEquals(requests, "/api/rooms/1/confirm-availability")).isEqualTo(1);
+        assertThat(countPathEquals(requests, "/api/rooms/reserve")).isEqualTo(1);
+        assertThat(countPathStartsWith(requests, "/api/rooms/recommend")).isEqualTo(0);
+        assertThat(countPathEquals(requests, "/api/rooms/1/confirm-availability")).isEqualTo(0);
         assertThat(countPathStartsWith(requests, "/api/rooms/1/release")).isEqualTo(0);
+        assertThat(countPathEquals(requests, "/api/rooms/commit?bookingId=" + response.bookingUid())).isEqualTo(1);
+    }
+
+    @Test
+    void holdExpiredBeforeCommit_409_cancelsAndReleases() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+
+                if ("/api/rooms/1/confirm-availability".equals(path)) {
+                    return new MockResponse().setResponseCode(200);
+                }
+                if (path != null && path.startsWith("/api/rooms/commit")) {
+                    // сборщик hotel-service уже снял просроченное удержание
+                    return json(404, "{\"status\":404,\"message\":\"Room hold expired or not found for 1 booking(s)\"}");
+                }
+                if (path != null && path.startsWith("/api/rooms/1/release")) {
+                    return new MockResponse().setResponseCode(200);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        mockMvc.perform(
+                        post("/api/booking")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", "rq-hold-expired-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createRequest(false, 1L)))
+                )
+                .andExpect(status().isConflict());
+
+        List<Booking> bookings = bookingRepository.findAll();
+        assertThat(bookings).hasSize(1);
+        assertThat(bookings.getFirst().getStatus().name()).isEqualTo("CANCELLED");
+
+        List<RecordedRequest> requests = takeAllRequests(400);
+        assertThat(countPathStartsWith(requests, "/api/rooms/commit")).isEqualTo(1);
+        assertThat(countPathStartsWith(requests, "/api/rooms/1/release")).isEqualTo(1);
+    }
+
+    @Test
+    void autoSelect_noRoomsLeft_409_noBookingAndNoRetry() throws Exception {
+        String requestId = "rq-reserve-conflict-1";
+
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("/api/rooms/reserve".equals(request.getPath())) {
+                    return json(409, "{\"status\":409,\"message\":\"No available rooms for this period\"}");
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        mockMvc.perform(
+                        post("/api/booking")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", requestId)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createRequest(true, null)))
+                )
+                .andExpect(status().isConflict());
+
+        assertThat(bookingRepository.count()).isEqualTo(0);
+
+        List<RecordedRequest> requests = takeAllRequests(400);
+        assertThat(countPathEquals(requests, "/api/rooms/reserve")).isEqualTo(1);
+        assertThat(countPathStartsWith(requests, "/api/rooms/release")).isEqualTo(0);
+    }
+
+    @Test
+    void autoSelect_reserveTimeout_retriesThen503_andReleasesByBookingId() throws Exception {
+        String requestId = "rq-reserve-timeout-1";
+
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if ("/api/rooms/reserve".equals(path)) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+                }
+                if (path != null && path.startsWith("/api/rooms/release?bookingId=")) {
+                    return new MockResponse().setResponseCode(200);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        mockMvc.perform(
+                        post("/api/booking")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", requestId)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createRequest(true, null)))
+                )
+                .andExpect(status().isServiceUnavailable());
+
+        assertThat(bookingRepository.count()).isEqualTo(0);
+
+        List<RecordedRequest> requests = takeAllRequests(1200);
+        assertThat(countPathEquals(requests, "/api/rooms/reserve")).isEqualTo(3);
+        assertThat(countPathStartsWith(requests, "/api/rooms/release?bookingId=")).isEqualTo(1);
     }
 
     @Test
@@ -179,10 +309,6 @@ class BookingSagaIT {
             public MockResponse dispatch(RecordedRequest request) {
                 String path = request.getPath();
 
-                if (path != null && path.startsWith("/api/rooms/recommend")) {
-                    return json(200, "[{\"id\":1,\"hotelId\":77,\"number\":\"101\",\"available\":true}]");
-                }
-
                 if ("/api/rooms/1/confirm-availability".equals(path)) {
                     // конфликт НЕ должен ретраиться
                     return new MockResponse().setResponseCode(409);
@@ -196,7 +322,8 @@ class BookingSagaIT {
             }
         });
 
-        BookingDtos.CreateBookingRequest req = createRequest(true, null);
+        // Ручной выбор номера: autoSelect теперь идёт через reserve и проверяется отдельно.
+        BookingDtos.CreateBookingRequest req = createRequest(false, 1L);
 
         MvcResult mvcResult = mockMvc.perform(
                         post("/api/booking")
@@ -218,7 +345,6 @@ class BookingSagaIT {
         assertThat(bookings.getFirst().getStatus().name()).isEqualTo("CANCELLED");
 
         List<RecordedRequest> requests = takeAllRequests(500);
-        assertThat(countPathStartsWith(requests, "/api/rooms/recommend")).isEqualTo(1);
         assertThat(countPathEquals(requests, "/api/rooms/1/confirm-availability")).isEqualTo(1);
         assertThat(countPathStartsWith(requests, "/api/rooms/1/release")).isEqualTo(1);
     }
@@ -232,10 +358,6 @@ class BookingSagaIT {
             public MockResponse dispatch(RecordedRequest request) {
                 String path = request.getPath();
 
-                if (path != null && path.startsWith("/api/rooms/recommend")) {
-                    return json(200, "[{\"id\":1,\"hotelId\":77,\"number\":\"101\",\"available\":true}]");
-                }
-
                 if ("/api/rooms/1/confirm-availability".equals(path)) {
                     return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
                 }
@@ -248,7 +370,7 @@ class BookingSagaIT {
             }
         });
 
-        BookingDtos.CreateBookingRequest req = createRequest(true, null);
+        BookingDtos.CreateBookingRequest req = createRequest(false, 1L);
 
         MvcResult mvcResult = mockMvc.perform(
                         post("/api/booking")
@@ -280,13 +402,13 @@ class BookingSagaIT {
         mockWebServer.setDispatcher(new Dispatcher() {
             @Override
             public MockResponse dispatch(RecordedRequest request) {
-                String path = request.getPath();
-                if (path != null && path.startsWith("/api/rooms/recommend")) {
-                    return json(200, "[{\"id\":1,\"hotelId\":77,\"number\":\"101\",\"available\":true}]");
+                if ("/api/rooms/reserve".equals(request.getPath())) {
+                    return json(200, "{\"id\":1,\"hotelId\":77,\"number\":\"101\",\"available\":true}");
                 }
-                if ("/api/rooms/1/confirm-availability".equals(path)) {
+                if (request.getPath() != null && request.getPath().startsWith("/api/rooms/commit")) {
                     return new MockResponse().setResponseCode(200);
                 }
+
                 return new MockResponse().setResponseCode(404);
             }
         });
@@ -304,8 +426,7 @@ class BookingSagaIT {
                 .andExpect(status().isOk());
 
         List<RecordedRequest> first = takeAllRequests(600);
-        assertThat(countPathStartsWith(first, "/api/rooms/recommend")).isEqualTo(1);
-        assertThat(countPathEquals(first, "/api/rooms/1/confirm-availability")).isEqualTo(1);
+        assertThat(countPathEquals(first, "/api/rooms/reserve")).isEqualTo(1);
 
         // 2) второй вызов с тем же X-Request-Id — 409 и НОЛЬ вызовов hotel-service
         mockMvc.perform(
@@ -346,6 +467,10 @@ class BookingSagaIT {
                     return new MockResponse().setResponseCode(200);
                 }
 
+                if (request.getPath() != null && request.getPath().startsWith("/api/rooms/commit")) {
+                    return new MockResponse().setResponseCode(200);
+                }
+
                 return new MockResponse().setResponseCode(404);
             }
         });
@@ -399,8 +524,352 @@ class BookingSagaIT {
         assertThat(countPathStartsWith(requests, "/api/rooms/1/release")).isEqualTo(1);
     }
 
+    @Test
+    void groupBooking_confirmsAllRoomsInOneCall() throws Exception {
+        String requestId = "rq-group-1";
+
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("/api/rooms/confirm-availability/batch".equals(request.getPath())) {
+                    assertThat(request.getHeader("X-Request-Id")).isEqualTo(requestId);
+                    return new MockResponse().setResponseCode(200);
+                }
+                if (request.getPath() != null && request.getPath().startsWith("/api/rooms/commit")) {
+                    return new MockResponse().setResponseCode(200);
+                }
+
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        LocalDate start = LocalDate.now().plusDays(1);
+        BookingDtos.CreateGroupBookingRequest req =
+                new BookingDtos.CreateGroupBookingRequest(start, start.plusDays(3), List.of(1L, 2L, 3L));
+
+        MvcResult mvcResult = mockMvc.perform(
+                        post("/api/booking/group")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", requestId)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(req))
+                )
+                .andExpect(status().isOk())
+                .andReturn();
+
+        BookingDtos.BookingResponse[] response = objectMapper.readValue(
+                mvcResult.getResponse().getContentAsString(), BookingDtos.BookingResponse[].class);
+        assertThat(response).hasSize(3);
+        assertThat(response).allMatch(b -> "CONFIRMED".equals(String.valueOf(b.status())));
+
+        List<RecordedRequest> requests = takeAllRequests(400);
+        assertThat(countPathEquals(requests, "/api/rooms/confirm-availability/batch")).isEqualTo(1);
+        assertThat(countPathStartsWith(requests, "/api/rooms/1/confirm-availability")).isEqualTo(0);
+    }
+
+    @Test
+    void groupBooking_conflict_409_cancelsAll_noRelease() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("/api/rooms/confirm-availability/batch".equals(request.getPath())) {
+                    return json(409, "{\"status\":409,\"message\":\"Room 2 is not available for this period\"}");
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        LocalDate start = LocalDate.now().plusDays(1);
+        BookingDtos.CreateGroupBookingRequest req =
+                new BookingDtos.CreateGroupBookingRequest(start, start.plusDays(3), List.of(1L, 2L));
+
+        mockMvc.perform(
+                        post("/api/booking/group")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", "rq-group-conflict-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(req))
+                )
+                .andExpect(status().isConflict());
+
+        List<Booking> bookings = bookingRepository.findAll();
+        assertThat(bookings).hasSize(2);
+        assertThat(bookings).allMatch(b -> "CANCELLED".equals(b.getStatus().name()));
+
+        // всё или ничего: hotel-service ничего не заблокировал, компенсировать нечего
+        List<RecordedRequest> requests = takeAllRequests(400);
+        assertThat(countPathEquals(requests, "/api/rooms/confirm-availability/batch")).isEqualTo(1);
+        assertThat(countPathStartsWith(requests, "/api/rooms/1/release")).isEqualTo(0);
+        assertThat(countPathStartsWith(requests, "/api/rooms/2/release")).isEqualTo(0);
+    }
+
+    @Test
+    void groupBooking_commitFails_releasesAllRoomsConcurrently() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if ("/api/rooms/confirm-availability/batch".equals(path)) {
+                    return new MockResponse().setResponseCode(200);
+                }
+                if (path != null && path.startsWith("/api/rooms/commit")) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                if (path != null && path.matches("/api/rooms/[123]/release\\?bookingId=.*")) {
+                    return new MockResponse().setResponseCode(200);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        LocalDate start = LocalDate.now().plusDays(1);
+        BookingDtos.CreateGroupBookingRequest req =
+                new BookingDtos.CreateGroupBookingRequest(start, start.plusDays(3), List.of(1L, 2L, 3L));
+
+        mockMvc.perform(
+                        post("/api/booking/group")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", "rq-group-commit-fail-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(req))
+                )
+                .andExpect(status().isServiceUnavailable());
+
+        assertThat(bookingRepository.findAll()).allMatch(b -> "CANCELLED".equals(b.getStatus().name()));
+
+        // компенсация через releaseAsync: по одному release на номер, все дождались до ответа клиенту
+        List<RecordedRequest> requests = takeAllRequests(400);
+        assertThat(countPathStartsWith(requests, "/api/rooms/1/release")).isEqualTo(1);
+        assertThat(countPathStartsWith(requests, "/api/rooms/2/release")).isEqualTo(1);
+        assertThat(countPathStartsWith(requests, "/api/rooms/3/release")).isEqualTo(1);
+    }
+
+    @Test
+    void asyncClient_retries5xxOnTimer_andMaps409WithoutRetry() throws Exception {
+        AtomicInteger recommendCalls = new AtomicInteger();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (path != null && path.startsWith("/api/rooms/recommend")) {
+                    return recommendCalls.incrementAndGet() == 1
+                            ? new MockResponse().setResponseCode(500)
+                            : json(200, "[{\"id\":5,\"hotelId\":77,\"number\":\"105\",\"available\":true}]");
+                }
+                if ("/api/rooms/1/confirm-availability".equals(path)) {
+                    return json(409, "{\"status\":409,\"message\":\"Room is not available for this period\"}");
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        LocalDate start = LocalDate.now().plusDays(1);
+
+        List<HotelRoomDto> rooms = hotelServiceClient
+                .recommendRoomsAsync(start, start.plusDays(2), 3, "service-jwt", "rq-async-client-1")
+                .get(5, TimeUnit.SECONDS);
+        assertThat(rooms).extracting(HotelRoomDto::id).containsExactly(5L);
+        assertThat(recommendCalls.get()).isEqualTo(2);
+
+        CompletableFuture<Void> confirm = hotelServiceClient.confirmAvailabilityAsync(1L,
+                new ConfirmAvailabilityRequest(start, start.plusDays(2), "b-async-1", "rq-async-client-2"),
+                "service-jwt", "rq-async-client-2");
+        assertThat(confirm).failsWithin(Duration.ofSeconds(5))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(ConflictException.class)
+                .withMessageContaining("Room is not available for this period");
+
+        List<RecordedRequest> requests = takeAllRequests(400);
+        assertThat(countPathEquals(requests, "/api/rooms/1/confirm-availability")).isEqualTo(1);
+    }
+
+    @Test
+    void hotelServiceDown_retryBudgetCapsRetries_thenCircuitOpensAndFailsFast() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+
+        LocalDate start = LocalDate.now().plusDays(1);
+        int calls = 0;
+        ServiceUnavailableException last = null;
+        while (calls < 50) {
+            calls++;
+            try {
+                hotelServiceClient.recommendRooms(start, start.plusDays(2), 3, "service-jwt", "rq-breaker-" + calls);
+            } catch (ServiceUnavailableException ex) {
+                last = ex;
+                if (ex.getMessage().contains("circuit")) {
+                    break;
+                }
+            }
+        }
+        assertThat(last).isNotNull();
+        assertThat(last.getMessage()).contains("circuit for 'recommend' is open");
+
+        int attempts = takeAllRequests(400).size();
+        int callsBeforeOpen = calls - 1;
+        // breaker открылся по minimum-calls (20) сбоев подряд
+        assertThat(attempts).isGreaterThanOrEqualTo(20);
+        // без бюджета каждый вызов сделал бы 3 попытки; бюджет срезал ретраи до доли трафика
+        assertThat(attempts).isLessThan(3 * callsBeforeOpen);
+
+        // пока breaker открыт, вызов не доходит до hotel-service
+        assertThatThrownBy(() -> hotelServiceClient.recommendRooms(start, start.plusDays(2), 3, "service-jwt", "rq-breaker-x"))
+                .isInstanceOf(ServiceUnavailableException.class)
+                .hasMessageContaining("is open");
+        assertThat(takeAllRequests(200)).isEmpty();
+
+        assertThat(meterRegistry.get("hotel.client.circuit.state").tag("operation", "recommend").gauge().value())
+                .isEqualTo(2.0);
+        assertThat(meterRegistry.get("hotel.client.calls").tag("operation", "recommend").tag("outcome", "rejected")
+                .counter().count()).isGreaterThanOrEqualTo(2.0);
+        assertThat(meterRegistry.get("hotel.client.retries").tag("outcome", "budget_exhausted")
+                .counter().count()).isPositive();
+    }
+
+    @Test
+    void asyncBooking_returns202Pending_thenConfirmsInBackground() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if ("/api/rooms/1/confirm-availability".equals(path)) {
+                    return new MockResponse().setResponseCode(200);
+                }
+                if (path != null && path.startsWith("/api/rooms/commit")) {
+                    return new MockResponse().setResponseCode(200);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        MvcResult mvcResult = mockMvc.perform(
+                        post("/api/booking")
+                                .param("async", "true")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", "rq-async-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createRequest(false, 1L)))
+                )
+                .andExpect(status().isAccepted())
+                .andReturn();
+
+        BookingDtos.BookingResponse accepted =
+                objectMapper.readValue(mvcResult.getResponse().getContentAsString(), BookingDtos.BookingResponse.class);
+        assertThat(String.valueOf(accepted.status())).isEqualTo("PENDING");
+        assertThat(mvcResult.getResponse().getHeader("Location")).isEqualTo("/api/booking/" + accepted.id());
+
+        assertThat(awaitStatus(accepted.id(), 5000)).isEqualTo("CONFIRMED");
+    }
+
+    @Test
+    void asyncAutoSelect_noRoomsLeft_endsCancelledWithoutRoom() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("/api/rooms/reserve".equals(request.getPath())) {
+                    return json(409, "{\"status\":409,\"message\":\"No available rooms for this period\"}");
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        MvcResult mvcResult = mockMvc.perform(
+                        post("/api/booking")
+                                .param("async", "true")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", "rq-async-auto-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createRequest(true, null)))
+                )
+                .andExpect(status().isAccepted())
+                .andReturn();
+
+        BookingDtos.BookingResponse accepted =
+                objectMapper.readValue(mvcResult.getResponse().getContentAsString(), BookingDtos.BookingResponse.class);
+        assertThat(accepted.roomId()).isNull();
+
+        assertThat(awaitStatus(accepted.id(), 5000)).isEqualTo("CANCELLED");
+        assertThat(bookingRepository.findById(accepted.id()).orElseThrow().getRoomId()).isNull();
+
+        List<RecordedRequest> requests = takeAllRequests(400);
+        assertThat(countPathEquals(requests, "/api/rooms/reserve")).isEqualTo(1);
+    }
+
+    @Test
+    void cancelDuringSlowConfirm_cancelsFirst_thenSagaCompensatesItsHold() throws Exception {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<String> statusesSeenByRelease = new CopyOnWriteArrayList<>();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if ("/api/rooms/1/confirm-availability".equals(path)) {
+                    // пользователь отменяет бронь, пока confirm саги ещё «в полёте»
+                    if (cancelled.compareAndSet(false, true)) {
+                        Booking booking = bookingRepository.findAll().get(0);
+                        bookingService.cancel(booking.getId(), booking.getUserId());
+                    }
+                    return new MockResponse().setResponseCode(200);
+                }
+                if (path != null && path.startsWith("/api/rooms/commit")) {
+                    return new MockResponse().setResponseCode(200);
+                }
+                if (path != null && path.startsWith("/api/rooms/1/release")) {
+                    statusesSeenByRelease.add(bookingRepository.findAll().get(0).getStatus().name());
+                    return new MockResponse().setResponseCode(200);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        MvcResult mvcResult = mockMvc.perform(
+                        post("/api/booking")
+                                .param("async", "true")
+                                .with(userJwt(2))
+                                .header("X-Request-Id", "rq-async-cancel-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createRequest(false, 1L)))
+                )
+                .andExpect(status().isAccepted())
+                .andReturn();
+        BookingDtos.BookingResponse accepted =
+                objectMapper.readValue(mvcResult.getResponse().getContentAsString(), BookingDtos.BookingResponse.class);
+
+        List<RecordedRequest> requests = takeAllRequests(1000);
+        List<String> paths = requests.stream().map(RecordedRequest::getPath).toList();
+
+        assertThat(cancelled).isTrue();
+        assertThat(bookingRepository.findById(accepted.id()).orElseThrow().getStatus().name()).isEqualTo("CANCELLED");
+        // release отмены уходит уже после записи CANCELLED
+        assertThat(statusesSeenByRelease).isNotEmpty().allMatch("CANCELLED"::equals);
+        // markConfirmed саги проиграл отмене — сага сама сняла удержание, созданное её confirm
+        int lastConfirm = paths.lastIndexOf("/api/rooms/1/confirm-availability");
+        assertThat(paths.subList(lastConfirm + 1, paths.size()))
+                .anyMatch(p -> p != null && p.startsWith("/api/rooms/1/release"));
+    }
+
     // ---------------- helpers ----------------
 
+    /**
+     * Дождаться финального статуса брони, которую ведёт асинхронная сага.
+     */
+    private String awaitStatus(Long bookingId, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        String status = null;
+        while (System.currentTimeMillis() < deadline) {
+            status = bookingRepository.findById(bookingId).orElseThrow().getStatus().name();
+            if (!"PENDING".equals(status)) {
+                return status;
+            }
+            Thread.sleep(20);
+        }
+        return status;
+    }
+
     private static MockResponse json(int code, String json) {
         return new MockResponse()
                 .setResponseCode(code)
@@ -408,6 +877,23 @@ class BookingSagaIT {
                 .setBody(json);
     }
 
+    /**
+     * Первый HTTP-обмен в JVM заметно медленнее остальных и может не уложиться в read-timeout 50 мс,
+     * из-за чего первый вызов теста неожиданно уходит в retry. Прогреваю клиент заранее.
+     */
+    private void warmUpHttpClient() {
+        for (int i = 0; i < 3; i++) {
+            try {
+                restTemplate.getForEntity(baseUrl + "/warm-up", String.class);
+            } catch (Exception ignored) {
+            }
+            try {
+                webClient.get().uri(baseUrl + "/warm-up").retrieve().toBodilessEntity().block(Duration.ofSeconds(2));
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
     private void drainRequests() throws InterruptedException {
         while (mockWebServer.takeRequest(10, TimeUnit.MILLISECONDS) != null) {
             // no-op
@@ -474,5 +960,21 @@ class BookingSagaIT {
             factory.setReadTimeout(readTimeoutMs);
             return new RestTemplate(factory);
         }
+
+        /**
+         * Неблокирующий клиент без балансировщика (discovery выключен) с тем же read-timeout;
+         * кодеки — из билдера Spring Boot, как у боевого клиента.
+         */
+        @Bean
+        @Primary
+        public WebClient testWebClient(
+                WebClient.Builder webClientBuilder,
+                @Value("${services.hotel-service.read-timeout-ms}") long readTimeoutMs
+        ) {
+            HttpClient httpClient = HttpClient.create().responseTimeout(Duration.ofMillis(readTimeoutMs));
+            return webClientBuilder
+                    .clientConnector(new ReactorClientHttpConnector(httpClient))
+                    .build();
+        }
     }
 }
@@ -0,0 +1,271 @@
+package ru.mifi.booking.bookingservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.client.RestTemplate;
+import ru.mifi.booking.bookingservice.dto.BookingDtos;
+import ru.mifi.booking.bookingservice.repository.BookingRepository;
+import ru.mifi.booking.bookingservice.repository.RequestLogRepository;
+import ru.mifi.booking.bookingservice.service.DbConcurrencyLimiter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Нагрузочный прогон: 1000+ одновременных бронирований против hotel-service с задержкой ответа.
+ *
+ * <p>
+ * Сравниваю две модели исполнения запросов: пул из 200 платформенных потоков (как дефолтный Tomcat)
+ * и поток на запрос на виртуальных потоках. Бронь почти всё время ждёт confirm/commit hotel-service,
+ * поэтому на платформенном пуле запросы идут волнами по 200, а на виртуальных — почти все разом.
+ * Контекст поднят с spring.threads.virtual.enabled=true, как в бою.
+ * Время обоих прогонов пишу в лог (соотношение зависит от машины), а жёстко проверяю, что все брони
+ * подтверждены и что защитные потолки держат: одновременных вызовов hotel-service не больше
+ * services.hotel-service.max-concurrent-calls, хотя запросов в полёте в разы больше, а к пулу Hikari
+ * (20 соединений) брони идут через DbConcurrencyLimiter и не ловят 500 по connectionTimeout.
+ * </p>
+ *
+ * <p>
+ * Клиент здесь — боевой пул Apache HttpClient (без @LoadBalanced, discovery в тестах выключен),
+ * поэтому заодно видно переиспользование keep-alive соединений и метрики пула.
+ * </p>
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Import(VirtualThreadLoadIT.PooledRestTemplateConfig.class)
+class VirtualThreadLoadIT {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadLoadIT.class);
+
+    private static final int BOOKINGS = 1200;
+    private static final int PLATFORM_THREADS = 200;
+    private static final long HOTEL_DELAY_MS = 20;
+    /** Потолок одновременных вызовов hotel-service: bulkhead клиента и пул соединений. */
+    private static final int CALL_CAP = 100;
+    private static final int DB_POOL = 20;
+
+    private static MockWebServer mockWebServer;
+    private static String baseUrl;
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private BookingRepository bookingRepository;
+    @Autowired private RequestLogRepository requestLogRepository;
+    @Autowired private MeterRegistry meterRegistry;
+    @Autowired private DbConcurrencyLimiter dbLimiter;
+
+    /** Запросы, пришедшие в mock hotel-service по уже открытому соединению (keep-alive). */
+    private final AtomicInteger reusedConnections = new AtomicInteger();
+    private final AtomicInteger totalRequests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private static synchronized String getBaseUrl() {
+        if (mockWebServer == null) {
+            mockWebServer = new MockWebServer();
+            try {
+                mockWebServer.start();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to start MockWebServer", e);
+            }
+            baseUrl = "http://localhost:" + mockWebServer.getPort();
+        }
+        return baseUrl;
+    }
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("services.hotel-service.base-url", VirtualThreadLoadIT::getBaseUrl);
+        registry.add("services.hotel-service.retry.max-attempts", () -> "3");
+        registry.add("services.hotel-service.retry.backoff-ms", () -> "10,10,10");
+        registry.add("services.hotel-service.connect-timeout-ms", () -> "2000");
+        // под нагрузкой ответы заметно медленнее 50 мс из BookingSagaIT — иначе прогон уйдёт в ретраи
+        registry.add("services.hotel-service.read-timeout-ms", () -> "5000");
+        registry.add("services.hotel-service.max-concurrent-calls", () -> String.valueOf(CALL_CAP));
+        // брони сверх потолка ждут места в bulkhead, а не получают 503
+        registry.add("services.hotel-service.permit-wait-ms", () -> "30000");
+        registry.add("services.hotel-service.pool.max-total", () -> String.valueOf(CALL_CAP));
+        registry.add("services.hotel-service.pool.max-per-route", () -> String.valueOf(CALL_CAP));
+        registry.add("services.hotel-service.pool.acquire-timeout-ms", () -> "30000");
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> String.valueOf(DB_POOL));
+        // очередь за разрешением БД на 1200 броней длиннее дефолтных 5 с — ждём, а не 503
+        registry.add("booking.db.limiter.wait-ms", () -> "30000");
+        registry.add("spring.cloud.discovery.enabled", () -> "false");
+        registry.add("spring.threads.virtual.enabled", () -> "true");
+    }
+
+    @AfterAll
+    static void shutdown() throws IOException {
+        if (mockWebServer != null) {
+            mockWebServer.shutdown();
+        }
+    }
+
+    @BeforeEach
+    void reset() {
+        getBaseUrl();
+
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                totalRequests.incrementAndGet();
+                if (request.getSequenceNumber() > 0) {
+                    reusedConnections.incrementAndGet();
+                }
+                if (path != null && (path.endsWith("/confirm-availability") || path.startsWith("/api/rooms/commit"))) {
+                    // задержку держу внутри dispatch, чтобы вызов считался «в полёте» всё время ответа
+                    peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(HOTEL_DELAY_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                    return new MockResponse().setResponseCode(200);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        bookingRepository.deleteAll();
+        requestLogRepository.deleteAll();
+    }
+
+    @Test
+    void thousandConcurrentBookings_virtualThreadsVsPlatformPool() throws Exception {
+        // прогрев: JIT, соединения, Hibernate — чтобы первый замер не проигрывал из-за холодного старта
+        runBookings("warm-up", Executors.newFixedThreadPool(50), 200);
+        bookingRepository.deleteAll();
+        requestLogRepository.deleteAll();
+
+        long platformMs = runBookings("platform", Executors.newFixedThreadPool(PLATFORM_THREADS), BOOKINGS);
+        long virtualMs = runBookings("virtual", Executors.newVirtualThreadPerTaskExecutor(), BOOKINGS);
+
+        log.info("{} concurrent bookings, hotel-service delay {} ms: platform({} threads) {} ms ({} rps), virtual {} ms ({} rps)",
+                BOOKINGS, HOTEL_DELAY_MS,
+                PLATFORM_THREADS, platformMs, BOOKINGS * 1000L / Math.max(1, platformMs),
+                virtualMs, BOOKINGS * 1000L / Math.max(1, virtualMs));
+
+        assertThat(bookingRepository.count()).isEqualTo(2L * BOOKINGS);
+        assertThat(bookingRepository.findAll())
+                .allMatch(b -> "CONFIRMED".equals(b.getStatus().name()));
+
+        // 1200 броней в полёте разом, но до hotel-service одновременно доходит не больше потолка
+        log.info("hotel-service peak in-flight calls: {} (cap {})", peakInFlight.get(), CALL_CAP);
+        assertThat(peakInFlight.get()).isGreaterThan(1).isLessThanOrEqualTo(CALL_CAP);
+
+        // 2 вызова на бронь, а новое соединение открывалось не чаще, чем раз на одновременный вызов: остальное — keep-alive
+        log.info("hotel-service requests: {}, over reused connections: {}", totalRequests.get(), reusedConnections.get());
+        assertThat(reusedConnections.get()).isGreaterThan(totalRequests.get() / 2);
+
+        assertThat(poolGauge("httpcomponents.httpclient.pool.total.connections", "leased")).isZero();
+        assertThat(poolGauge("httpcomponents.httpclient.pool.total.connections", "available")).isPositive();
+        assertThat(meterRegistry.get("httpcomponents.httpclient.pool.total.pending")
+                .tag("httpclient", "hotel-service").gauge().value()).isZero();
+
+        // лимитер БД включён вместе с виртуальными потоками, и все разрешения вернулись
+        assertThat(dbLimiter.isEnabled()).isTrue();
+        assertThat(dbLimiter.availablePermits()).isEqualTo(DB_POOL);
+    }
+
+    private double poolGauge(String name, String state) {
+        return meterRegistry.get(name)
+                .tag("httpclient", "hotel-service")
+                .tag("state", state)
+                .gauge()
+                .value();
+    }
+
+    /**
+     * Отправить count броней разом через pool и дождаться всех.
+     *
+     * @return время прогона, мс
+     */
+    private long runBookings(String label, ExecutorService pool, int count) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                long roomId = 1 + (i % 100);
+                String requestId = "rq-load-" + label + "-" + i;
+                Callable<Integer> call = () -> {
+                    start.await();
+                    return mockMvc.perform(
+                            post("/api/booking")
+                                    .with(jwt()
+                                            .jwt(token -> token.subject("2").claim("role", "USER"))
+                                            .authorities(new SimpleGrantedAuthority("ROLE_USER")))
+                                    .header("X-Request-Id", requestId)
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .content(objectMapper.writeValueAsString(createRequest(roomId)))
+                    ).andReturn().getResponse().getStatus();
+                };
+                results.add(pool.submit(call));
+            }
+
+            long startedAt = System.nanoTime();
+            start.countDown();
+            for (Future<Integer> f : results) {
+                assertThat(f.get(60, TimeUnit.SECONDS)).isEqualTo(200);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static BookingDtos.CreateBookingRequest createRequest(long roomId) {
+        LocalDate start = LocalDate.now().plusDays(1);
+        return new BookingDtos.CreateBookingRequest(start, start.plusDays(2), false, roomId);
+    }
+
+    @TestConfiguration
+    static class PooledRestTemplateConfig {
+
+        @Bean
+        @Primary
+        public RestTemplate pooledTestRestTemplate(CloseableHttpClient hotelServiceHttpClient) {
+            return new RestTemplate(new HttpComponentsClientHttpRequestFactory(hotelServiceHttpClient));
+        }
+    }
+}
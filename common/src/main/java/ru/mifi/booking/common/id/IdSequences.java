@@ -0,0 +1,55 @@
+package ru.mifi.booking.common.id;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Выравнивание последовательностей id по уже существующим строкам — общее для сервисов.
+ *
+ * <p>
+ * ddl-auto создаёт последовательности с 1, а в таблицах, заполненных ещё при IDENTITY, id уже заняты.
+ * Каждую последовательность, чьё следующее значение не больше max(id) таблицы, перезапускаю с max(id) + 1.
+ * На пустой или уже переведённой базе это no-op: выбранный при проверке блок id просто пропадает.
+ * Здесь только JDBC (модуль без Spring); когда вызывать и что логировать, решает сервис.
+ * </p>
+ */
+public final class IdSequences {
+
+    private IdSequences() {
+    }
+
+    /**
+     * @param dataSource       источник соединений сервиса
+     * @param sequencesByTable таблица → последовательность её id (имена — константы сервиса, не ввод пользователя)
+     * @return сдвинутые последовательности → новое начальное значение (пусто — сдвигать было нечего)
+     */
+    public static Map<String, Long> alignPastMaxId(DataSource dataSource, Map<String, String> sequencesByTable) {
+        Map<String, Long> restarted = new LinkedHashMap<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (Map.Entry<String, String> e : sequencesByTable.entrySet()) {
+                long maxId = queryLong(statement, "select coalesce(max(id), 0) from " + e.getKey());
+                long next = queryLong(statement, "select next value for " + e.getValue());
+                if (next > maxId) {
+                    continue;
+                }
+                statement.execute("alter sequence " + e.getValue() + " restart with " + (maxId + 1));
+                restarted.put(e.getValue(), maxId + 1);
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to align id sequences " + sequencesByTable.values(), ex);
+        }
+        return restarted;
+    }
+
+    private static long queryLong(Statement statement, String sql) throws SQLException {
+        try (ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+}
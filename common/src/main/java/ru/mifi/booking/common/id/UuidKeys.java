@@ -0,0 +1,43 @@
+package ru.mifi.booking.common.id;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Хранение строковых корреляционных id (bookingId, X-Request-Id) в 16-байтной UUID-колонке.
+ *
+ * <p>
+ * Канонический UUID (36 символов, регистр не важен) хранится как есть. Любая другая строка клиента
+ * хранится как name-based UUID (v3) от её UTF-8 байт: отображение детерминированное, поэтому поиск
+ * и уникальность по исходной строке работают, но обратно читается уже UUID, а не исходная строка.
+ * </p>
+ */
+public final class UuidKeys {
+
+    private static final int CANONICAL_LENGTH = 36;
+
+    private UuidKeys() {
+    }
+
+    /**
+     * @param value исходный идентификатор (может быть null)
+     * @return UUID для хранения или null
+     */
+    public static UUID toUuid(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.length() == CANONICAL_LENGTH) {
+            try {
+                UUID uuid = UUID.fromString(value);
+                // fromString принимает и неканонические формы ("1-1-1-1-1"), их считаю обычной строкой.
+                if (uuid.toString().equalsIgnoreCase(value)) {
+                    return uuid;
+                }
+            } catch (IllegalArgumentException ignored) {
+                // не UUID — ниже
+            }
+        }
+        return UUID.nameUUIDFromBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
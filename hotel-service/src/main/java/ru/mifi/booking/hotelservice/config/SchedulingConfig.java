@@ -0,0 +1,12 @@
+package ru.mifi.booking.hotelservice.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включение фоновых задач (@Scheduled) hotel-service.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
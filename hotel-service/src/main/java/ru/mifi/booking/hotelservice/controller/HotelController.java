@@ -3,12 +3,24 @@ package ru.mifi.booking.hotelservice.controller;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.format.annotation.DateTimeFormat;
+import ru.mifi.booking.hotelservice.dto.HotelDeletionJobDto;
 import ru.mifi.booking.hotelservice.dto.HotelDto;
+import ru.mifi.booking.hotelservice.dto.HotelImportReportDto;
+import ru.mifi.booking.hotelservice.dto.HotelOccupancyDto;
 import ru.mifi.booking.hotelservice.dto.UpdateHotelRequest;
+import ru.mifi.booking.hotelservice.service.HotelDeletionJobs;
+import ru.mifi.booking.hotelservice.service.HotelImportService;
 import ru.mifi.booking.hotelservice.service.HotelService;
+import ru.mifi.booking.hotelservice.service.OccupancyService;
 
+import java.io.InputStream;
+import java.net.URI;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -19,10 +31,20 @@ import java.util.List;
 @RequestMapping("/api/hotels")
 public class HotelController {
 
+
     private final HotelService hotelService;
+    private final OccupancyService occupancyService;
+    private final HotelDeletionJobs deletionJobs;
+    private final HotelImportService importService;
 
-    public HotelController(HotelService hotelService) {
+    public HotelController(HotelService hotelService,
+                           OccupancyService occupancyService,
+                           HotelDeletionJobs deletionJobs,
+                           HotelImportService importService) {
         this.hotelService = hotelService;
+        this.occupancyService = occupancyService;
+        this.deletionJobs = deletionJobs;
+        this.importService = importService;
     }
 
     /**
@@ -67,14 +89,93 @@ public class HotelController {
         return hotelService.update(id, req);
     }
 
+    /**
+     * ADMIN: массовый импорт отелей и номеров из потокового тела (text/csv или application/x-ndjson).
+     *
+     * <p>
+     * Строки пишутся порциями; ошибочные строки попадают в отчёт и не прерывают загрузку.
+     * </p>
+     *
+     * @param contentType формат тела
+     * @param body        тело запроса, читается построчно
+     * @return итог импорта
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public HotelImportReportDto importHotels(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body
+    ) {
+        return importService.importRows(body, HotelImportService.Format.fromContentType(contentType));
+    }
+
+    /**
+     * ADMIN: тепловая карта загрузки отеля по дням (из материализованной таблицы).
+     *
+     * @param id    идентификатор отеля
+     * @param start первая ночь окна (ISO-8601)
+     * @param end   конец окна, не включительно (ISO-8601), не длиннее 366 дней
+     * @return число номеров и занятость по каждой ночи окна
+     */
+    @GetMapping("/{id}/occupancy")
+    public HotelOccupancyDto occupancy(
+            @PathVariable("id") Long id,
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end
+    ) {
+        hotelService.getOrThrow(id);
+
+        return occupancyService.occupancy(id, start, end);
+    }
+
+    /**
+     * ADMIN: пересобрать дневную загрузку из room_locks.
+     *
+     * @param hotelId идентификатор отеля (если не указан — все отели)
+     */
+    @PostMapping("/occupancy/rebuild")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void rebuildOccupancy(@RequestParam(value = "hotelId", required = false) Long hotelId) {
+        if (hotelId != null) {
+            hotelService.getOrThrow(hotelId);
+        }
+        occupancyService.rebuild(hotelId);
+    }
+
     /**
      * ADMIN: удалить отель.
      *
-     * @param id идентификатор отеля
+     * <p>
+     * С async=true удаление уходит в фон: ответ 202 с задачей, прогресс — через GET /api/hotels/delete-jobs/{jobId}.
+     * </p>
+     *
+     * @param id    идентификатор отеля
+     * @param async удалять в фоне (для отелей с большим числом номеров)
+     * @return 204 No Content или 202 Accepted с задачей удаления
      */
     @DeleteMapping("/{id}")
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void delete(@PathVariable("id") Long id) {
-        hotelService.delete(id);
+    public ResponseEntity<HotelDeletionJobDto> delete(
+            @PathVariable("id") Long id,
+            @RequestParam(value = "async", defaultValue = "false") boolean async
+    ) {
+        if (!async) {
+            hotelService.delete(id);
+            return ResponseEntity.noContent().build();
+        }
+
+        HotelDeletionJobDto job = deletionJobs.start(id);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/hotels/delete-jobs/" + job.jobId()))
+                .body(job);
+    }
+
+    /**
+     * ADMIN: прогресс фонового удаления отеля.
+     *
+     * @param jobId идентификатор задачи
+     * @return состояние задачи
+     */
+    @GetMapping("/delete-jobs/{jobId}")
+    public HotelDeletionJobDto deletionJob(@PathVariable("jobId") String jobId) {
+        return deletionJobs.get(jobId);
     }
-}
\ No newline at end of file
+}
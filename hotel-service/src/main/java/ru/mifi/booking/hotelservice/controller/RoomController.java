@@ -4,18 +4,28 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 
 import jakarta.validation.Valid;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.MDC;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityBatchRequest;
 import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.dto.RoomCalendarDto;
 import ru.mifi.booking.hotelservice.dto.RoomDto;
+import ru.mifi.booking.hotelservice.dto.RoomOperationResult;
+import ru.mifi.booking.hotelservice.dto.RoomOperationsRequest;
 import ru.mifi.booking.hotelservice.dto.RoomStatsDto;
 import ru.mifi.booking.hotelservice.dto.UpdateRoomRequest;
 import ru.mifi.booking.hotelservice.service.HotelService;
 import ru.mifi.booking.hotelservice.service.RoomService;
+import ru.mifi.booking.hotelservice.service.StatsExportService;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Контроллер работы с номерами (rooms).
@@ -30,18 +40,23 @@ import java.util.List;
 @RequestMapping("/api/rooms")
 public class RoomController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
     private final HotelService hotelService;
     private final RoomService roomService;
+    private final StatsExportService statsExportService;
 
     /**
      * Конструктор контроллера.
      *
-     * @param hotelService сервис работы с отелями
-     * @param roomService  сервис работы с номерами
+     * @param hotelService       сервис работы с отелями
+     * @param roomService        сервис работы с номерами
+     * @param statsExportService потоковая выгрузка статистики
      */
-    public RoomController(HotelService hotelService, RoomService roomService) {
+    public RoomController(HotelService hotelService, RoomService roomService, StatsExportService statsExportService) {
         this.hotelService = hotelService;
         this.roomService = roomService;
+        this.statsExportService = statsExportService;
     }
 
     /**
@@ -64,16 +79,33 @@ public class RoomController {
     /**
      * USER: список свободных номеров на период.
      *
-     * @param start дата начала (ISO-8601, например 2025-12-25)
-     * @param end   дата окончания (ISO-8601, например 2025-12-28)
+     * <p>
+     * Без параметров пагинации/фильтров возвращается весь список (как раньше).
+     * С after/size/hotelId/address — одна страница (keyset по id): следующая страница
+     * запрашивается с after = id последнего номера.
+     * </p>
+     *
+     * @param start   дата начала (ISO-8601, например 2025-12-25)
+     * @param end     дата окончания (ISO-8601, например 2025-12-28)
+     * @param after   id последнего номера предыдущей страницы
+     * @param size    размер страницы (по умолчанию 50, максимум 500)
+     * @param hotelId фильтр по отелю
+     * @param address фильтр по началу адреса отеля (например, город)
      * @return список доступных номеров
      */
     @GetMapping
     public List<RoomDto> list(
             @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
-            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "hotelId", required = false) Long hotelId,
+            @RequestParam(value = "address", required = false) String address
     ) {
-        return roomService.listAvailable(start, end);
+        if (after == null && size == null && hotelId == null && address == null) {
+            return roomService.listAvailable(start, end);
+        }
+        return roomService.listAvailablePage(start, end, after, size == null ? DEFAULT_PAGE_SIZE : size, hotelId, address);
     }
 
     /**
@@ -81,14 +113,16 @@ public class RoomController {
      *
      * @param start дата начала (ISO-8601)
      * @param end   дата окончания (ISO-8601)
+     * @param limit сколько первых кандидатов вернуть (если не задан — все)
      * @return список рекомендованных номеров
      */
     @GetMapping("/recommend")
     public List<RoomDto> recommend(
             @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
-            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+            @RequestParam(value = "limit", required = false) Integer limit
     ) {
-        return roomService.recommend(start, end);
+        return roomService.recommend(start, end, limit);
     }
 
     /**
@@ -145,6 +179,51 @@ public class RoomController {
         return roomService.stats(hotelId, start, end);
     }
 
+    /**
+     * ADMIN: потоковая выгрузка статистики по всем номерам всех отелей за период.
+     *
+     * @param start  дата начала (ISO-8601)
+     * @param end    дата окончания (ISO-8601)
+     * @param format ndjson (по умолчанию) или csv
+     * @return тело ответа, которое пишется по мере чтения из БД
+     */
+    @GetMapping("/stats/export")
+    public ResponseEntity<StreamingResponseBody> exportStats(
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+            @RequestParam(value = "format", defaultValue = "ndjson") String format
+    ) {
+        StatsExportService.Format exportFormat = StatsExportService.Format.parse(format);
+        statsExportService.validate(start, end);
+
+        StreamingResponseBody body = out -> statsExportService.write(start, end, exportFormat, out);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"room-stats-" + start + "-" + end + "." + exportFormat.name().toLowerCase(Locale.ROOT) + "\"")
+                .body(body);
+    }
+
+    /**
+     * USER: календарь занятости номеров отеля (битсет ночей в base64 на каждый номер).
+     *
+     * @param hotelId идентификатор отеля
+     * @param start   первая ночь окна (ISO-8601)
+     * @param end     день выезда, не включительно (ISO-8601), окно не длиннее 366 ночей
+     * @return календарь по каждому номеру отеля
+     */
+    @GetMapping("/calendar")
+    public List<RoomCalendarDto> calendar(
+            @RequestParam("hotelId") Long hotelId,
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+            @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end
+    ) {
+        hotelService.getOrThrow(hotelId);
+
+        return roomService.calendar(hotelId, start, end);
+    }
+
     /**
      * INTERNAL: подтвердить доступность номера на период (временная блокировка).
      *
@@ -161,6 +240,62 @@ public class RoomController {
         }
     }
 
+    /**
+     * INTERNAL: заблокировать несколько номеров одной транзакцией (групповое бронирование, всё или ничего).
+     *
+     * @param req элементы группы (roomId, период, bookingId, requestId)
+     */
+    @PostMapping("/confirm-availability/batch")
+    public void confirmBatch(@Valid @RequestBody ConfirmAvailabilityBatchRequest req) {
+        roomService.confirmAvailabilityBatch(req);
+    }
+
+    /**
+     * INTERNAL: пачка независимых confirm/release за один HTTP-вызов (микробатчинг booking-service).
+     *
+     * @param req операции
+     * @return результат каждой операции в том же порядке
+     */
+    @PostMapping("/operations")
+    public List<RoomOperationResult> operations(@Valid @RequestBody RoomOperationsRequest req) {
+        return roomService.applyOperations(req);
+    }
+
+    /**
+     * INTERNAL: выбрать лучший свободный номер на период и сразу заблокировать его (autoSelect).
+     *
+     * @param req запрос (период, bookingId, requestId)
+     * @return заблокированный номер
+     */
+    @PostMapping("/reserve")
+    public RoomDto reserve(@Valid @RequestBody ConfirmAvailabilityRequest req) {
+        try (MDC.MDCCloseable ignored = MDC.putCloseable("bookingUid", req.bookingId())) {
+            return roomService.reserveBest(req);
+        }
+    }
+
+    /**
+     * INTERNAL: booking-service зафиксировал бронь — удержания номеров больше не истекают.
+     *
+     * @param bookingIds идентификаторы бронирований (один или несколько для групповой брони)
+     */
+    @PostMapping("/commit")
+    public void commit(@RequestParam("bookingId") List<String> bookingIds) {
+        roomService.commitHolds(bookingIds);
+    }
+
+    /**
+     * INTERNAL: снять блокировку только по bookingId (номер вызывающей стороне неизвестен).
+     *
+     * @param bookingId идентификатор бронирования
+     */
+    @PostMapping("/release")
+    public void releaseBooking(@RequestParam("bookingId") String bookingId) {
+        try (MDC.MDCCloseable ignored = MDC.putCloseable("bookingUid", bookingId)) {
+            roomService.releaseBooking(bookingId);
+        }
+    }
+
     /**
      * INTERNAL: компенсирующее действие — снять блокировку.
      *
@@ -0,0 +1,28 @@
+package ru.mifi.booking.hotelservice.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Запрос на блокировку нескольких номеров разом (групповое бронирование): всё или ничего.
+ */
+public record ConfirmAvailabilityBatchRequest(
+        @NotEmpty List<@Valid @NotNull Item> items
+) {
+
+    /**
+     * Одна блокировка группы.
+     */
+    public record Item(
+            @NotNull Long roomId,
+            @NotNull LocalDate startDate,
+            @NotNull LocalDate endDate,
+            @NotBlank String bookingId,
+            @NotBlank String requestId
+    ) {}
+}
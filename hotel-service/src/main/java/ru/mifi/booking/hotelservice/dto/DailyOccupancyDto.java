@@ -0,0 +1,11 @@
+package ru.mifi.booking.hotelservice.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Загрузка отеля за одну ночь.
+ */
+public record DailyOccupancyDto(
+        LocalDate day,
+        long occupiedRooms
+) {}
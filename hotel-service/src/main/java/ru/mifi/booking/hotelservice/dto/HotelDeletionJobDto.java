@@ -0,0 +1,21 @@
+package ru.mifi.booking.hotelservice.dto;
+
+/**
+ * Состояние фонового удаления отеля: сколько номеров было на старте и сколько уже удалено.
+ */
+public record HotelDeletionJobDto(
+        String jobId,
+        Long hotelId,
+        Status status,
+        long totalRooms,
+        long deletedRooms,
+        long deletedLocks,
+        String error
+) {
+
+    public enum Status {
+        RUNNING,
+        DONE,
+        FAILED
+    }
+}
@@ -0,0 +1,23 @@
+package ru.mifi.booking.hotelservice.dto;
+
+import java.util.List;
+
+/**
+ * Итог массового импорта: сколько строк прочитано, что создано и какие строки отброшены.
+ * errors обрезается до hotel.import.max-errors, failedRows — полное число ошибочных строк.
+ * complete=false — тело оборвалось при чтении: сохранено только то, что посчитано в отчёте.
+ */
+public record HotelImportReportDto(
+        long rows,
+        long hotelsCreated,
+        long roomsCreated,
+        long failedRows,
+        boolean complete,
+        List<RowError> errors
+) {
+
+    /**
+     * Ошибка одной строки тела (нумерация с 1, как в файле).
+     */
+    public record RowError(long line, String message) {}
+}
@@ -0,0 +1,12 @@
+package ru.mifi.booking.hotelservice.dto;
+
+import java.util.List;
+
+/**
+ * Тепловая карта загрузки отеля: число номеров и занятость по каждой ночи окна (без пропусков).
+ */
+public record HotelOccupancyDto(
+        Long hotelId,
+        long roomsCount,
+        List<DailyOccupancyDto> days
+) {}
@@ -0,0 +1,21 @@
+package ru.mifi.booking.hotelservice.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Календарь занятости номера за окно дат.
+ *
+ * <p>
+ * occupied — base64 от битсета (java.util.BitSet#toByteArray, little-endian):
+ * бит i = 1, если ночь start + i занята блокировкой. Хвостовые нули в битсет не попадают,
+ * поэтому длину окна нужно брать из nights.
+ * </p>
+ */
+public record RoomCalendarDto(
+        Long roomId,
+        String number,
+        boolean available,
+        LocalDate start,
+        int nights,
+        String occupied
+) {}
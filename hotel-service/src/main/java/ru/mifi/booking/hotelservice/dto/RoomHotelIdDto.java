@@ -0,0 +1,9 @@
+package ru.mifi.booking.hotelservice.dto;
+
+/**
+ * Пара «номер — его отель» без загрузки сущности Room.
+ */
+public record RoomHotelIdDto(
+        Long roomId,
+        Long hotelId
+) {}
@@ -0,0 +1,12 @@
+package ru.mifi.booking.hotelservice.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Лёгкая проекция блокировки: только номер и период, без загрузки сущности RoomLock.
+ */
+public record RoomLockSpanDto(
+        Long roomId,
+        LocalDate startDate,
+        LocalDate endDate
+) {}
@@ -0,0 +1,12 @@
+package ru.mifi.booking.hotelservice.dto;
+
+/**
+ * Результат одной операции из {@link RoomOperationsRequest}: HTTP-статус, который вернул бы одиночный вызов.
+ *
+ * @param status  200 — успех, иначе код ошибки (404/409/...)
+ * @param message текст ошибки (null при успехе)
+ */
+public record RoomOperationResult(
+        int status,
+        String message
+) {}
@@ -0,0 +1,39 @@
+package ru.mifi.booking.hotelservice.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Пачка независимых confirm/release от booking-service (микробатчинг на стороне клиента).
+ * В отличие от {@link ConfirmAvailabilityBatchRequest}, каждая операция выполняется и отвечает сама по себе.
+ */
+public record RoomOperationsRequest(
+        @NotEmpty List<@Valid @NotNull Operation> operations
+) {
+
+    public enum Type {
+        CONFIRM,
+        RELEASE,
+        COMMIT
+    }
+
+    /**
+     * Одна операция. Для CONFIRM обязательны roomId/startDate/endDate/requestId, для RELEASE — roomId,
+     * для COMMIT достаточно bookingId. correlationId — X-Request-Id исходного запроса booking-service
+     * (только для логов; у confirm может отличаться от requestId, ключа идемпотентности).
+     */
+    public record Operation(
+            @NotNull Type type,
+            Long roomId,
+            LocalDate startDate,
+            LocalDate endDate,
+            @NotBlank String bookingId,
+            String requestId,
+            String correlationId
+    ) {}
+}
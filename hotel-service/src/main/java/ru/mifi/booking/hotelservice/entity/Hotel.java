@@ -7,11 +7,22 @@ import jakarta.persistence.*;
  * В этом сервисе отель — справочник (имя + адрес).
  */
 @Entity
-@Table(name = "hotels")
+@Table(
+        name = "hotels",
+        indexes = {
+                @Index(name = "idx_hotel_address", columnList = "address")
+        }
+)
 public class Hotel {
 
+    /**
+     * Id из последовательности с выделением блоками: в отличие от IDENTITY не требует INSERT на каждую
+     * сущность до flush, поэтому Hibernate может отправлять вставки JDBC-пачками (массовый импорт).
+     * Существующие данные догоняет {@code IdSequenceMigration}.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "hotel_seq")
+    @SequenceGenerator(name = "hotel_seq", sequenceName = "hotels_seq", allocationSize = 50)
     private Long id;
 
     /** Название отеля. */
@@ -0,0 +1,65 @@
+package ru.mifi.booking.hotelservice.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+
+/**
+ * Материализованная загрузка отеля по дням: сколько номеров занято в ночь stayDate.
+ *
+ * <p>
+ * Поддерживается инкрементально в той же транзакции, что и создание/снятие блокировки,
+ * и может быть пересобрана из room_locks (OccupancyService#rebuild).
+ * Строки с нулевой загрузкой не обязательны — отсутствующий день означает 0.
+ * </p>
+ */
+@Entity
+@Table(
+        name = "hotel_daily_occupancy",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_hotel_occupancy_day", columnNames = {"hotel_id", "stay_date"})
+        }
+)
+public class HotelDailyOccupancy {
+
+    /**
+     * Id из последовательности блоками, как у остальных сущностей: пересборка пишет строки дней через saveAll,
+     * и с IDENTITY каждая из них уходила отдельным INSERT вне пачки. MERGE из OccupancyService#lockAdded
+     * берёт id из той же последовательности.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "hotel_daily_occupancy_seq")
+    @SequenceGenerator(name = "hotel_daily_occupancy_seq", sequenceName = "hotel_daily_occupancy_seq", allocationSize = 50)
+    private Long id;
+
+    /** Идентификатор отеля (без FK-связи: таблица целиком выводится из room_locks). */
+    @Column(name = "hotel_id", nullable = false)
+    private Long hotelId;
+
+    /** Ночь (дата заезда на эту ночь). */
+    @Column(name = "stay_date", nullable = false)
+    private LocalDate stayDate;
+
+    /** Сколько номеров отеля заблокировано на эту ночь. */
+    @Column(name = "occupied_rooms", nullable = false)
+    private long occupiedRooms;
+
+    public HotelDailyOccupancy() {}
+
+    public HotelDailyOccupancy(Long id, Long hotelId, LocalDate stayDate, long occupiedRooms) {
+        this.id = id;
+        this.hotelId = hotelId;
+        this.stayDate = stayDate;
+        this.occupiedRooms = occupiedRooms;
+    }
+
+    public Long getId() { return id; }
+    public Long getHotelId() { return hotelId; }
+    public LocalDate getStayDate() { return stayDate; }
+    public long getOccupiedRooms() { return occupiedRooms; }
+
+    public void setId(Long id) { this.id = id; }
+    public void setHotelId(Long hotelId) { this.hotelId = hotelId; }
+    public void setStayDate(LocalDate stayDate) { this.stayDate = stayDate; }
+    public void setOccupiedRooms(long occupiedRooms) { this.occupiedRooms = occupiedRooms; }
+}
@@ -0,0 +1,10 @@
+package ru.mifi.booking.hotelservice.entity;
+
+/**
+ * Состояние блокировки номера.
+ * HELD — удержание на время саги (истекает по expiresAt), COMMITTED — бронь подтверждена booking-service.
+ */
+public enum LockStatus {
+    HELD,
+    COMMITTED
+}
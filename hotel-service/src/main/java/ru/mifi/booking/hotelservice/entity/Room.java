@@ -7,11 +7,19 @@ import jakarta.persistence.*;
  * timesBooked — метрика "справедливости" для /rooms/recommend (меньше бронирований — выше приоритет).
  */
 @Entity
-@Table(name = "rooms")
+@Table(
+        name = "rooms",
+        indexes = {
+                @Index(name = "idx_room_recommend", columnList = "available, times_booked, id"),
+                @Index(name = "idx_room_hotel", columnList = "hotel_id, available, id")
+        }
+)
 public class Room {
 
+    /** Id из последовательности блоками по 50, как у {@link Hotel} — ради batch-вставок. */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "room_seq")
+    @SequenceGenerator(name = "room_seq", sequenceName = "rooms_seq", allocationSize = 50)
     private Long id;
 
     /** Отель-владелец номера. */
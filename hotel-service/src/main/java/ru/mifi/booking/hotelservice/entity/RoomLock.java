@@ -2,26 +2,36 @@ package ru.mifi.booking.hotelservice.entity;
 
 import jakarta.persistence.*;
 
+import java.time.Instant;
 import java.time.LocalDate;
 
 /**
  * Временная блокировка номера под бронирование (часть саги).
  * bookingId — корреляция между сервисами.
  * requestId — идемпотентность (повторный confirm с тем же requestId не должен создавать дубль).
+ * status/expiresAt — confirm создаёт удержание (HELD) со сроком, booking-service после своего коммита
+ * переводит его в COMMITTED; просроченные удержания снимает {@code HoldSweeper}.
  */
 @Entity
 @Table(
         name = "room_locks",
         indexes = {
-                @Index(name = "idx_room_lock_room", columnList = "room_id"),
+                @Index(name = "idx_room_lock_room", columnList = "room_id, start_date, end_date"),
                 @Index(name = "idx_room_lock_booking", columnList = "booking_id", unique = true),
-                @Index(name = "idx_room_lock_request", columnList = "request_id", unique = true)
+                @Index(name = "idx_room_lock_request", columnList = "request_id", unique = true),
+                @Index(name = "idx_room_lock_expiry", columnList = "status, expires_at")
         }
 )
 public class RoomLock {
 
+    /**
+     * Id из room_locks_seq. Условный INSERT в {@code RoomLockRepository#insertIfFree} берёт
+     * {@code next value for room_locks_seq} сам, поэтому оптимизатор — pooled-lo: значение последовательности
+     * — нижняя граница блока, и id нативной вставки никогда не попадёт в блок, выданный Hibernate.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "room_lock_seq")
+    @SequenceGenerator(name = "room_lock_seq", sequenceName = "room_locks_seq", allocationSize = 50)
     private Long id;
 
     /** Заблокированный номер. */
@@ -35,12 +45,24 @@ public class RoomLock {
     @Column(name = "end_date", nullable = false)
     private LocalDate endDate;
 
+    /** Хранится 16-байтным UUID (см. {@link UuidKeyConverter}); не-UUID строки — как name-based UUID. */
+    @Convert(converter = UuidKeyConverter.class)
     @Column(name = "booking_id", nullable = false, unique = true)
     private String bookingId;
 
+    @Convert(converter = UuidKeyConverter.class)
     @Column(name = "request_id", nullable = false, unique = true)
     private String requestId;
 
+    /** Блокировки, созданные мимо confirm (импорт, тесты), считаются подтверждёнными и не истекают. */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16)
+    private LockStatus status = LockStatus.COMMITTED;
+
+    /** Срок удержания (только для HELD). */
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
     public RoomLock() {}
 
     public RoomLock(Long id, Room room, LocalDate startDate, LocalDate endDate, String bookingId, String requestId) {
@@ -58,6 +80,8 @@ public class RoomLock {
     public LocalDate getEndDate() { return endDate; }
     public String getBookingId() { return bookingId; }
     public String getRequestId() { return requestId; }
+    public LockStatus getStatus() { return status; }
+    public Instant getExpiresAt() { return expiresAt; }
 
     public void setId(Long id) { this.id = id; }
     public void setRoom(Room room) { this.room = room; }
@@ -65,5 +89,7 @@ public class RoomLock {
     public void setEndDate(LocalDate endDate) { this.endDate = endDate; }
     public void setBookingId(String bookingId) { this.bookingId = bookingId; }
     public void setRequestId(String requestId) { this.requestId = requestId; }
+    public void setStatus(LockStatus status) { this.status = status; }
+    public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
 }
 
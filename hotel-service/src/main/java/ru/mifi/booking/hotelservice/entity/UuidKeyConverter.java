@@ -0,0 +1,25 @@
+package ru.mifi.booking.hotelservice.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import ru.mifi.booking.common.id.UuidKeys;
+
+import java.util.UUID;
+
+/**
+ * bookingId/requestId блокировки: строка в коде, нативный UUID (16 байт) в колонке и индексе.
+ * Параметры JPQL-запросов по этим полям (findByRequestId, ... in :bookingIds) Hibernate прогоняет через него же.
+ */
+@Converter
+public class UuidKeyConverter implements AttributeConverter<String, UUID> {
+
+    @Override
+    public UUID convertToDatabaseColumn(String attribute) {
+        return UuidKeys.toUuid(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(UUID dbData) {
+        return dbData == null ? null : dbData.toString();
+    }
+}
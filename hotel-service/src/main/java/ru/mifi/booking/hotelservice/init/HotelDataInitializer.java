@@ -11,6 +11,7 @@ import ru.mifi.booking.hotelservice.entity.Room;
 import ru.mifi.booking.hotelservice.repository.HotelRepository;
 import ru.mifi.booking.hotelservice.repository.RoomRepository;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -47,20 +48,24 @@ public class HotelDataInitializer implements ApplicationRunner {
             return;
         }
 
-        Hotel h1 = hotelRepository.save(new Hotel(null, "Hotel One", "Moscow"));
-        Hotel h2 = hotelRepository.save(new Hotel(null, "Hotel Two", "Saint Petersburg"));
-        Hotel h3 = hotelRepository.save(new Hotel(null, "Hotel Three", "Kazan"));
+        Hotel h1 = new Hotel(null, "Hotel One", "Moscow");
+        Hotel h2 = new Hotel(null, "Hotel Two", "Saint Petersburg");
+        Hotel h3 = new Hotel(null, "Hotel Three", "Kazan");
+        hotelRepository.saveAll(List.of(h1, h2, h3));
 
-        seedRooms(h1, List.of("101", "102", "201"));
-        seedRooms(h2, List.of("10", "11"));
-        seedRooms(h3, List.of("1A", "1B", "2A", "2B"));
+        List<Room> rooms = new ArrayList<>();
+        seedRooms(rooms, h1, List.of("101", "102", "201"));
+        seedRooms(rooms, h2, List.of("10", "11"));
+        seedRooms(rooms, h3, List.of("1A", "1B", "2A", "2B"));
+        // Одним saveAll: с id из последовательности Hibernate отправит вставки JDBC-пачкой.
+        roomRepository.saveAll(rooms);
 
         log.info("Seeded initial hotels and rooms (3 hotels, 9 rooms)");
     }
 
-    private void seedRooms(Hotel hotel, List<String> numbers) {
+    private void seedRooms(List<Room> rooms, Hotel hotel, List<String> numbers) {
         for (String number : numbers) {
-            roomRepository.save(new Room(null, hotel, number, true, 0));
+            rooms.add(new Room(null, hotel, number, true, 0));
         }
     }
 }
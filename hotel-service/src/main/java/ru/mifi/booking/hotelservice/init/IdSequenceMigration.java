@@ -0,0 +1,48 @@
+package ru.mifi.booking.hotelservice.init;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.mifi.booking.common.id.IdSequences;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Перевод id с IDENTITY на последовательности для уже существующих данных hotel-service.
+ *
+ * <p>
+ * Бин поднимается после EntityManagerFactory, то есть после обновления схемы, и до приёма запросов.
+ * Сам сдвиг — {@link IdSequences#alignPastMaxId}, общий с booking-service; здесь только список таблиц.
+ * </p>
+ */
+@Component
+public class IdSequenceMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceMigration.class);
+
+    /** Таблица → последовательность её id. */
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "hotels", "hotels_seq",
+            "rooms", "rooms_seq",
+            "room_locks", "room_locks_seq",
+            "hotel_daily_occupancy", "hotel_daily_occupancy_seq"
+    );
+
+    private final DataSource dataSource;
+
+    /**
+     * @param entityManagerFactory не используется напрямую — гарантирует, что схема уже обновлена
+     */
+    public IdSequenceMigration(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    void migrate() {
+        IdSequences.alignPastMaxId(dataSource, SEQUENCES).forEach((sequence, restartWith) ->
+                log.info("Sequence {} moved past existing ids: restart with {}", sequence, restartWith));
+    }
+}
@@ -0,0 +1,75 @@
+package ru.mifi.booking.hotelservice.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.mifi.booking.hotelservice.dto.DailyOccupancyDto;
+import ru.mifi.booking.hotelservice.entity.HotelDailyOccupancy;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface HotelOccupancyRepository extends JpaRepository<HotelDailyOccupancy, Long> {
+
+    /**
+     * Сдвинуть загрузку всех дней периода на delta одним UPDATE.
+     *
+     * <p>
+     * Используется при снятии блокировки: строки дней к этому времени уже созданы её добавлением.
+     * flushAutomatically — чтобы отложенные изменения контекста попали в БД до UPDATE.
+     * Контекст не очищаю: в транзакции release в нём лежат managed Room и удаляемая RoomLock.
+     * </p>
+     *
+     * @return число обновлённых строк
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update HotelDailyOccupancy o set o.occupiedRooms = o.occupiedRooms + :delta
+            where o.hotelId = :hotelId and o.stayDate >= :start and o.stayDate < :end
+            """)
+    int shift(
+            @Param("hotelId") Long hotelId,
+            @Param("start") LocalDate start,
+            @Param("end") LocalDate end,
+            @Param("delta") long delta
+    );
+
+    /**
+     * Загрузка отеля за окно (только дни, для которых есть строка), по возрастанию даты.
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.DailyOccupancyDto(o.stayDate, o.occupiedRooms)
+            from HotelDailyOccupancy o
+            where o.hotelId = :hotelId and o.stayDate >= :start and o.stayDate < :end
+            order by o.stayDate
+            """)
+    List<DailyOccupancyDto> findWindow(@Param("hotelId") Long hotelId, @Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    /**
+     * Вычесть из загрузки отеля все блокировки номера одним UPDATE (перед удалением номера).
+     *
+     * @return число затронутых дней
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            update hotel_daily_occupancy o
+            set occupied_rooms = occupied_rooms - (
+                select count(*) from room_locks rl
+                where rl.room_id = :roomId and rl.start_date <= o.stay_date and rl.end_date > o.stay_date
+            )
+            where o.hotel_id = :hotelId
+              and exists (
+                select 1 from room_locks rl
+                where rl.room_id = :roomId and rl.start_date <= o.stay_date and rl.end_date > o.stay_date
+              )
+            """, nativeQuery = true)
+    int subtractRoomLocks(@Param("hotelId") Long hotelId, @Param("roomId") Long roomId);
+
+    /**
+     * Удалить всю загрузку отеля (перед пересборкой или при удалении отеля).
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("delete from HotelDailyOccupancy o where o.hotelId = :hotelId")
+    int deleteAllByHotelId(@Param("hotelId") Long hotelId);
+}
@@ -1,7 +1,34 @@
 package ru.mifi.booking.hotelservice.repository;
 
+import jakarta.persistence.LockModeType;
 import ru.mifi.booking.hotelservice.entity.Hotel;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface HotelRepository extends JpaRepository<Hotel, Long> {}
+import java.util.List;
+import java.util.Optional;
 
+public interface HotelRepository extends JpaRepository<Hotel, Long> {
+
+    /**
+     * Получить отель с блокировкой строки (SELECT ... FOR UPDATE).
+     * Сериализует создание строк дневной загрузки отеля.
+     *
+     * @param id идентификатор отеля
+     * @return отель
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select h from Hotel h where h.id = :id")
+    Optional<Hotel> findByIdForUpdate(@Param("id") Long id);
+
+    /**
+     * Найти уже существующий отель по имени и адресу (повторный импорт не должен плодить дубли).
+     *
+     * @param name    название
+     * @param address адрес
+     * @return отели с таким именем и адресом
+     */
+    List<Hotel> findByNameAndAddress(String name, String address);
+}
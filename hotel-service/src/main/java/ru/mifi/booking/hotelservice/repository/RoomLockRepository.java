@@ -1,14 +1,21 @@
 package ru.mifi.booking.hotelservice.repository;
 
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import ru.mifi.booking.hotelservice.dto.RoomLockSpanDto;
 import ru.mifi.booking.hotelservice.entity.Room;
 import ru.mifi.booking.hotelservice.entity.RoomLock;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 public interface RoomLockRepository extends JpaRepository<RoomLock, Long> {
 
@@ -29,20 +36,41 @@ public interface RoomLockRepository extends JpaRepository<RoomLock, Long> {
     );
 
     /**
-     * Все блокировки по отелю в заданном периоде (для статистики).
+     * Периоды блокировок отеля, пересекающиеся с окном (для календаря занятости).
      *
      * @param hotelId идентификатор отеля
-     * @param start   начало периода
-     * @param end     конец периода
-     * @return список блокировок, которые пересекаются с периодом
+     * @param start   начало окна
+     * @param end     конец окна
+     * @return проекции (roomId, startDate, endDate) без загрузки сущностей
      */
-    @Query("select rl from RoomLock rl where rl.room.hotel.id = :hotelId and not (rl.endDate <= :start or rl.startDate >= :end)")
-    List<RoomLock> findOverlapsInHotel(
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomLockSpanDto(rl.room.id, rl.startDate, rl.endDate)
+            from RoomLock rl
+            where rl.room.hotel.id = :hotelId and not (rl.endDate <= :start or rl.startDate >= :end)
+            """)
+    List<RoomLockSpanDto> findSpansInHotel(
             @Param("hotelId") Long hotelId,
             @Param("start") LocalDate start,
             @Param("end") LocalDate end
     );
 
+    /**
+     * Периоды всех блокировок (для загрузки in-memory индекса доступности).
+     *
+     * @return проекции (roomId, startDate, endDate) без загрузки сущностей
+     */
+    @Query("select new ru.mifi.booking.hotelservice.dto.RoomLockSpanDto(rl.room.id, rl.startDate, rl.endDate) from RoomLock rl")
+    List<RoomLockSpanDto> findAllSpans();
+
+    /**
+     * Периоды всех блокировок отеля (для пересборки дневной загрузки).
+     *
+     * @param hotelId идентификатор отеля
+     * @return проекции (roomId, startDate, endDate)
+     */
+    @Query("select new ru.mifi.booking.hotelservice.dto.RoomLockSpanDto(rl.room.id, rl.startDate, rl.endDate) from RoomLock rl where rl.room.hotel.id = :hotelId")
+    List<RoomLockSpanDto> findSpansByHotel(@Param("hotelId") Long hotelId);
+
     /**
      * Поиск блокировки по bookingId.
      *
@@ -60,9 +88,90 @@ public interface RoomLockRepository extends JpaRepository<RoomLock, Long> {
     Optional<RoomLock> findByRequestId(String requestId);
 
     /**
-     * Удалить все блокировки конкретного номера.
+     * Условная вставка блокировки одним statement: строка появляется, только если у номера нет
+     * пересекающейся блокировки и requestId ещё не использован.
+     *
+     * <p>
+     * Вызывать под row-lock номера (см. {@link RoomRepository#lockHotelIdIfAvailable}):
+     * без него два конкурентных INSERT не видят незакоммиченные строки друг друга.
+     * </p>
+     *
+     * Блокировка создаётся удержанием (HELD) до expiresAt; id берётся из room_locks_seq.
+     * Запрос нативный, поэтому конвертер колонок не применяется: bookingId/requestId передаются
+     * уже как UUID ({@link ru.mifi.booking.common.id.UuidKeys#toUuid}).
+     *
+     * @return 1 — блокировка создана, 0 — пересечение или повтор requestId
+     */
+    @Modifying
+    @Query(value = """
+            insert into room_locks (id, room_id, start_date, end_date, booking_id, request_id, status, expires_at)
+            select next value for room_locks_seq, r.id, :start, :end, :bookingId, :requestId, 'HELD', :expiresAt
+            from rooms r
+            where r.id = :roomId
+              and not exists (
+                  select 1 from room_locks rl
+                  where rl.room_id = r.id and rl.start_date < :end and rl.end_date > :start
+              )
+              and not exists (select 1 from room_locks rl where rl.request_id = :requestId)
+            """, nativeQuery = true)
+    int insertIfFree(
+            @Param("roomId") Long roomId,
+            @Param("start") LocalDate start,
+            @Param("end") LocalDate end,
+            @Param("bookingId") UUID bookingId,
+            @Param("requestId") UUID requestId,
+            @Param("expiresAt") Instant expiresAt
+    );
+
+    /**
+     * Подтвердить удержания: HELD → COMMITTED, срок снимается. Повтор для уже подтверждённых — no-op.
+     *
+     * @param bookingIds идентификаторы бронирований
+     * @return сколько блокировок найдено (меньше числа bookingIds — часть удержаний уже истекла)
+     */
+    @Modifying
+    @Query("""
+            update RoomLock rl
+            set rl.status = ru.mifi.booking.hotelservice.entity.LockStatus.COMMITTED, rl.expiresAt = null
+            where rl.bookingId in :bookingIds
+            """)
+    int commitByBookingIds(@Param("bookingIds") List<String> bookingIds);
+
+    /**
+     * Очередная порция просроченных удержаний (keyset по id), под row-lock:
+     * параллельный commit дождётся сборщика и увидит, что удержания уже нет.
+     *
+     * @param now     текущий момент
+     * @param afterId id последнего удержания предыдущей порции
+     * @param limit   размер порции
+     * @return просроченные удержания по возрастанию id
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            select rl from RoomLock rl
+            where rl.status = ru.mifi.booking.hotelservice.entity.LockStatus.HELD
+              and rl.expiresAt < :now and rl.id > :afterId
+            order by rl.id
+            """)
+    List<RoomLock> findExpiredHolds(@Param("now") Instant now, @Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * Удалить блокировки по id одним DELETE (порция сборщика просроченных удержаний).
+     *
+     * @param ids id блокировок
+     * @return число удалённых блокировок
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("delete from RoomLock rl where rl.id in :ids")
+    int deleteAllByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * Удалить все блокировки номеров одним DELETE (без загрузки сущностей).
      *
-     * @param roomId id номера
+     * @param roomIds id номеров (одна порция)
+     * @return число удалённых блокировок
      */
-    void deleteAllByRoom_Id(Long roomId);
+    @Modifying(flushAutomatically = true)
+    @Query("delete from RoomLock rl where rl.room.id in :roomIds")
+    int deleteAllByRoomIds(@Param("roomIds") List<Long> roomIds);
 }
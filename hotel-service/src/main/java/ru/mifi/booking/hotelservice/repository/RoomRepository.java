@@ -1,14 +1,24 @@
 package ru.mifi.booking.hotelservice.repository;
 
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import ru.mifi.booking.hotelservice.dto.RoomDto;
+import ru.mifi.booking.hotelservice.dto.RoomHotelIdDto;
+import ru.mifi.booking.hotelservice.dto.RoomStatsDto;
 import ru.mifi.booking.hotelservice.entity.Room;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface RoomRepository extends JpaRepository<Room, Long> {
 
@@ -30,6 +40,267 @@ public interface RoomRepository extends JpaRepository<Room, Long> {
     @Query("select r from Room r where r.available = true")
     List<Room> findAllAvailable();
 
+    /**
+     * Номера, свободные на период, одним запросом (anti-join с room_locks).
+     *
+     * <p>
+     * Раньше я отдельно дергал findOverlaps для каждого номера (1 + N запросов).
+     * Здесь пересечение проверяется внутри БД через NOT EXISTS, а результат сразу собирается в RoomDto.
+     * </p>
+     *
+     * @param start начало периода
+     * @param end   конец периода
+     * @return свободные номера, отсортированные по id
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomDto(r.id, r.hotel.id, r.number, r.available, r.timesBooked)
+            from Room r
+            where r.available = true
+              and not exists (
+                  select 1 from RoomLock rl
+                  where rl.room = r and not (rl.endDate <= :start or rl.startDate >= :end)
+              )
+            order by r.id
+            """)
+    List<RoomDto> findAvailableForPeriod(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    /**
+     * Top-K рекомендованных номеров на период: сортировка и LIMIT выполняются в БД.
+     *
+     * <p>
+     * Порядок (timesBooked asc, id asc) совпадает с индексом idx_room_recommend (available, times_booked, id),
+     * поэтому БД может остановиться после первых limit подходящих строк.
+     * </p>
+     *
+     * @param start начало периода
+     * @param end   конец периода
+     * @param limit сколько кандидатов вернуть ({@link Limit#unlimited()} — все)
+     * @return свободные номера в порядке рекомендации
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomDto(r.id, r.hotel.id, r.number, r.available, r.timesBooked)
+            from Room r
+            where r.available = true
+              and not exists (
+                  select 1 from RoomLock rl
+                  where rl.room = r and not (rl.endDate <= :start or rl.startDate >= :end)
+              )
+            order by r.timesBooked, r.id
+            """)
+    List<RoomDto> findRecommendedForPeriod(@Param("start") LocalDate start, @Param("end") LocalDate end, Limit limit);
+
+    /**
+     * Очередная страница свободных номеров в порядке рекомендации (keyset по (timesBooked, id)) — для reserve.
+     *
+     * <p>
+     * В отличие от {@link #findRecommendedForPeriod} продолжает с места, где остановилась предыдущая страница,
+     * поэтому reserve может перебрать весь инвентарь, не упираясь в фиксированное окно кандидатов.
+     * timesBooked между страницами может сброситься из write-behind счётчика — тогда номер
+     * попадёт в выборку повторно (безвредно: INSERT просто не пройдёт).
+     * </p>
+     *
+     * @param start            начало периода
+     * @param end              конец периода
+     * @param afterTimesBooked timesBooked последнего номера предыдущей страницы (-1 — с начала)
+     * @param afterId          id последнего номера предыдущей страницы (0 — с начала)
+     * @param limit            размер страницы
+     * @return свободные номера в порядке рекомендации
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomDto(r.id, r.hotel.id, r.number, r.available, r.timesBooked)
+            from Room r
+            where r.available = true
+              and (r.timesBooked > :afterTimesBooked or (r.timesBooked = :afterTimesBooked and r.id > :afterId))
+              and not exists (
+                  select 1 from RoomLock rl
+                  where rl.room = r and not (rl.endDate <= :start or rl.startDate >= :end)
+              )
+            order by r.timesBooked, r.id
+            """)
+    List<RoomDto> findRecommendedPageForPeriod(
+            @Param("start") LocalDate start,
+            @Param("end") LocalDate end,
+            @Param("afterTimesBooked") long afterTimesBooked,
+            @Param("afterId") long afterId,
+            Limit limit
+    );
+
+    /**
+     * Страница свободных номеров на период (keyset-пагинация по id) без фильтров.
+     *
+     * <p>
+     * Вместо OFFSET использую условие r.id > :afterId, поэтому стоимость страницы
+     * не зависит от её номера и общего размера инвентаря.
+     * </p>
+     *
+     * <p>
+     * На каждую комбинацию фильтров — свой запрос ({@link #findAvailablePageInHotel},
+     * {@link #findAvailablePageByAddress}, {@link #findAvailablePageInHotelByAddress}), а не один
+     * с {@code (:param is null or ...)}: такой план строится один на все значения параметров,
+     * и оптимизатор не может опереться ни на idx_room_hotel, ни на idx_hotel_address.
+     * </p>
+     *
+     * @param start   начало периода
+     * @param end     конец периода
+     * @param afterId id последнего номера предыдущей страницы (0 — с начала)
+     * @param limit   размер страницы
+     * @return свободные номера, отсортированные по id
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomDto(r.id, r.hotel.id, r.number, r.available, r.timesBooked)
+            from Room r
+            where r.available = true
+              and r.id > :afterId
+              and not exists (
+                  select 1 from RoomLock rl
+                  where rl.room = r and not (rl.endDate <= :start or rl.startDate >= :end)
+              )
+            order by r.id
+            """)
+    List<RoomDto> findAvailablePage(
+            @Param("start") LocalDate start,
+            @Param("end") LocalDate end,
+            @Param("afterId") long afterId,
+            Limit limit
+    );
+
+    /**
+     * Страница свободных номеров одного отеля: диапазон по idx_room_hotel (hotel_id, available, id).
+     *
+     * @param hotelId идентификатор отеля
+     * @see #findAvailablePage
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomDto(r.id, r.hotel.id, r.number, r.available, r.timesBooked)
+            from Room r
+            where r.hotel.id = :hotelId
+              and r.available = true
+              and r.id > :afterId
+              and not exists (
+                  select 1 from RoomLock rl
+                  where rl.room = r and not (rl.endDate <= :start or rl.startDate >= :end)
+              )
+            order by r.id
+            """)
+    List<RoomDto> findAvailablePageInHotel(
+            @Param("start") LocalDate start,
+            @Param("end") LocalDate end,
+            @Param("afterId") long afterId,
+            @Param("hotelId") Long hotelId,
+            Limit limit
+    );
+
+    /**
+     * Страница свободных номеров в отелях, чей адрес начинается с префикса (idx_hotel_address).
+     *
+     * @param addressPrefix LIKE-шаблон "префикс%" адреса отеля
+     * @see #findAvailablePage
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomDto(r.id, h.id, r.number, r.available, r.timesBooked)
+            from Room r join r.hotel h
+            where h.address like :addressPrefix escape '\\'
+              and r.available = true
+              and r.id > :afterId
+              and not exists (
+                  select 1 from RoomLock rl
+                  where rl.room = r and not (rl.endDate <= :start or rl.startDate >= :end)
+              )
+            order by r.id
+            """)
+    List<RoomDto> findAvailablePageByAddress(
+            @Param("start") LocalDate start,
+            @Param("end") LocalDate end,
+            @Param("afterId") long afterId,
+            @Param("addressPrefix") String addressPrefix,
+            Limit limit
+    );
+
+    /**
+     * Страница свободных номеров отеля с проверкой префикса его адреса: ведёт idx_room_hotel,
+     * адрес проверяется на единственной строке отеля.
+     *
+     * @see #findAvailablePage
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomDto(r.id, h.id, r.number, r.available, r.timesBooked)
+            from Room r join r.hotel h
+            where r.hotel.id = :hotelId
+              and h.address like :addressPrefix escape '\\'
+              and r.available = true
+              and r.id > :afterId
+              and not exists (
+                  select 1 from RoomLock rl
+                  where rl.room = r and not (rl.endDate <= :start or rl.startDate >= :end)
+              )
+            order by r.id
+            """)
+    List<RoomDto> findAvailablePageInHotelByAddress(
+            @Param("start") LocalDate start,
+            @Param("end") LocalDate end,
+            @Param("afterId") long afterId,
+            @Param("hotelId") Long hotelId,
+            @Param("addressPrefix") String addressPrefix,
+            Limit limit
+    );
+
+    /**
+     * Статистика загруженности номеров отеля за период одним GROUP BY.
+     *
+     * <p>
+     * Блокировки присоединяются left join по пересечению с периодом, их даты обрезаются
+     * по границам периода (greatest/least), и число ночей суммируется на стороне БД.
+     * Номер без блокировок даёт count = 0 и sum = null (coalesce в 0).
+     * </p>
+     *
+     * @param hotelId идентификатор отеля
+     * @param start   начало периода
+     * @param end     конец периода
+     * @return статистика по каждому номеру отеля, по возрастанию id
+     */
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomStatsDto(
+                r.id, r.hotel.id, r.number, r.timesBooked,
+                count(rl.id),
+                coalesce(sum((least(rl.endDate, :end) - greatest(rl.startDate, :start)) by day), 0L))
+            from Room r
+            left join RoomLock rl on rl.room = r and rl.startDate < :end and rl.endDate > :start
+            where r.hotel.id = :hotelId
+            group by r.id, r.hotel.id, r.number, r.timesBooked
+            order by r.id
+            """)
+    List<RoomStatsDto> aggregateStats(
+            @Param("hotelId") Long hotelId,
+            @Param("start") LocalDate start,
+            @Param("end") LocalDate end
+    );
+
+    /**
+     * Статистика по всем номерам всех отелей за период — для потоковой выгрузки.
+     *
+     * <p>
+     * Тот же GROUP BY, что и в {@link #aggregateStats}, но без фильтра по отелю и в виде Stream:
+     * строки читаются курсором порциями по fetch size, а не собираются в список.
+     * Вызывать внутри транзакции и закрывать Stream.
+     * </p>
+     *
+     * @param start начало периода
+     * @param end   конец периода
+     * @return поток статистики, упорядоченный по (hotelId, roomId)
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            select new ru.mifi.booking.hotelservice.dto.RoomStatsDto(
+                r.id, r.hotel.id, r.number, r.timesBooked,
+                count(rl.id),
+                coalesce(sum((least(rl.endDate, :end) - greatest(rl.startDate, :start)) by day), 0L))
+            from Room r
+            left join RoomLock rl on rl.room = r and rl.startDate < :end and rl.endDate > :start
+            group by r.id, r.hotel.id, r.number, r.timesBooked
+            order by r.hotel.id, r.id
+            """)
+    Stream<RoomStatsDto> streamAllStats(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
     /**
      * Все номера конкретного отеля.
      *
@@ -38,5 +309,68 @@ public interface RoomRepository extends JpaRepository<Room, Long> {
      */
     @Query("select r from Room r where r.hotel.id = :hotelId")
     List<Room> findAllByHotelId(@Param("hotelId") Long hotelId);
+
+    /**
+     * Взять row-lock номера, если он существует и доступен (SELECT ... FOR UPDATE без загрузки сущности).
+     *
+     * @param id идентификатор номера
+     * @return отель номера; пусто — номера нет или он выведен из эксплуатации
+     */
+    @Query(value = "select r.hotel_id from rooms r where r.id = :id and r.available = true for update", nativeQuery = true)
+    Optional<Long> lockHotelIdIfAvailable(@Param("id") Long id);
+
+    /**
+     * Отели номеров одним запросом, без загрузки сущностей.
+     *
+     * @param ids id номеров
+     * @return пары (номер, отель)
+     */
+    @Query("select new ru.mifi.booking.hotelservice.dto.RoomHotelIdDto(r.id, r.hotel.id) from Room r where r.id in :ids")
+    List<RoomHotelIdDto> findHotelIds(@Param("ids") List<Long> ids);
+
+    /**
+     * Число номеров отеля.
+     *
+     * @param hotelId идентификатор отеля
+     * @return количество номеров
+     */
+    @Query("select count(r) from Room r where r.hotel.id = :hotelId")
+    long countByHotelId(@Param("hotelId") Long hotelId);
+
+    /**
+     * Очередная порция id номеров отеля (keyset по id) — для удаления отеля порциями.
+     *
+     * @param hotelId идентификатор отеля
+     * @param afterId id последнего номера предыдущей порции
+     * @param limit   размер порции
+     * @return id номеров по возрастанию
+     */
+    @Query("select r.id from Room r where r.hotel.id = :hotelId and r.id > :afterId order by r.id")
+    List<Long> findIdsByHotelId(@Param("hotelId") Long hotelId, @Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * Взять row-lock порции номеров перед удалением.
+     *
+     * <p>
+     * reserve/confirm вставляют блокировку под тем же row-lock номера ({@link #lockHotelIdIfAvailable}),
+     * поэтому между DELETE блокировок и DELETE номеров порции новая блокировка уже не появится:
+     * вставка либо успела закоммититься до нас и удалится вместе с порцией, либо дождётся нас и номера не найдёт.
+     * </p>
+     *
+     * @param ids id номеров (одна порция)
+     * @return id, на которые взят lock
+     */
+    @Query(value = "select r.id from rooms r where r.id in :ids for update", nativeQuery = true)
+    List<Long> lockAllByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * Удалить номера одним DELETE (блокировки должны быть удалены раньше).
+     *
+     * @param ids id номеров (одна порция)
+     * @return число удалённых номеров
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("delete from Room r where r.id in :ids")
+    int deleteAllByIds(@Param("ids") List<Long> ids);
 }
 
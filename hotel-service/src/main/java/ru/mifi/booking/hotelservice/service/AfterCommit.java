@@ -0,0 +1,33 @@
+package ru.mifi.booking.hotelservice.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Выполнение действий после успешного коммита текущей транзакции.
+ *
+ * <p>
+ * In-memory структуры (индекс доступности, кэши) я обновляю только после коммита,
+ * чтобы они никогда не видели данные, которые потом откатятся.
+ * Если транзакции нет — действие выполняется сразу.
+ * </p>
+ */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,133 @@
+package ru.mifi.booking.hotelservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.mifi.booking.hotelservice.dto.RoomDto;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш результатов поиска свободных номеров, ключ — период (и limit для рекомендаций).
+ *
+ * <p>
+ * Основная часть поискового трафика приходится на одни и те же выходные и праздники,
+ * поэтому повторный запрос того же периода отдаётся из памяти.
+ * </p>
+ *
+ * <p>
+ * Инвалидация:
+ * - новая/снятая блокировка сбрасывает только записи, чей период пересекается с блокировкой;
+ * - изменение набора номеров (add/update/delete) сбрасывает весь кэш.
+ * Инвалидация выполняется после коммита. Чтобы загрузка, начатая до коммита, не положила
+ * в кэш устаревший результат, я сверяю счётчик версий до и после загрузки.
+ * </p>
+ *
+ * <p>
+ * timesBooked внутри закэшированных списков может отставать на время жизни записи (ttl):
+ * для метрики справедливости это допустимо. При нескольких инстансах hotel-service каждый
+ * держит свой кэш, и чужие изменения он увидит только по истечении ttl.
+ * </p>
+ */
+@Component
+public class AvailabilityCache {
+
+    private final boolean enabled;
+    private final Cache<Key, List<RoomDto>> cache;
+    private final AtomicLong version = new AtomicLong();
+
+    public AvailabilityCache(
+            MeterRegistry meterRegistry,
+            @Value("${hotel.availability.cache.enabled:true}") boolean enabled,
+            @Value("${hotel.availability.cache.max-size:10000}") long maxSize,
+            @Value("${hotel.availability.cache.ttl-ms:60000}") long ttlMs
+    ) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "availability");
+        Gauge.builder("hotel.availability.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Доля попаданий в кэш доступности")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Свободные номера на период.
+     */
+    public List<RoomDto> available(LocalDate start, LocalDate end, Supplier<List<RoomDto>> loader) {
+        return get(new Key(start, end, null), loader);
+    }
+
+    /**
+     * Рекомендации на период (отдельные записи для разных limit).
+     */
+    public List<RoomDto> recommended(LocalDate start, LocalDate end, Integer limit, Supplier<List<RoomDto>> loader) {
+        return get(new Key(start, end, limit == null ? Key.ALL : limit), loader);
+    }
+
+    /**
+     * Сбросить записи, период которых пересекается с [start, end). Выполняется после коммита.
+     */
+    public void invalidateOverlapping(LocalDate start, LocalDate end) {
+        if (!enabled) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            version.incrementAndGet();
+            cache.asMap().keySet().removeIf(key -> key.start().isBefore(end) && key.end().isAfter(start));
+        });
+    }
+
+    /**
+     * Сбросить весь кэш (изменился сам набор номеров). Выполняется после коммита.
+     */
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            version.incrementAndGet();
+            cache.invalidateAll();
+        });
+    }
+
+    private List<RoomDto> get(Key key, Supplier<List<RoomDto>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        List<RoomDto> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long before = version.get();
+        List<RoomDto> loaded = List.copyOf(loader.get());
+        cache.put(key, loaded);
+
+        // Параллельно прошла инвалидация — результат мог быть посчитан по старым данным.
+        if (version.get() != before) {
+            cache.invalidate(key);
+        }
+        return loaded;
+    }
+
+    /**
+     * Ключ кэша. limit == null — список свободных номеров, иначе рекомендации.
+     */
+    private record Key(LocalDate start, LocalDate end, Integer limit) {
+        static final int ALL = 0;
+    }
+}
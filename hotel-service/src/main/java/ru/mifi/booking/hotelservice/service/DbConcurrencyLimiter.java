@@ -0,0 +1,90 @@
+package ru.mifi.booking.hotelservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.mifi.booking.common.exception.ServiceUnavailableException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Ограничение числа одновременных транзакций записи (confirm/reserve) семафором.
+ *
+ * <p>
+ * На пуле платформенных потоков Tomcat конкуренцию к БД косвенно ограничивал размер пула потоков.
+ * С виртуальными потоками этого потолка нет: тысячи запросов одновременно встают в очередь
+ * Hikari и на row-lock номера, а отказ приходит только через connectionTimeout.
+ * Поэтому разрешения беру до открытия транзакции: ждущие паркуются на семафоре, не держа соединение,
+ * а по истечении wait-ms получают 503 и ретраят на стороне booking-service.
+ * </p>
+ *
+ * <p>
+ * По умолчанию включён вместе с виртуальными потоками, число разрешений — размер пула Hikari.
+ * </p>
+ */
+@Component
+public class DbConcurrencyLimiter {
+
+    private final boolean enabled;
+    private final Semaphore permits;
+    private final long waitMs;
+
+    public DbConcurrencyLimiter(
+            @Value("${hotel.db.limiter.enabled:${spring.threads.virtual.enabled:false}}") boolean enabled,
+            @Value("${hotel.db.limiter.max-concurrent:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrent,
+            @Value("${hotel.db.limiter.wait-ms:5000}") long waitMs
+    ) {
+        this.enabled = enabled;
+        this.permits = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.waitMs = waitMs;
+    }
+
+    /**
+     * Выполнить действие (обычно — целую транзакцию) под разрешением семафора.
+     *
+     * @param action действие
+     * @return результат действия
+     */
+    public <T> T call(Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+
+        try {
+            if (!permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                throw new ServiceUnavailableException("Too many concurrent database operations, retry later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for a database permit");
+        }
+
+        try {
+            return action.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Вариант {@link #call} без результата.
+     */
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Свободные разрешения (для тестов и диагностики).
+     */
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+}
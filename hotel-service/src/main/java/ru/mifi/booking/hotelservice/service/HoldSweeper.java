@@ -0,0 +1,89 @@
+package ru.mifi.booking.hotelservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Сборщик просроченных удержаний номеров (RoomLock в статусе HELD с истёкшим expiresAt).
+ *
+ * <p>
+ * Удержание остаётся, если сага booking-service упала или не дождалась ответа, а компенсация
+ * (release) тоже не дошла — без сборщика номер был бы заблокирован навсегда.
+ * </p>
+ *
+ * <p>
+ * Снимаю порциями по batchSize, каждая порция — своя короткая транзакция (keyset по id),
+ * поэтому длинных транзакций и массовых row-lock нет. Момент «сейчас» фиксирую на весь проход,
+ * чтобы удержания, истекающие во время прохода, не гонялись по кругу.
+ * Метрики: hotel.holds.expired (счётчик снятых), hotel.holds.sweep (длительность прохода).
+ * </p>
+ */
+@Component
+public class HoldSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(HoldSweeper.class);
+
+    private final RoomService roomService;
+    private final int batchSize;
+    private final Counter expiredCounter;
+    private final Timer sweepTimer;
+
+    public HoldSweeper(
+            RoomService roomService,
+            MeterRegistry meterRegistry,
+            @Value("${hotel.holds.batch-size:500}") int batchSize
+    ) {
+        this.roomService = roomService;
+        this.batchSize = Math.max(1, batchSize);
+        this.expiredCounter = Counter.builder("hotel.holds.expired")
+                .description("Снятые по истечении срока удержания номеров")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder("hotel.holds.sweep")
+                .description("Длительность прохода сборщика просроченных удержаний")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Один проход сборщика.
+     *
+     * @return сколько удержаний снято
+     */
+    @Scheduled(
+            initialDelayString = "${hotel.holds.sweep-ms:30000}",
+            fixedDelayString = "${hotel.holds.sweep-ms:30000}"
+    )
+    public int sweep() {
+        return sweepTimer.record(() -> {
+            Instant now = Instant.now();
+            long afterId = 0L;
+            int total = 0;
+
+            while (true) {
+                List<Long> expired = roomService.expireHolds(now, afterId, batchSize);
+                if (expired.isEmpty()) {
+                    break;
+                }
+                total += expired.size();
+                expiredCounter.increment(expired.size());
+                afterId = expired.getLast();
+                if (expired.size() < batchSize) {
+                    break;
+                }
+            }
+
+            if (total > 0) {
+                log.info("Expired room holds removed: {}", total);
+            }
+            return total;
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package ru.mifi.booking.hotelservice.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.mifi.booking.common.exception.NotFoundException;
+import ru.mifi.booking.hotelservice.dto.HotelDeletionJobDto;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Фоновое удаление больших отелей.
+ *
+ * <p>
+ * Запрос ставит задачу и сразу получает её id; сама задача крутит {@link HotelService#delete(Long, java.util.function.BiConsumer)}
+ * в одном фоновом потоке (удаления идут по очереди и не конкурируют за пул соединений),
+ * а прогресс по порциям виден через {@link #get(String)}.
+ * Задачи живут в памяти: завершённые вычищаются через {@code hotel.delete.jobs-retention-ms},
+ * после рестарта незавершённое удаление достаточно запустить заново.
+ * </p>
+ */
+@Service
+public class HotelDeletionJobs {
+
+    private static final Logger log = LoggerFactory.getLogger(HotelDeletionJobs.class);
+
+    private final HotelService hotelService;
+    private final RoomRepository roomRepository;
+    private final Duration retention;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("hotel-delete").factory());
+
+    public HotelDeletionJobs(
+            HotelService hotelService,
+            RoomRepository roomRepository,
+            @Value("${hotel.delete.jobs-retention-ms:3600000}") long retentionMs
+    ) {
+        this.hotelService = hotelService;
+        this.roomRepository = roomRepository;
+        this.retention = Duration.ofMillis(retentionMs);
+    }
+
+    /**
+     * Поставить удаление отеля в очередь.
+     *
+     * @param hotelId идентификатор отеля
+     * @return задача в статусе RUNNING
+     */
+    public HotelDeletionJobDto start(Long hotelId) {
+        hotelService.getOrThrow(hotelId);
+        evictFinished();
+
+        Job job = new Job(UUID.randomUUID().toString(), hotelId, roomRepository.countByHotelId(hotelId));
+        jobs.put(job.id, job);
+        executor.execute(() -> run(job));
+        return job.toDto();
+    }
+
+    /**
+     * Текущее состояние задачи.
+     *
+     * @param jobId идентификатор задачи
+     * @return состояние
+     */
+    public HotelDeletionJobDto get(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            throw new NotFoundException("Hotel deletion job " + jobId + " not found");
+        }
+        return job.toDto();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job) {
+        try {
+            hotelService.delete(job.hotelId, (rooms, locks) -> {
+                job.deletedRooms += rooms;
+                job.deletedLocks += locks;
+            });
+            job.finish(HotelDeletionJobDto.Status.DONE, null);
+        } catch (RuntimeException ex) {
+            log.warn("Hotel {} deletion job {} failed", job.hotelId, job.id, ex);
+            job.finish(HotelDeletionJobDto.Status.FAILED, ex.getMessage());
+        }
+    }
+
+    private void evictFinished() {
+        Instant threshold = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(threshold));
+    }
+
+    /**
+     * Изменяемое состояние задачи: пишет только поток удаления, читают запросы прогресса.
+     */
+    private static final class Job {
+        private final String id;
+        private final Long hotelId;
+        private final long totalRooms;
+        private volatile long deletedRooms;
+        private volatile long deletedLocks;
+        private volatile HotelDeletionJobDto.Status status = HotelDeletionJobDto.Status.RUNNING;
+        private volatile String error;
+        private volatile Instant finishedAt;
+
+        private Job(String id, Long hotelId, long totalRooms) {
+            this.id = id;
+            this.hotelId = hotelId;
+            this.totalRooms = totalRooms;
+        }
+
+        private void finish(HotelDeletionJobDto.Status status, String error) {
+            this.error = error;
+            this.status = status;
+            this.finishedAt = Instant.now();
+        }
+
+        private HotelDeletionJobDto toDto() {
+            return new HotelDeletionJobDto(id, hotelId, status, totalRooms, deletedRooms, deletedLocks, error);
+        }
+    }
+}
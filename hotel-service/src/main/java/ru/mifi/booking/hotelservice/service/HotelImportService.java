@@ -0,0 +1,423 @@
+package ru.mifi.booking.hotelservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.mifi.booking.common.exception.BadRequestException;
+import ru.mifi.booking.hotelservice.dto.HotelImportReportDto;
+import ru.mifi.booking.hotelservice.entity.Hotel;
+import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.repository.HotelRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Массовый импорт отелей и номеров из CSV / NDJSON.
+ *
+ * <p>
+ * Тело я читаю построчно и держу в памяти только текущую порцию из {@code hotel.import.chunk-size} строк.
+ * Строка — это номер (или только отель, если number пуст). Отель задаётся либо hotelId существующего,
+ * либо парой hotelName + hotelAddress: такой отель создаётся при первой встрече (или берётся уже
+ * существующий с тем же именем и адресом) и переиспользуется следующими строками.
+ * </p>
+ *
+ * <p>
+ * Порция пишется одной транзакцией через saveAll: id из последовательности позволяют Hibernate
+ * отправлять INSERT JDBC-пачками. Ошибочные строки не прерывают импорт — невалидные отбрасываются
+ * при разборе, а если порция падает в БД, я повторяю её построчно, чтобы отбросить только виновную.
+ * </p>
+ *
+ * <p>
+ * CSV начинается с заголовка с колонками hotelId, hotelName, hotelAddress, number, available
+ * в любом порядке; поля в кавычках (с "" внутри) поддерживаются, переводы строк внутри поля — нет.
+ * </p>
+ */
+@Service
+public class HotelImportService {
+
+    /**
+     * Формат тела импорта.
+     */
+    public enum Format {
+        CSV,
+        NDJSON;
+
+        private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+        /**
+         * Формат по Content-Type запроса: text/csv — CSV, остальное (application/x-ndjson) — NDJSON.
+         */
+        public static Format fromContentType(String contentType) {
+            return MediaType.parseMediaType(contentType).isCompatibleWith(TEXT_CSV) ? CSV : NDJSON;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(HotelImportService.class);
+
+    private final HotelRepository hotelRepository;
+    private final RoomRepository roomRepository;
+    private final AvailabilityCache availabilityCache;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxErrors;
+
+    public HotelImportService(
+            HotelRepository hotelRepository,
+            RoomRepository roomRepository,
+            AvailabilityCache availabilityCache,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${hotel.import.chunk-size:500}") int chunkSize,
+            @Value("${hotel.import.max-errors:1000}") int maxErrors
+    ) {
+        this.hotelRepository = hotelRepository;
+        this.roomRepository = roomRepository;
+        this.availabilityCache = availabilityCache;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxErrors = Math.max(0, maxErrors);
+    }
+
+    /**
+     * ADMIN: импортировать отели и номера из потока.
+     *
+     * <p>
+     * Последняя неполная порция пишется только после того, как тело дочитано до конца. Если чтение
+     * оборвалось, её строки не сохраняю: отчёт с complete=false перечисляет ровно то, что закоммичено
+     * предыдущими порциями, а несохранённые строки попадают в ошибки.
+     * </p>
+     *
+     * @param in     тело запроса (не закрывается)
+     * @param format CSV или NDJSON
+     * @return итог импорта с ошибками по строкам
+     */
+    public HotelImportReportDto importRows(InputStream in, Format format) {
+        Import state = new Import();
+        List<Row> chunk = new ArrayList<>(chunkSize);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        long lineNo = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && state.csvColumns == null) {
+                    state.csvColumns = csvHeader(line);
+                    continue;
+                }
+
+                state.rows++;
+                Row row;
+                try {
+                    row = format == Format.CSV
+                            ? parseCsv(lineNo, line, state.csvColumns)
+                            : parseNdjson(lineNo, line);
+                    validate(row);
+                } catch (IllegalArgumentException ex) {
+                    state.error(lineNo, ex.getMessage());
+                    continue;
+                }
+
+                chunk.add(row);
+                if (chunk.size() >= chunkSize) {
+                    write(chunk, state);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Hotel import body read failed after line {}, {} unsaved rows dropped", lineNo, chunk.size(), e);
+            for (Row row : chunk) {
+                state.error(row.line(), "Not saved: import body was cut off after line " + lineNo);
+            }
+            return state.report(false);
+        }
+
+        write(chunk, state);
+        return state.report(true);
+    }
+
+    /**
+     * Записать порцию; если она упала в БД — повторить по одной строке.
+     */
+    private void write(List<Row> rows, Import state) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            state.apply(transactionTemplate.execute(status -> persist(rows, state.knownHotels)));
+        } catch (RuntimeException ex) {
+            if (rows.size() == 1) {
+                state.error(rows.getFirst().line(),
+                        "Failed to save row: " + NestedExceptionUtils.getMostSpecificCause(ex).getMessage());
+                return;
+            }
+            log.warn("Hotel import chunk of {} rows failed, retrying row by row", rows.size(), ex);
+            for (Row row : rows) {
+                write(List.of(row), state);
+            }
+        }
+    }
+
+    private Chunk persist(List<Row> rows, Map<HotelKey, Long> knownHotels) {
+        Chunk chunk = new Chunk();
+
+        Set<Long> requestedIds = new HashSet<>();
+        for (Row row : rows) {
+            if (row.hotelId() != null) {
+                requestedIds.add(row.hotelId());
+            }
+        }
+        Map<Long, Hotel> existing = new HashMap<>();
+        for (Hotel hotel : hotelRepository.findAllById(requestedIds)) {
+            existing.put(hotel.getId(), hotel);
+        }
+
+        Map<HotelKey, Hotel> byKey = new HashMap<>();
+        List<Room> rooms = new ArrayList<>();
+        for (Row row : rows) {
+            Hotel hotel;
+            if (row.hotelId() != null) {
+                hotel = existing.get(row.hotelId());
+                if (hotel == null) {
+                    chunk.errors.add(new HotelImportReportDto.RowError(row.line(), "Hotel " + row.hotelId() + " not found"));
+                    continue;
+                }
+            } else {
+                hotel = byKey.computeIfAbsent(new HotelKey(row.hotelName(), row.hotelAddress()),
+                        key -> resolveHotel(key, knownHotels, chunk));
+            }
+
+            if (row.number() != null) {
+                rooms.add(new Room(null, hotel, row.number(), row.available() == null || row.available(), 0));
+            }
+        }
+
+        roomRepository.saveAll(rooms);
+        chunk.roomsCreated = rooms.size();
+        byKey.forEach((key, hotel) -> chunk.hotels.put(key, hotel.getId()));
+        if (!rooms.isEmpty()) {
+            availabilityCache.invalidateAll();
+        }
+        return chunk;
+    }
+
+    private Hotel resolveHotel(HotelKey key, Map<HotelKey, Long> knownHotels, Chunk chunk) {
+        Long knownId = knownHotels.get(key);
+        if (knownId != null) {
+            return hotelRepository.getReferenceById(knownId);
+        }
+        List<Hotel> found = hotelRepository.findByNameAndAddress(key.name(), key.address());
+        if (!found.isEmpty()) {
+            return found.getFirst();
+        }
+        chunk.hotelsCreated++;
+        return hotelRepository.save(new Hotel(null, key.name(), key.address()));
+    }
+
+    private static void validate(Row row) {
+        if (row.hotelId() == null && row.hotelName() == null) {
+            throw new IllegalArgumentException("hotelId or hotelName is required");
+        }
+        if (row.hotelId() == null && row.hotelAddress() == null) {
+            throw new IllegalArgumentException("hotelAddress is required with hotelName");
+        }
+        if (row.hotelId() != null && row.number() == null) {
+            throw new IllegalArgumentException("number is required with hotelId");
+        }
+    }
+
+    private Row parseNdjson(long line, String text) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+        }
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+
+        JsonNode hotelId = node.get("hotelId");
+        if (hotelId != null && !hotelId.isNull() && !hotelId.canConvertToLong()) {
+            throw new IllegalArgumentException("hotelId must be a number");
+        }
+        JsonNode available = node.get("available");
+        if (available != null && !available.isNull() && !available.isBoolean()) {
+            throw new IllegalArgumentException("available must be true or false");
+        }
+
+        return new Row(
+                line,
+                hotelId == null || hotelId.isNull() ? null : hotelId.asLong(),
+                text(node.get("hotelName")),
+                text(node.get("hotelAddress")),
+                text(node.get("number")),
+                available == null || available.isNull() ? null : available.asBoolean()
+        );
+    }
+
+    private static String text(JsonNode node) {
+        return node == null || node.isNull() ? null : blankToNull(node.asText());
+    }
+
+    private static Map<String, Integer> csvHeader(String line) {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = splitCsv(line);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("hotelid") && !columns.containsKey("hotelname")) {
+            throw new BadRequestException("CSV header must contain hotelId or hotelName column");
+        }
+        return columns;
+    }
+
+    private static Row parseCsv(long line, String text, Map<String, Integer> columns) {
+        List<String> fields = splitCsv(text);
+
+        String hotelId = csvField(fields, columns, "hotelid");
+        String available = csvField(fields, columns, "available");
+        if (available != null && !available.equalsIgnoreCase("true") && !available.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("available must be true or false");
+        }
+
+        Long parsedHotelId;
+        try {
+            parsedHotelId = hotelId == null ? null : Long.valueOf(hotelId);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("hotelId must be a number");
+        }
+
+        return new Row(
+                line,
+                parsedHotelId,
+                csvField(fields, columns, "hotelname"),
+                csvField(fields, columns, "hoteladdress"),
+                csvField(fields, columns, "number"),
+                available == null ? null : Boolean.valueOf(available)
+        );
+    }
+
+    private static String csvField(List<String> fields, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        return blankToNull(fields.get(index));
+    }
+
+    /**
+     * Разбить строку CSV по запятым с учётом полей в кавычках (обратная операция к StatsExportService#csvField).
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private static String blankToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private record Row(long line, Long hotelId, String hotelName, String hotelAddress, String number, Boolean available) {}
+
+    private record HotelKey(String name, String address) {}
+
+    /**
+     * Результат одной закоммиченной порции.
+     */
+    private static final class Chunk {
+        private final Map<HotelKey, Long> hotels = new HashMap<>();
+        private final List<HotelImportReportDto.RowError> errors = new ArrayList<>();
+        private long hotelsCreated;
+        private long roomsCreated;
+    }
+
+    /**
+     * Состояние всего импорта; отели по имени/адресу запоминаются только после коммита их порции.
+     */
+    private final class Import {
+        private final Map<HotelKey, Long> knownHotels = new HashMap<>();
+        private final List<HotelImportReportDto.RowError> errors = new ArrayList<>();
+        private Map<String, Integer> csvColumns;
+        private long rows;
+        private long hotelsCreated;
+        private long roomsCreated;
+        private long failedRows;
+
+        private void apply(Chunk chunk) {
+            knownHotels.putAll(chunk.hotels);
+            hotelsCreated += chunk.hotelsCreated;
+            roomsCreated += chunk.roomsCreated;
+            chunk.errors.forEach(e -> error(e.line(), e.message()));
+        }
+
+        private HotelImportReportDto report(boolean complete) {
+            log.info("Hotel import: rows={}, hotelsCreated={}, roomsCreated={}, failedRows={}, complete={}",
+                    rows, hotelsCreated, roomsCreated, failedRows, complete);
+            return new HotelImportReportDto(rows, hotelsCreated, roomsCreated, failedRows, complete, List.copyOf(errors));
+        }
+
+        private void error(long line, String message) {
+            failedRows++;
+            if (errors.size() < maxErrors) {
+                errors.add(new HotelImportReportDto.RowError(line, message));
+            }
+        }
+    }
+}
@@ -1,18 +1,22 @@
 package ru.mifi.booking.hotelservice.service;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.mifi.booking.common.exception.BadRequestException;
 import ru.mifi.booking.common.exception.NotFoundException;
 import ru.mifi.booking.hotelservice.dto.HotelDto;
 import ru.mifi.booking.hotelservice.dto.UpdateHotelRequest;
 import ru.mifi.booking.hotelservice.entity.Hotel;
-import ru.mifi.booking.hotelservice.entity.Room;
 import ru.mifi.booking.hotelservice.repository.HotelRepository;
 import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
 import ru.mifi.booking.hotelservice.repository.RoomRepository;
 
 import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
  * Сервис CRUD-операций по отелям.
@@ -23,15 +27,33 @@ public class HotelService {
     private final HotelRepository hotelRepository;
     private final RoomRepository roomRepository;
     private final RoomLockRepository roomLockRepository;
+    private final RoomAvailabilityIndex availabilityIndex;
+    private final AvailabilityCache availabilityCache;
+    private final OccupancyService occupancyService;
+    private final TimesBookedCounter timesBookedCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
 
     public HotelService(
             HotelRepository hotelRepository,
             RoomRepository roomRepository,
-            RoomLockRepository roomLockRepository
+            RoomLockRepository roomLockRepository,
+            RoomAvailabilityIndex availabilityIndex,
+            AvailabilityCache availabilityCache,
+            OccupancyService occupancyService,
+            TimesBookedCounter timesBookedCounter,
+            PlatformTransactionManager transactionManager,
+            @Value("${hotel.delete.chunk-size:500}") int chunkSize
     ) {
         this.hotelRepository = hotelRepository;
         this.roomRepository = roomRepository;
         this.roomLockRepository = roomLockRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.availabilityCache = availabilityCache;
+        this.occupancyService = occupancyService;
+        this.timesBookedCounter = timesBookedCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
     }
 
     /**
@@ -108,22 +130,62 @@ public class HotelService {
      * Удалить отель.
      *
      * <p>
-     * Я удаляю связанные комнаты и их блокировки, чтобы не нарушить ссылочную целостность.
+     * Номера и их блокировки я удаляю порциями по {@code hotel.delete.chunk-size}: на порцию — два
+     * set-based DELETE в своей короткой транзакции, без загрузки сущностей. Отель и его дневная загрузка
+     * удаляются последней транзакцией. Удаление не атомарно: если оно прервётся, отель останется с частью
+     * номеров, и повторный вызов дочистит остальное.
+     * </p>
+     *
+     * <p>
+     * Параллельные reserve/confirm не ломают порцию: сначала беру row-lock её номеров
+     * ({@link RoomRepository#lockAllByIds}) — тот же, под которым вставляются блокировки, — так что
+     * DELETE номеров не упрётся в FK свежей блокировки. Ждём этот lock не дольше lock timeout БД;
+     * по тайм-ауту, как и при FK-ошибке последней транзакции (номер добавили в отель во время удаления),
+     * вызов падает, уже удалённые порции остаются удалёнными, и удаление достаточно повторить.
      * </p>
      *
      * @param id идентификатор отеля
      */
-    @Transactional
     public void delete(Long id) {
-        Hotel hotel = getOrThrow(id);
+        delete(id, (rooms, locks) -> {
+        });
+    }
+
+    /**
+     * Удалить отель с отчётом о прогрессе после каждой порции.
+     *
+     * @param id      идентификатор отеля
+     * @param onChunk сколько номеров и блокировок удалила очередная порция
+     */
+    public void delete(Long id, BiConsumer<Integer, Integer> onChunk) {
+        getOrThrow(id);
+
+        long afterId = 0L;
+        while (true) {
+            List<Long> roomIds = roomRepository.findIdsByHotelId(id, afterId, Limit.of(chunkSize));
+            if (roomIds.isEmpty()) {
+                break;
+            }
 
-        List<Room> rooms = roomRepository.findAllByHotelId(id);
-        for (Room room : rooms) {
-            roomLockRepository.deleteAllByRoom_Id(room.getId());
+            int[] deleted = transactionTemplate.execute(status -> {
+                roomRepository.lockAllByIds(roomIds);
+                int locks = roomLockRepository.deleteAllByRoomIds(roomIds);
+                int rooms = roomRepository.deleteAllByIds(roomIds);
+                roomIds.forEach(roomId -> {
+                    availabilityIndex.roomRemoved(roomId);
+                    timesBookedCounter.roomRemoved(roomId);
+                });
+                availabilityCache.invalidateAll();
+                return new int[]{rooms, locks};
+            });
+            onChunk.accept(deleted[0], deleted[1]);
+            afterId = roomIds.getLast();
         }
 
-        roomRepository.deleteAll(rooms);
-        hotelRepository.delete(hotel);
+        transactionTemplate.executeWithoutResult(status -> {
+            occupancyService.hotelRemoved(id);
+            hotelRepository.deleteById(id);
+        });
     }
 
     /**
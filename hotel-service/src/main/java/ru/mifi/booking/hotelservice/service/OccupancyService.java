@@ -0,0 +1,246 @@
+package ru.mifi.booking.hotelservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.mifi.booking.common.exception.BadRequestException;
+import ru.mifi.booking.common.exception.NotFoundException;
+import ru.mifi.booking.hotelservice.dto.DailyOccupancyDto;
+import ru.mifi.booking.hotelservice.dto.HotelOccupancyDto;
+import ru.mifi.booking.hotelservice.dto.RoomLockSpanDto;
+import ru.mifi.booking.hotelservice.entity.Hotel;
+import ru.mifi.booking.hotelservice.entity.HotelDailyOccupancy;
+import ru.mifi.booking.hotelservice.repository.HotelOccupancyRepository;
+import ru.mifi.booking.hotelservice.repository.HotelRepository;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Материализованная дневная загрузка отелей (таблица hotel_daily_occupancy).
+ *
+ * <p>
+ * Каждая блокировка [start, end) даёт +1 к каждой ночи периода своего отеля, снятие — -1.
+ * Я применяю дельту в транзакции, которая создаёт/снимает блокировку, поэтому таблица
+ * откатывается вместе с ней. Чтение тепловой карты стоит O(дней окна), а не O(блокировок).
+ * </p>
+ *
+ * <p>
+ * Добавление блокировки — один MERGE по дням периода (system_range): существующие дни получают +1,
+ * недостающие вставляются сразу с 1. Строку отеля FOR UPDATE больше не беру, поэтому confirm разных
+ * номеров одного отеля не сериализуются — ждут друг друга только на строках общих дней.
+ * Единственная гонка — два confirm одновременно вставляют один и тот же новый день: второй ждёт коммита
+ * первого и получает нарушение уникального ключа. MERGE идёт через JdbcTemplate, а не через Hibernate,
+ * чтобы такая ошибка не помечала транзакцию rollback-only; H2 откатывает только сам statement,
+ * и повтор уже видит закоммиченную строку.
+ * </p>
+ *
+ * <p>
+ * Прямые удаления room_locks мимо RoomService в таблице не отражаются —
+ * для восстановления есть {@link #rebuild(Long)}.
+ * </p>
+ */
+@Service
+public class OccupancyService {
+
+    private static final Logger log = LoggerFactory.getLogger(OccupancyService.class);
+
+    /** Максимальная длина окна тепловой карты (дней). */
+    public static final int MAX_WINDOW_DAYS = 366;
+
+    /**
+     * +1 ко всем ночам [start, start + lastOffset] отеля одним statement; id новых строк — из той же
+     * последовательности, что у saveAll (pooled-lo: значение последовательности — начало собственного блока).
+     */
+    private static final String MERGE_LOCK_ADDED = """
+            merge into hotel_daily_occupancy o
+            using (
+                select cast(? as bigint) as hotel_id, dateadd(day, r.x, cast(? as date)) as stay_date
+                from system_range(0, ?) r
+            ) d
+            on o.hotel_id = d.hotel_id and o.stay_date = d.stay_date
+            when matched then update set occupied_rooms = o.occupied_rooms + 1
+            when not matched then insert (id, hotel_id, stay_date, occupied_rooms)
+                values (next value for hotel_daily_occupancy_seq, d.hotel_id, d.stay_date, 1)
+            """;
+
+    private final HotelOccupancyRepository occupancyRepository;
+    private final HotelRepository hotelRepository;
+    private final RoomRepository roomRepository;
+    private final RoomLockRepository roomLockRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public OccupancyService(
+            HotelOccupancyRepository occupancyRepository,
+            HotelRepository hotelRepository,
+            RoomRepository roomRepository,
+            RoomLockRepository roomLockRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.occupancyRepository = occupancyRepository;
+        this.hotelRepository = hotelRepository;
+        this.roomRepository = roomRepository;
+        this.roomLockRepository = roomLockRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Учесть новую блокировку номера отеля. Вызывать в транзакции создания блокировки.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lockAdded(Long hotelId, LocalDate start, LocalDate end) {
+        long lastOffset = ChronoUnit.DAYS.between(start, end) - 1;
+        try {
+            jdbcTemplate.update(MERGE_LOCK_ADDED, hotelId, start, lastOffset);
+        } catch (DataIntegrityViolationException | ConcurrencyFailureException ex) {
+            // Параллельный confirm только что вставил один из дней — теперь строка видна, повтор её обновит.
+            log.debug("Daily occupancy insert race for hotel {}, retrying merge", hotelId);
+            jdbcTemplate.update(MERGE_LOCK_ADDED, hotelId, start, lastOffset);
+        }
+    }
+
+    /**
+     * Учесть снятие блокировки. Строки дней уже созданы при lockAdded, поэтому хватает одного UPDATE.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lockRemoved(Long hotelId, LocalDate start, LocalDate end) {
+        locksRemoved(hotelId, start, end, 1);
+    }
+
+    /**
+     * Учесть снятие count блокировок отеля с одним и тем же периодом — тем же одним UPDATE.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void locksRemoved(Long hotelId, LocalDate start, LocalDate end, int count) {
+        occupancyRepository.shift(hotelId, start, end, -count);
+    }
+
+    /**
+     * Вычесть все блокировки номера перед его удалением (один UPDATE по дням отеля, а не по блокировке).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void roomRemoved(Long hotelId, Long roomId) {
+        occupancyRepository.subtractRoomLocks(hotelId, roomId);
+    }
+
+    /**
+     * Удалить загрузку отеля вместе с отелем.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void hotelRemoved(Long hotelId) {
+        occupancyRepository.deleteAllByHotelId(hotelId);
+    }
+
+    /**
+     * ADMIN: тепловая карта загрузки отеля за окно [start, end), дни без строки заполняются нулём.
+     *
+     * @param hotelId идентификатор отеля
+     * @param start   первая ночь окна
+     * @param end     конец окна (не включительно)
+     * @return загрузка по каждой ночи окна
+     */
+    public HotelOccupancyDto occupancy(Long hotelId, LocalDate start, LocalDate end) {
+        if (start == null || end == null) {
+            throw new BadRequestException("start and end must be provided");
+        }
+        if (!start.isBefore(end)) {
+            throw new BadRequestException("start must be before end");
+        }
+        if (ChronoUnit.DAYS.between(start, end) > MAX_WINDOW_DAYS) {
+            throw new BadRequestException("Occupancy window must not exceed " + MAX_WINDOW_DAYS + " days");
+        }
+
+        Map<LocalDate, Long> stored = occupancyRepository.findWindow(hotelId, start, end).stream()
+                .collect(Collectors.toMap(DailyOccupancyDto::day, DailyOccupancyDto::occupiedRooms));
+
+        List<DailyOccupancyDto> days = start.datesUntil(end)
+                .map(day -> new DailyOccupancyDto(day, stored.getOrDefault(day, 0L)))
+                .toList();
+
+        return new HotelOccupancyDto(hotelId, roomRepository.countByHotelId(hotelId), days);
+    }
+
+    /**
+     * ADMIN: пересобрать загрузку из room_locks (восстановление после рассинхронизации).
+     *
+     * <p>
+     * Каждый отель пересобирается в своей транзакции под FOR UPDATE строки отеля.
+     * Сначала я удаляю старые строки (ждёт незакоммиченные confirm, которые их уже обновили),
+     * затем читаю блокировки. Confirm, который ещё не дошёл до загрузки, после нашего коммита
+     * применит свою дельту поверх пересобранных данных. Confirm строку отеля не блокирует, поэтому
+     * если он вставит новый день между удалением и вставкой, пересборка отеля упадёт на уникальном
+     * ключе и откатится целиком — её достаточно повторить.
+     * </p>
+     *
+     * @param hotelId идентификатор отеля или null — все отели
+     */
+    public void rebuild(Long hotelId) {
+        List<Long> hotelIds = hotelId != null
+                ? List.of(hotelId)
+                : hotelRepository.findAll().stream().map(Hotel::getId).toList();
+
+        for (Long id : hotelIds) {
+            transactionTemplate.executeWithoutResult(status -> rebuildHotel(id));
+        }
+    }
+
+    /**
+     * После старта: если таблица пустая, а блокировки есть (таблица только что появилась), пересобираю её.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (occupancyRepository.count() == 0 && roomLockRepository.count() > 0) {
+            log.info("Daily occupancy is empty while room locks exist. Rebuilding.");
+            rebuild(null);
+        }
+    }
+
+    private void rebuildHotel(Long hotelId) {
+        hotelRepository.findByIdForUpdate(hotelId)
+                .orElseThrow(() -> new NotFoundException("Hotel " + hotelId + " not found"));
+
+        occupancyRepository.deleteAllByHotelId(hotelId);
+
+        // Разностный массив: +1 в день начала, -1 в день выезда, затем префиксная сумма.
+        TreeMap<LocalDate, Long> deltas = new TreeMap<>();
+        for (RoomLockSpanDto span : roomLockRepository.findSpansByHotel(hotelId)) {
+            deltas.merge(span.startDate(), 1L, Long::sum);
+            deltas.merge(span.endDate(), -1L, Long::sum);
+        }
+
+        List<HotelDailyOccupancy> rows = new ArrayList<>();
+        long occupied = 0;
+        LocalDate day = null;
+        for (Map.Entry<LocalDate, Long> e : deltas.entrySet()) {
+            if (day != null && occupied > 0) {
+                for (LocalDate d = day; d.isBefore(e.getKey()); d = d.plusDays(1)) {
+                    rows.add(new HotelDailyOccupancy(null, hotelId, d, occupied));
+                }
+            }
+            occupied += e.getValue();
+            day = e.getKey();
+        }
+
+        occupancyRepository.saveAll(rows);
+        log.info("Rebuilt daily occupancy for hotel {}: {} days", hotelId, rows.size());
+    }
+}
@@ -0,0 +1,185 @@
+package ru.mifi.booking.hotelservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.mifi.booking.hotelservice.dto.RoomLockSpanDto;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory индекс блокировок номеров (опциональный движок доступности).
+ *
+ * <p>
+ * Для каждого номера храню отсортированную карту "startEpochDay -> endEpochDay".
+ * Блокировки одного номера не пересекаются (это гарантирует confirmAvailability),
+ * поэтому проверка пересечения с [start, end) сводится к одному lowerEntry(end): O(log n).
+ * </p>
+ *
+ * <p>
+ * Индекс загружается из room_locks при старте, обновляется после коммита confirm/release
+ * и периодически сверяется с БД (reconcile), чтобы поймать изменения в обход сервиса.
+ * Пока индекс не загружен, {@link #isActive()} возвращает false и чтения идут в БД.
+ * </p>
+ */
+@Component
+public class RoomAvailabilityIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomAvailabilityIndex.class);
+    private static final int MAX_RELOAD_ATTEMPTS = 3;
+
+    private final RoomLockRepository roomLockRepository;
+    private final boolean enabled;
+
+    /** Защищает подмену карты при reload от параллельных инкрементальных обновлений. */
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final AtomicLong modifications = new AtomicLong();
+
+    private volatile Map<Long, ConcurrentSkipListMap<Long, Long>> locksByRoom = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public RoomAvailabilityIndex(
+            RoomLockRepository roomLockRepository,
+            @Value("${hotel.availability.in-memory.enabled:false}") boolean enabled
+    ) {
+        this.roomLockRepository = roomLockRepository;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return true, если движок включён и индекс уже загружен
+     */
+    public boolean isActive() {
+        return enabled && ready;
+    }
+
+    /**
+     * Есть ли у номера блокировка, пересекающая период [start, end).
+     */
+    public boolean hasOverlap(Long roomId, LocalDate start, LocalDate end) {
+        ConcurrentSkipListMap<Long, Long> spans = locksByRoom.get(roomId);
+        if (spans == null) {
+            return false;
+        }
+        Map.Entry<Long, Long> candidate = spans.lowerEntry(end.toEpochDay());
+        return candidate != null && candidate.getValue() > start.toEpochDay();
+    }
+
+    /**
+     * Учесть новую блокировку (применяется после коммита текущей транзакции).
+     */
+    public void lockAdded(Long roomId, LocalDate start, LocalDate end) {
+        if (!enabled) {
+            return;
+        }
+        AfterCommit.run(() -> modify(map -> map
+                .computeIfAbsent(roomId, id -> new ConcurrentSkipListMap<>())
+                .put(start.toEpochDay(), end.toEpochDay())));
+    }
+
+    /**
+     * Убрать блокировку (применяется после коммита текущей транзакции).
+     */
+    public void lockRemoved(Long roomId, LocalDate start, LocalDate end) {
+        if (!enabled) {
+            return;
+        }
+        AfterCommit.run(() -> modify(map -> {
+            ConcurrentSkipListMap<Long, Long> spans = map.get(roomId);
+            if (spans != null) {
+                spans.remove(start.toEpochDay(), end.toEpochDay());
+            }
+        }));
+    }
+
+    /**
+     * Убрать все блокировки номера (номер удалён).
+     */
+    public void roomRemoved(Long roomId) {
+        if (!enabled) {
+            return;
+        }
+        AfterCommit.run(() -> modify(map -> map.remove(roomId)));
+    }
+
+    /**
+     * Холодный старт: загрузить индекс после запуска приложения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            reload();
+        }
+    }
+
+    /**
+     * Периодическая сверка с БД.
+     */
+    @Scheduled(
+            initialDelayString = "${hotel.availability.in-memory.reconcile-ms:300000}",
+            fixedDelayString = "${hotel.availability.in-memory.reconcile-ms:300000}"
+    )
+    public void reconcile() {
+        if (enabled) {
+            reload();
+        }
+    }
+
+    /**
+     * Полностью перестроить индекс из room_locks.
+     *
+     * <p>
+     * Если во время чтения из БД пришли инкрементальные обновления, снимок мог их не увидеть —
+     * тогда перечитываю ещё раз. После нескольких неудачных попыток индекс временно выключается,
+     * и чтения уходят в БД до следующей сверки.
+     * </p>
+     */
+    public void reload() {
+        for (int attempt = 1; attempt <= MAX_RELOAD_ATTEMPTS; attempt++) {
+            long before = modifications.get();
+
+            Map<Long, ConcurrentSkipListMap<Long, Long>> fresh = new ConcurrentHashMap<>();
+            for (RoomLockSpanDto span : roomLockRepository.findAllSpans()) {
+                fresh.computeIfAbsent(span.roomId(), id -> new ConcurrentSkipListMap<>())
+                        .put(span.startDate().toEpochDay(), span.endDate().toEpochDay());
+            }
+
+            swapLock.writeLock().lock();
+            try {
+                if (modifications.get() == before) {
+                    locksByRoom = fresh;
+                    ready = true;
+                    log.debug("Room availability index reloaded: rooms={}", fresh.size());
+                    return;
+                }
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        }
+
+        ready = false;
+        log.warn("Room availability index reload raced with updates {} times; falling back to DB until next reconcile",
+                MAX_RELOAD_ATTEMPTS);
+    }
+
+    private void modify(Consumer<Map<Long, ConcurrentSkipListMap<Long, Long>>> change) {
+        swapLock.readLock().lock();
+        try {
+            change.accept(locksByRoom);
+            modifications.incrementAndGet();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+}
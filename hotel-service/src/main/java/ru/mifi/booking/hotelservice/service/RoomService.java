@@ -1,15 +1,28 @@
 package ru.mifi.booking.hotelservice.service;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import ru.mifi.booking.common.exception.ApiException;
 import ru.mifi.booking.common.exception.BadRequestException;
 import ru.mifi.booking.common.exception.ConflictException;
 import ru.mifi.booking.common.exception.NotFoundException;
+import ru.mifi.booking.common.id.UuidKeys;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityBatchRequest;
 import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.dto.RoomCalendarDto;
 import ru.mifi.booking.hotelservice.dto.RoomDto;
+import ru.mifi.booking.hotelservice.dto.RoomHotelIdDto;
+import ru.mifi.booking.hotelservice.dto.RoomLockSpanDto;
+import ru.mifi.booking.hotelservice.dto.RoomOperationResult;
+import ru.mifi.booking.hotelservice.dto.RoomOperationsRequest;
 import ru.mifi.booking.hotelservice.dto.RoomStatsDto;
 import ru.mifi.booking.hotelservice.dto.UpdateRoomRequest;
 import ru.mifi.booking.hotelservice.entity.Hotel;
@@ -18,24 +31,88 @@ import ru.mifi.booking.hotelservice.entity.RoomLock;
 import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
 import ru.mifi.booking.hotelservice.repository.RoomRepository;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Service
 public class RoomService {
 
     private static final Logger log = LoggerFactory.getLogger(RoomService.class);
 
+    /** Максимальная длина окна календаря занятости (ночей). */
+    public static final int MAX_CALENDAR_NIGHTS = 366;
+
+    /** Максимальный размер страницы для keyset-пагинации. */
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * Сколько кандидатов сверх limit берётся из БД для рекомендаций: порядок в БД построен по сброшенному
+     * timesBooked, а итоговый — по живому значению, и несброшенные дельты могут переставить соседей.
+     */
+    private static final int RECOMMEND_SLACK = 16;
+
+    /** Ключ MDC, который ставит фильтр X-Request-Id. */
+    private static final String MDC_REQUEST_ID = "requestId";
+
+    /** Порядок рекомендаций: реже бронировали — выше, при равенстве — по id. */
+    private static final Comparator<RoomDto> RECOMMENDATION_ORDER =
+            Comparator.comparingLong(RoomDto::timesBooked).thenComparing(RoomDto::id);
+
     private final RoomRepository roomRepository;
     private final RoomLockRepository roomLockRepository;
-
-    public RoomService(RoomRepository roomRepository, RoomLockRepository roomLockRepository) {
+    private final RoomAvailabilityIndex availabilityIndex;
+    private final AvailabilityCache availabilityCache;
+    private final OccupancyService occupancyService;
+    private final RoomStripedLocks roomLocks;
+    private final DbConcurrencyLimiter dbLimiter;
+    private final TimesBookedCounter timesBookedCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final int reserveCandidates;
+    private final int batchMaxItems;
+    private final int operationsMaxItems;
+    private final Duration operationsDeadline;
+    private final Duration holdTtl;
+
+    public RoomService(
+            RoomRepository roomRepository,
+            RoomLockRepository roomLockRepository,
+            RoomAvailabilityIndex availabilityIndex,
+            AvailabilityCache availabilityCache,
+            OccupancyService occupancyService,
+            RoomStripedLocks roomLocks,
+            DbConcurrencyLimiter dbLimiter,
+            TimesBookedCounter timesBookedCounter,
+            PlatformTransactionManager transactionManager,
+            @Value("${hotel.reserve.candidates:5}") int reserveCandidates,
+            @Value("${hotel.confirm.batch.max-items:50}") int batchMaxItems,
+            @Value("${hotel.confirm.operations.max-items:256}") int operationsMaxItems,
+            @Value("${hotel.confirm.operations.deadline-ms:2000}") long operationsDeadlineMs,
+            @Value("${hotel.holds.ttl-ms:600000}") long holdTtlMs
+    ) {
         this.roomRepository = roomRepository;
         this.roomLockRepository = roomLockRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.availabilityCache = availabilityCache;
+        this.occupancyService = occupancyService;
+        this.roomLocks = roomLocks;
+        this.dbLimiter = dbLimiter;
+        this.timesBookedCounter = timesBookedCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reserveCandidates = Math.max(1, reserveCandidates);
+        this.batchMaxItems = Math.max(1, batchMaxItems);
+        this.operationsMaxItems = Math.max(1, operationsMaxItems);
+        this.operationsDeadline = Duration.ofMillis(Math.max(1, operationsDeadlineMs));
+        this.holdTtl = Duration.ofMillis(holdTtlMs);
     }
 
     /**
@@ -44,6 +121,7 @@ public class RoomService {
     public RoomDto addRoom(Hotel hotel, String number, boolean available) {
         Room room = new Room(null, hotel, number, available, 0);
         Room saved = roomRepository.save(room);
+        availabilityCache.invalidateAll();
         return toDto(saved);
     }
 
@@ -65,19 +143,66 @@ public class RoomService {
     public List<RoomDto> listAvailable(LocalDate start, LocalDate end) {
         validateRange(start, end);
 
-        return roomRepository.findAllAvailable().stream()
-                .filter(r -> roomLockRepository.findOverlaps(r, start, end).isEmpty())
-                .map(this::toDto)
+        return availabilityCache.available(start, end, () -> loadAvailable(start, end));
+    }
+
+    /**
+     * USER: страница свободных номеров на период (keyset-пагинация) с фильтрами по отелю и адресу.
+     *
+     * <p>
+     * Следующая страница запрашивается с afterId = id последнего номера текущей страницы;
+     * если вернулось меньше size номеров — страница последняя.
+     * </p>
+     *
+     * @param afterId id последнего номера предыдущей страницы (null — с начала)
+     * @param size    размер страницы (1..{@value #MAX_PAGE_SIZE})
+     * @param hotelId фильтр по отелю (null — все)
+     * @param address префикс адреса/города отеля (null — без фильтра)
+     */
+    public List<RoomDto> listAvailablePage(LocalDate start,
+                                           LocalDate end,
+                                           Long afterId,
+                                           int size,
+                                           Long hotelId,
+                                           String address) {
+        validateRange(start, end);
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        String addressPrefix = (address == null || address.isBlank()) ? null : escapeLike(address.trim()) + "%";
+        long after = afterId == null ? 0L : afterId;
+        Limit limit = Limit.of(size);
+
+        // Свой запрос на каждую комбинацию фильтров — чтобы план опирался на индекс фильтра.
+        List<RoomDto> page;
+        if (hotelId != null && addressPrefix != null) {
+            page = roomRepository.findAvailablePageInHotelByAddress(start, end, after, hotelId, addressPrefix, limit);
+        } else if (hotelId != null) {
+            page = roomRepository.findAvailablePageInHotel(start, end, after, hotelId, limit);
+        } else if (addressPrefix != null) {
+            page = roomRepository.findAvailablePageByAddress(start, end, after, addressPrefix, limit);
+        } else {
+            page = roomRepository.findAvailablePage(start, end, after, limit);
+        }
+
+        return page.stream()
+                .map(this::withLiveTimesBooked)
                 .toList();
     }
 
     /**
      * USER: рекомендованные номера: те же доступные, но отсортированы по timesBooked (по возрастанию), затем по id.
+     *
+     * @param limit сколько первых кандидатов вернуть (null — все)
      */
-    public List<RoomDto> recommend(LocalDate start, LocalDate end) {
-        return listAvailable(start, end).stream()
-                .sorted(Comparator.comparingLong(RoomDto::timesBooked).thenComparing(RoomDto::id))
-                .toList();
+    public List<RoomDto> recommend(LocalDate start, LocalDate end, Integer limit) {
+        validateRange(start, end);
+        if (limit != null && limit < 1) {
+            throw new BadRequestException("limit must be positive");
+        }
+
+        return availabilityCache.recommended(start, end, limit, () -> loadRecommended(start, end, limit));
     }
 
     /**
@@ -112,21 +237,29 @@ public class RoomService {
             throw new BadRequestException("At least one field must be provided for PATCH");
         }
 
+        availabilityCache.invalidateAll();
         return toDto(room);
     }
 
     /**
-     * ADMIN: удалить номер вместе с блокировками.
+     * ADMIN: удалить номер вместе с блокировками (одним DELETE по room_id, загрузка отеля — одним UPDATE).
+     * Сначала беру row-lock номера, как порция удаления отеля: иначе confirm мог вставить блокировку
+     * между её DELETE и DELETE номера — удаление падало на FK, а загрузка отеля была уже уменьшена.
      *
      * @param id идентификатор номера
      */
     @Transactional
     public void delete(Long id) {
+        roomRepository.lockAllByIds(List.of(id));
         Room room = roomRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Room " + id + " not found"));
 
-        roomLockRepository.deleteAllByRoom_Id(room.getId());
+        occupancyService.roomRemoved(room.getHotel().getId(), room.getId());
+        roomLockRepository.deleteAllByRoomIds(List.of(room.getId()));
         roomRepository.delete(room);
+        availabilityIndex.roomRemoved(room.getId());
+        timesBookedCounter.roomRemoved(room.getId());
+        availabilityCache.invalidateAll();
     }
 
     /**
@@ -140,77 +273,376 @@ public class RoomService {
     public List<RoomStatsDto> stats(Long hotelId, LocalDate start, LocalDate end) {
         validateRange(start, end);
 
-        List<Room> rooms = roomRepository.findAllByHotelId(hotelId);
-        List<RoomLock> locks = roomLockRepository.findOverlapsInHotel(hotelId, start, end);
+        return roomRepository.aggregateStats(hotelId, start, end).stream()
+                .map(s -> new RoomStatsDto(
+                        s.roomId(),
+                        s.hotelId(),
+                        s.number(),
+                        timesBookedCounter.live(s.roomId(), s.timesBooked()),
+                        s.locksCountInRange(),
+                        s.bookedDaysInRange()
+                ))
+                .toList();
+    }
 
-        Map<Long, List<RoomLock>> locksByRoomId = locks.stream()
-                .collect(Collectors.groupingBy(l -> l.getRoom().getId()));
+    /**
+     * USER: календарь занятости номеров отеля за окно дат — по битсету ночей на номер.
+     *
+     * <p>
+     * Заменяет серию запросов /api/rooms?start=&end= по одной ночи: блокировки отеля
+     * читаются одним запросом (только даты, без сущностей) и раскладываются по битсетам за один проход.
+     * </p>
+     *
+     * @param hotelId идентификатор отеля
+     * @param start   первая ночь окна
+     * @param end     день выезда (не включительно)
+     * @return календарь по каждому номеру отеля, по возрастанию id
+     */
+    public List<RoomCalendarDto> calendar(Long hotelId, LocalDate start, LocalDate end) {
+        validateRange(start, end);
+
+        long nightsLong = ChronoUnit.DAYS.between(start, end);
+        if (nightsLong > MAX_CALENDAR_NIGHTS) {
+            throw new BadRequestException("Calendar window must not exceed " + MAX_CALENDAR_NIGHTS + " nights");
+        }
+        int nights = (int) nightsLong;
 
-        return rooms.stream()
+        Map<Long, BitSet> occupiedByRoom = new HashMap<>();
+        for (RoomLockSpanDto span : roomLockRepository.findSpansInHotel(hotelId, start, end)) {
+            int from = (int) Math.max(0, ChronoUnit.DAYS.between(start, span.startDate()));
+            int to = (int) Math.min(nights, ChronoUnit.DAYS.between(start, span.endDate()));
+            occupiedByRoom.computeIfAbsent(span.roomId(), id -> new BitSet(nights)).set(from, to);
+        }
+
+        Base64.Encoder encoder = Base64.getEncoder();
+        return roomRepository.findAllByHotelId(hotelId).stream()
                 .sorted(Comparator.comparingLong(Room::getId))
-                .map(room -> {
-                    List<RoomLock> roomLocks = locksByRoomId.getOrDefault(room.getId(), List.of());
-
-                    long locksCount = roomLocks.size();
-                    long bookedDays = roomLocks.stream()
-                            .mapToLong(l -> overlapDays(l.getStartDate(), l.getEndDate(), start, end))
-                            .sum();
-
-                    return new RoomStatsDto(
-                            room.getId(),
-                            room.getHotel().getId(),
-                            room.getNumber(),
-                            room.getTimesBooked(),
-                            locksCount,
-                            bookedDays
-                    );
-                })
+                .map(room -> new RoomCalendarDto(
+                        room.getId(),
+                        room.getNumber(),
+                        room.isAvailable(),
+                        start,
+                        nights,
+                        encoder.encodeToString(occupiedByRoom.getOrDefault(room.getId(), new BitSet()).toByteArray())
+                ))
                 .toList();
     }
 
     /**
      * INTERNAL: подтвердить доступность (временная блокировка).
      * Идемпотентность: если requestId уже был — просто выходим без ошибки.
+     *
+     * <p>
+     * Транзакцию открываю сам (TransactionTemplate), а не через @Transactional:
+     * in-JVM блокировку номера нужно взять до транзакции, чтобы ожидающие не держали соединение из пула.
+     * </p>
      */
-    @Transactional
     public void confirmAvailability(Long roomId, ConfirmAvailabilityRequest req) {
         validateRange(req.startDate(), req.endDate());
 
-        // 1) Блокируем room строку, чтобы сериализовать конкурентные confirm на один и тот же roomId.
-        Room room = roomRepository.findByIdForUpdate(roomId)
-                .orElseThrow(() -> new NotFoundException("Room " + roomId + " not found"));
+        // 0) Быстрый отказ по in-memory индексу: не берём row-lock, если период уже точно занят.
+        //    Повтор того же requestId при этом должен остаться идемпотентным.
+        if (availabilityIndex.isActive() && availabilityIndex.hasOverlap(roomId, req.startDate(), req.endDate())) {
+            if (roomLockRepository.findByRequestId(req.requestId()).isPresent()) {
+                log.debug("confirm-availability idempotent hit: roomId={}, requestId={}", roomId, req.requestId());
+                return;
+            }
+            throw new ConflictException("Room is not available for this period");
+        }
+
+        try {
+            roomLocks.runWithLock(roomId, () -> dbLimiter.run(
+                    () -> transactionTemplate.executeWithoutResult(status -> confirmInTransaction(roomId, req))));
+        } catch (DataIntegrityViolationException ex) {
+            // requestId мог «влететь» параллельно (уникальный индекс). Проверяю уже вне откатившейся транзакции:
+            // если блокировка с этим requestId есть — это успешная идемпотентная обработка.
+            if (roomLockRepository.findByRequestId(req.requestId()).isPresent()) {
+                log.debug("confirm-availability idempotent after insert-race: roomId={}, requestId={}", roomId, req.requestId());
+                return;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Быстрый путь confirm: два statement вместо SELECT FOR UPDATE + findByRequestId + findOverlaps + INSERT.
+     *
+     * <p>
+     * Row-lock номера остаётся обязательным: условный INSERT ... WHERE NOT EXISTS сам по себе не атомарен —
+     * две конкурентные транзакции не видят незакоммиченные вставки друг друга и обе проходят проверку.
+     * Поэтому первым statement я беру FOR UPDATE по доступному номеру (он же отдаёт hotelId для загрузки),
+     * а пересечение и повтор requestId проверяет сам INSERT. Строку rooms при этом не пишу —
+     * timesBooked копится в {@link TimesBookedCounter}. Причину неудачи выясняю только на медленном пути.
+     * </p>
+     */
+    private void confirmInTransaction(Long roomId, ConfirmAvailabilityRequest req) {
+        // 1) SELECT hotel_id ... FOR UPDATE: row-lock доступного номера.
+        Optional<Long> hotelId = roomRepository.lockHotelIdIfAvailable(roomId);
+        if (hotelId.isEmpty()) {
+            if (roomLockRepository.findByRequestId(req.requestId()).isPresent()) {
+                log.debug("confirm-availability idempotent hit: roomId={}, requestId={}", roomId, req.requestId());
+                return;
+            }
+            if (!roomRepository.existsById(roomId)) {
+                throw new NotFoundException("Room " + roomId + " not found");
+            }
+            throw new ConflictException("Room is not operational");
+        }
 
-        // 2) Идемпотентность по requestId.
-        //    Проверку делаю ПОСЛЕ лока, чтобы снизить риск гонки «check-then-insert».
+        // 2) INSERT ... SELECT ... WHERE NOT EXISTS (пересечение) AND NOT EXISTS (requestId).
+        int inserted = roomLockRepository.insertIfFree(roomId, req.startDate(), req.endDate(),
+                UuidKeys.toUuid(req.bookingId()), UuidKeys.toUuid(req.requestId()), holdExpiry());
+        if (inserted == 1) {
+            onLockCreated(roomId, hotelId.get(), req.startDate(), req.endDate());
+            return;
+        }
+
+        // 3) Медленный путь: блокировка не создана — выясняю причину.
         if (roomLockRepository.findByRequestId(req.requestId()).isPresent()) {
             log.debug("confirm-availability idempotent hit: roomId={}, requestId={}", roomId, req.requestId());
             return;
         }
+        throw new ConflictException("Room is not available for this period");
+    }
 
-        if (!room.isAvailable()) {
-            throw new ConflictException("Room is not operational");
+    /**
+     * INTERNAL: подтвердить доступность нескольких номеров (групповое бронирование) — всё или ничего.
+     *
+     * <p>
+     * Все блокировки создаются в одной транзакции: если хоть один номер занят или выведен из эксплуатации,
+     * откатывается вся группа. Row-lock номеров беру строго по возрастанию roomId, поэтому две
+     * пересекающиеся группы не могут взять их крест-накрест и зайти в deadlock.
+     * In-JVM полосы здесь не беру — порядок row-lock в БД и так сериализует конкурентов.
+     * </p>
+     *
+     * <p>
+     * Идемпотентность по requestId каждого элемента: уже созданные блокировки пропускаются,
+     * поэтому повтор всей группы после потерянного ответа — успешный no-op.
+     * </p>
+     *
+     * @param req элементы группы
+     */
+    public void confirmAvailabilityBatch(ConfirmAvailabilityBatchRequest req) {
+        List<ConfirmAvailabilityBatchRequest.Item> items = req.items();
+        if (items.size() > batchMaxItems) {
+            throw new BadRequestException("Batch must not exceed " + batchMaxItems + " items");
         }
-
-        if (!roomLockRepository.findOverlaps(room, req.startDate(), req.endDate()).isEmpty()) {
-            throw new ConflictException("Room is not available for this period");
+        for (ConfirmAvailabilityBatchRequest.Item item : items) {
+            validateRange(item.startDate(), item.endDate());
         }
 
-        RoomLock lock = new RoomLock(null, room, req.startDate(), req.endDate(), req.bookingId(), req.requestId());
+        List<ConfirmAvailabilityBatchRequest.Item> ordered = items.stream()
+                .sorted(Comparator.comparing(ConfirmAvailabilityBatchRequest.Item::roomId)
+                        .thenComparing(ConfirmAvailabilityBatchRequest.Item::startDate))
+                .toList();
+
         try {
-            roomLockRepository.save(lock);
+            dbLimiter.run(() -> transactionTemplate.executeWithoutResult(status -> ordered.forEach(this::confirmBatchItem)));
         } catch (DataIntegrityViolationException ex) {
-            // В конкурентных сценариях возможна ситуация, когда requestId «влетел» параллельно.
-            // Тогда считаю это успешной идемпотентной обработкой.
-            if (roomLockRepository.findByRequestId(req.requestId()).isPresent()) {
-                log.debug("confirm-availability idempotent after save-race: roomId={}, requestId={}", roomId, req.requestId());
+            // Та же гонка по уникальному requestId, что и в одиночном confirm: если вся группа уже есть — это повтор.
+            if (ordered.stream().allMatch(i -> roomLockRepository.findByRequestId(i.requestId()).isPresent())) {
+                log.debug("confirm-availability batch idempotent after insert-race: items={}", ordered.size());
                 return;
             }
             throw ex;
         }
+    }
+
+    /**
+     * Один элемент группы внутри общей транзакции. Любое исключение откатывает всю группу.
+     */
+    private void confirmBatchItem(ConfirmAvailabilityBatchRequest.Item item) {
+        if (roomLockRepository.findByRequestId(item.requestId()).isPresent()) {
+            log.debug("confirm-availability batch idempotent hit: roomId={}, requestId={}", item.roomId(), item.requestId());
+            return;
+        }
+
+        Long hotelId = roomRepository.lockHotelIdIfAvailable(item.roomId()).orElseThrow(() ->
+                roomRepository.existsById(item.roomId())
+                        ? new ConflictException("Room " + item.roomId() + " is not operational")
+                        : new NotFoundException("Room " + item.roomId() + " not found"));
+
+        int inserted = roomLockRepository.insertIfFree(item.roomId(), item.startDate(), item.endDate(),
+                UuidKeys.toUuid(item.bookingId()), UuidKeys.toUuid(item.requestId()), holdExpiry());
+        if (inserted == 0) {
+            throw new ConflictException("Room " + item.roomId() + " is not available for this period");
+        }
+        onLockCreated(item.roomId(), hotelId, item.startDate(), item.endDate());
+    }
+
+    /**
+     * INTERNAL: выполнить пачку независимых confirm/release/commit (микробатч от booking-service).
+     *
+     * <p>
+     * Экономится HTTP-обмен и проверка JWT на каждую операцию; сами операции идут прежними путями,
+     * каждая — своя короткая транзакция (confirm открывает её сам, release/commit — через transactionTemplate:
+     * их {@code @Transactional} при вызове изнутри класса не срабатывает). Общую транзакцию на пачку
+     * я сознательно не делаю: конфликт одной брони откатывал бы чужие, а row-lock разных номеров в одной
+     * транзакции снова требовали бы упорядочивания против deadlock. Цена — операции выполняются
+     * последовательно, поэтому длительность пачки ограничена hotel.confirm.operations.deadline-ms:
+     * операции, до которых очередь не дошла в срок, не выполняются и получают 503 — клиент отправит их заново.
+     * </p>
+     *
+     * <p>
+     * Ошибка операции не прерывает пачку, а возвращается в её результате тем же статусом,
+     * что вернул бы одиночный вызов. X-Request-Id исходного запроса booking-service приходит
+     * в correlationId операции и на время её выполнения подменяет requestId пачки в MDC.
+     * </p>
+     *
+     * @param req операции
+     * @return результаты в порядке операций
+     */
+    public List<RoomOperationResult> applyOperations(RoomOperationsRequest req) {
+        if (req.operations().size() > operationsMaxItems) {
+            throw new BadRequestException("Operations batch must not exceed " + operationsMaxItems + " items");
+        }
+
+        long deadline = System.nanoTime() + operationsDeadline.toNanos();
+        int skipped = 0;
+        List<RoomOperationResult> results = new ArrayList<>(req.operations().size());
+        for (RoomOperationsRequest.Operation op : req.operations()) {
+            if (System.nanoTime() - deadline > 0) {
+                results.add(new RoomOperationResult(503, "Operations batch deadline exceeded, retry the operation"));
+                skipped++;
+                continue;
+            }
+            String batchRequestId = MDC.get(MDC_REQUEST_ID);
+            try (MDC.MDCCloseable ignored = MDC.putCloseable("bookingUid", op.bookingId())) {
+                if (op.correlationId() != null && !op.correlationId().isBlank()) {
+                    MDC.put(MDC_REQUEST_ID, op.correlationId());
+                }
+                results.add(applyOperation(op));
+            } finally {
+                restoreMdc(MDC_REQUEST_ID, batchRequestId);
+            }
+        }
+        if (skipped > 0) {
+            log.info("Operations batch hit deadline {} ms: {} of {} operations deferred to the client",
+                    operationsDeadline.toMillis(), skipped, req.operations().size());
+        }
+        return results;
+    }
+
+    private RoomOperationResult applyOperation(RoomOperationsRequest.Operation op) {
+        try {
+            if (op.type() != RoomOperationsRequest.Type.COMMIT && op.roomId() == null) {
+                throw new BadRequestException("roomId must be provided");
+            }
+            switch (op.type()) {
+                case CONFIRM -> {
+                    if (op.requestId() == null || op.requestId().isBlank()) {
+                        throw new BadRequestException("requestId must be provided");
+                    }
+                    confirmAvailability(op.roomId(),
+                            new ConfirmAvailabilityRequest(op.startDate(), op.endDate(), op.bookingId(), op.requestId()));
+                }
+                case RELEASE -> transactionTemplate.executeWithoutResult(
+                        status -> release(op.roomId(), op.bookingId()));
+                case COMMIT -> transactionTemplate.executeWithoutResult(
+                        status -> commitHolds(List.of(op.bookingId())));
+            }
+            return new RoomOperationResult(200, null);
+        } catch (ApiException ex) {
+            return new RoomOperationResult(ex.getStatusCode(), ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.warn("room operation failed: type={}, roomId={}, bookingId={}", op.type(), op.roomId(), op.bookingId(), ex);
+            return new RoomOperationResult(500, "Internal error");
+        }
+    }
 
-        // метрика справедливости: увеличиваем при подтверждении доступности
-        room.setTimesBooked(room.getTimesBooked() + 1);
-        // save не обязателен, если Room является managed-entity в текущей транзакции.
+    private static void restoreMdc(String key, String value) {
+        if (value == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+
+    /**
+     * INTERNAL: выбрать лучший свободный номер и сразу заблокировать его (autoSelect за один вызов).
+     *
+     * <p>
+     * Кандидаты читаю из БД мимо кэша рекомендаций, страницами по hotel.reserve.candidates в порядке
+     * (timesBooked, id); если страница кончилась, беру следующую — 409 только когда свободных номеров
+     * действительно нет. Каждый кандидат пробую отдельной короткой транзакцией быстрого пути confirm
+     * (row-lock номера + условный INSERT): транзакция никогда не держит больше одного row-lock,
+     * поэтому конкурентные reserve, идущие по кандидатам в разном порядке, не могут зайти в deadlock.
+     * Занятый параллельно номер — не ошибка, просто перехожу к следующему.
+     * </p>
+     *
+     * <p>
+     * Идемпотентность по requestId: повтор возвращает уже заблокированный номер, в том числе когда
+     * повтор гонится с оригиналом и упирается в уникальный индекс (как в {@link #confirmAvailability}).
+     * </p>
+     *
+     * @param req период + bookingId/requestId
+     * @return заблокированный номер
+     */
+    public RoomDto reserveBest(ConfirmAvailabilityRequest req) {
+        validateRange(req.startDate(), req.endDate());
+
+        Optional<RoomDto> existing = findReservedByRequestId(req);
+        if (existing.isPresent()) {
+            log.debug("reserve idempotent hit: requestId={}", req.requestId());
+            return existing.get();
+        }
+
+        long afterTimesBooked = -1L;
+        long afterId = 0L;
+        while (true) {
+            List<RoomDto> page = roomRepository.findRecommendedPageForPeriod(
+                    req.startDate(), req.endDate(), afterTimesBooked, afterId, Limit.of(reserveCandidates));
+            if (page.isEmpty()) {
+                break;
+            }
+
+            for (RoomDto candidate : page) {
+                try {
+                    if (tryReserve(candidate.id(), req)) {
+                        return withLiveTimesBooked(candidate);
+                    }
+                } catch (DataIntegrityViolationException ex) {
+                    // requestId «влетел» параллельно в другой номер — отдаю его, иначе это не гонка повтора.
+                    return findReservedByRequestId(req).orElseThrow(() -> ex);
+                }
+                log.debug("reserve: candidate taken concurrently, trying next: roomId={}", candidate.id());
+            }
+
+            RoomDto last = page.get(page.size() - 1);
+            afterTimesBooked = last.timesBooked();
+            afterId = last.id();
+        }
+
+        // Повтор мог успеть закоммитить блокировку раньше нас — тогда все INSERT вернули 0 из-за requestId.
+        return findReservedByRequestId(req)
+                .orElseThrow(() -> new ConflictException("No available rooms for this period"));
+    }
+
+    /**
+     * Одна попытка reserve: короткая транзакция с row-lock только этого номера.
+     *
+     * @return true — блокировка создана; false — номер занят, выведен из эксплуатации или requestId уже использован
+     */
+    private boolean tryReserve(Long roomId, ConfirmAvailabilityRequest req) {
+        return roomLocks.callWithLock(roomId, () -> dbLimiter.call(() -> transactionTemplate.execute(status -> {
+            Optional<Long> hotelId = roomRepository.lockHotelIdIfAvailable(roomId);
+            if (hotelId.isEmpty()) {
+                return false;
+            }
+            int inserted = roomLockRepository.insertIfFree(roomId, req.startDate(), req.endDate(),
+                    UuidKeys.toUuid(req.bookingId()), UuidKeys.toUuid(req.requestId()), holdExpiry());
+            if (inserted == 0) {
+                return false;
+            }
+            onLockCreated(roomId, hotelId.get(), req.startDate(), req.endDate());
+            return true;
+        })));
+    }
+
+    private Optional<RoomDto> findReservedByRequestId(ConfirmAvailabilityRequest req) {
+        // getRoom().getId() не инициализирует ленивый прокси — номер читаю отдельно.
+        return roomLockRepository.findByRequestId(req.requestId())
+                .map(lock -> get(lock.getRoom().getId()));
     }
 
     /**
@@ -231,14 +663,153 @@ public class RoomService {
                 .ifPresent(lock -> {
                     // Доп.страховка: bookingId уникален, но проверю, что lock относится к нашему roomId.
                     if (lock.getRoom() != null && roomId.equals(lock.getRoom().getId())) {
-                        roomLockRepository.delete(lock);
-
-                        long current = room.getTimesBooked();
-                        room.setTimesBooked(Math.max(0, current - 1));
+                        removeLock(room, lock);
                     }
                 });
     }
 
+    /**
+     * INTERNAL: booking-service зафиксировал бронь — удержания становятся постоянными блокировками.
+     *
+     * <p>
+     * Повтор идемпотентен. Если какого-то удержания уже нет (истекло и снято сборщиком) — 404:
+     * booking-service должен отменить бронь, подтверждённые из этой пачки он снимет компенсацией.
+     * </p>
+     *
+     * @param bookingIds идентификаторы бронирований
+     */
+    @Transactional
+    public void commitHolds(List<String> bookingIds) {
+        List<String> distinct = bookingIds.stream().distinct().toList();
+        if (distinct.isEmpty()) {
+            throw new BadRequestException("bookingId must be provided");
+        }
+
+        int committed = roomLockRepository.commitByBookingIds(distinct);
+        if (committed < distinct.size()) {
+            throw new NotFoundException("Room hold expired or not found for " + (distinct.size() - committed) + " booking(s)");
+        }
+    }
+
+    /**
+     * Снять одну порцию просроченных удержаний в собственной короткой транзакции.
+     *
+     * <p>
+     * Порцию удаляю одним DELETE по id. Отели номеров читаю одним запросом ({@code getRoom().getId()}
+     * ленивый прокси не инициализирует), а дневную загрузку вычитаю одним UPDATE на каждую пару
+     * (отель, период), а не на каждое удержание. Итог прохода пишет в лог {@link HoldSweeper}.
+     * </p>
+     *
+     * @param now     момент, на который удержание считается просроченным
+     * @param afterId keyset: id последнего удержания предыдущей порции
+     * @param limit   размер порции
+     * @return id снятых удержаний по возрастанию (пусто — просроченных больше нет)
+     */
+    @Transactional
+    public List<Long> expireHolds(Instant now, Long afterId, int limit) {
+        List<RoomLock> expired = roomLockRepository.findExpiredHolds(now, afterId, Limit.of(limit));
+        if (expired.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> ids = expired.stream().map(RoomLock::getId).toList();
+        roomLockRepository.deleteAllByIds(ids);
+
+        Map<Long, Long> hotelByRoom = new HashMap<>();
+        for (RoomHotelIdDto room : roomRepository.findHotelIds(
+                expired.stream().map(lock -> lock.getRoom().getId()).distinct().toList())) {
+            hotelByRoom.put(room.roomId(), room.hotelId());
+        }
+
+        Map<HotelSpan, Integer> removedBySpan = new HashMap<>();
+        for (RoomLock lock : expired) {
+            Long roomId = lock.getRoom().getId();
+            availabilityIndex.lockRemoved(roomId, lock.getStartDate(), lock.getEndDate());
+            timesBookedCounter.decrement(roomId);
+            removedBySpan.merge(new HotelSpan(hotelByRoom.get(roomId), lock.getStartDate(), lock.getEndDate()), 1, Integer::sum);
+        }
+        removedBySpan.forEach((span, count) -> {
+            availabilityCache.invalidateOverlapping(span.start(), span.end());
+            occupancyService.locksRemoved(span.hotelId(), span.start(), span.end(), count);
+        });
+
+        log.debug("Room holds expired: ids {}..{}, bookingIds={}", ids.getFirst(), ids.getLast(),
+                expired.stream().map(RoomLock::getBookingId).toList());
+        return ids;
+    }
+
+
+    /**
+     * INTERNAL: компенсация, когда booking-service не знает номер (например, reserve упал по таймауту).
+     *
+     * @param bookingId идентификатор бронирования
+     */
+    @Transactional
+    public void releaseBooking(String bookingId) {
+        roomLockRepository.findByBookingId(bookingId)
+                .ifPresent(lock -> removeLock(lock.getRoom(), lock));
+    }
+
+    /**
+     * Поиск свободных номеров мимо кэша: через in-memory индекс, если он активен, иначе одним запросом в БД.
+     */
+    private List<RoomDto> loadAvailable(LocalDate start, LocalDate end) {
+        if (availabilityIndex.isActive()) {
+            return roomRepository.findAllAvailable().stream()
+                    .filter(r -> !availabilityIndex.hasOverlap(r.getId(), start, end))
+                    .sorted(Comparator.comparingLong(Room::getId))
+                    .map(this::toDto)
+                    .toList();
+        }
+
+        return roomRepository.findAvailableForPeriod(start, end).stream()
+                .map(this::withLiveTimesBooked)
+                .toList();
+    }
+
+    private List<RoomDto> loadRecommended(LocalDate start, LocalDate end, Integer limit) {
+        if (availabilityIndex.isActive()) {
+            return listAvailable(start, end).stream()
+                    .sorted(RECOMMENDATION_ORDER)
+                    .limit(limit == null ? Long.MAX_VALUE : limit)
+                    .toList();
+        }
+
+        Limit window = limit == null ? Limit.unlimited() : Limit.of(limit + RECOMMEND_SLACK);
+        return roomRepository.findRecommendedForPeriod(start, end, window).stream()
+                .map(this::withLiveTimesBooked)
+                .sorted(RECOMMENDATION_ORDER)
+                .limit(limit == null ? Long.MAX_VALUE : limit)
+                .toList();
+    }
+
+    /**
+     * Учесть созданную блокировку в in-memory индексе, кэше доступности и дневной загрузке отеля.
+     */
+    private void onLockCreated(Long roomId, Long hotelId, LocalDate start, LocalDate end) {
+        // метрика справедливости: увеличиваем при подтверждении доступности (write-behind, после коммита)
+        timesBookedCounter.increment(roomId);
+        availabilityIndex.lockAdded(roomId, start, end);
+        availabilityCache.invalidateOverlapping(start, end);
+        occupancyService.lockAdded(hotelId, start, end);
+    }
+
+    /**
+     * Снять блокировку: timesBooked уменьшается на 1 (не ниже 0).
+     */
+    private void removeLock(Room room, RoomLock lock) {
+        roomLockRepository.delete(lock);
+        availabilityIndex.lockRemoved(room.getId(), lock.getStartDate(), lock.getEndDate());
+        availabilityCache.invalidateOverlapping(lock.getStartDate(), lock.getEndDate());
+        occupancyService.lockRemoved(room.getHotel().getId(), lock.getStartDate(), lock.getEndDate());
+
+        timesBookedCounter.decrement(room.getId());
+    }
+
+    private Instant holdExpiry() {
+        return Instant.now().plus(holdTtl);
+    }
+
     private void validateRange(LocalDate start, LocalDate end) {
         if (start == null || end == null) {
             throw new BadRequestException("start and end must be provided");
@@ -248,11 +819,8 @@ public class RoomService {
         }
     }
 
-    private long overlapDays(LocalDate lockStart, LocalDate lockEnd, LocalDate start, LocalDate end) {
-        LocalDate s = lockStart.isAfter(start) ? lockStart : start;
-        LocalDate e = lockEnd.isBefore(end) ? lockEnd : end;
-        long days = ChronoUnit.DAYS.between(s, e);
-        return Math.max(0, days);
+    private String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     private RoomDto toDto(Room room) {
@@ -261,7 +829,19 @@ public class RoomService {
                 room.getHotel().getId(),
                 room.getNumber(),
                 room.isAvailable(),
-                room.getTimesBooked()
+                timesBookedCounter.live(room.getId(), room.getTimesBooked())
+        );
+    }
+
+    private RoomDto withLiveTimesBooked(RoomDto dto) {
+        return new RoomDto(
+                dto.id(),
+                dto.hotelId(),
+                dto.number(),
+                dto.available(),
+                timesBookedCounter.live(dto.id(), dto.timesBooked())
         );
     }
+
+    private record HotelSpan(Long hotelId, LocalDate start, LocalDate end) {}
 }
@@ -0,0 +1,99 @@
+package ru.mifi.booking.hotelservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.mifi.booking.common.exception.ServiceUnavailableException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * In-JVM полосатые (striped) блокировки по roomId для confirm-availability.
+ *
+ * <p>
+ * Берутся ДО начала транзакции: конкурентные confirm на один номер ждут на ReentrantLock
+ * (дёшево, поток просто паркуется, с виртуальными потоками — без занятого carrier),
+ * а не на row-lock в БД с удержанием соединения из пула Hikari.
+ * Когда очередь доходит до ожидающего, предыдущая транзакция уже закоммичена, и он
+ * быстро получает 409 по пересечению.
+ * </p>
+ *
+ * <p>
+ * Это оптимизация только внутри одного инстанса: SELECT ... FOR UPDATE в транзакции
+ * остаётся и сериализует confirm между инстансами hotel-service.
+ * Разные номера могут попасть в одну полосу — это лишь лишнее ожидание, не ошибка.
+ * </p>
+ */
+@Component
+public class RoomStripedLocks {
+
+    private final boolean enabled;
+    private final ReentrantLock[] stripes;
+    private final long waitMs;
+
+    public RoomStripedLocks(
+            @Value("${hotel.confirm.local-locks.enabled:false}") boolean enabled,
+            @Value("${hotel.confirm.local-locks.stripes:256}") int stripes,
+            @Value("${hotel.confirm.local-locks.wait-ms:5000}") long waitMs
+    ) {
+        this.enabled = enabled;
+        this.waitMs = waitMs;
+
+        // Округляю до степени двойки, чтобы полоса выбиралась маской.
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Выполнить действие под блокировкой полосы номера (или сразу, если блокировки выключены).
+     *
+     * @param roomId идентификатор номера
+     * @param action действие (обычно — целая транзакция confirm)
+     * @return результат действия
+     */
+    public <T> T callWithLock(Long roomId, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+
+        ReentrantLock lock = stripeFor(roomId);
+        try {
+            if (!lock.tryLock(waitMs, TimeUnit.MILLISECONDS)) {
+                throw new ServiceUnavailableException("Room " + roomId + " is busy, retry later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for room " + roomId);
+        }
+
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Вариант {@link #callWithLock} без результата.
+     */
+    public void runWithLock(Long roomId, Runnable action) {
+        callWithLock(roomId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private ReentrantLock stripeFor(Long roomId) {
+        int h = Long.hashCode(roomId);
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+}
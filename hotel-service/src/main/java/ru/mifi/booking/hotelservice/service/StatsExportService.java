@@ -0,0 +1,155 @@
+package ru.mifi.booking.hotelservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mifi.booking.common.exception.BadRequestException;
+import ru.mifi.booking.hotelservice.dto.RoomStatsDto;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Потоковая выгрузка статистики номеров по всей сети отелей (NDJSON / CSV).
+ *
+ * <p>
+ * В отличие от /api/rooms/stats я не собираю список: строки идут из курсора БД
+ * (Stream с fetch size) прямо в выходной поток ответа, поэтому память не растёт
+ * с числом отелей и номеров. Каждые {@link #FLUSH_EVERY} строк я сбрасываю буфер,
+ * чтобы клиент получал данные по мере чтения.
+ * </p>
+ */
+@Service
+public class StatsExportService {
+
+    private static final int FLUSH_EVERY = 1000;
+
+    /**
+     * Формат выгрузки.
+     */
+    public enum Format {
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        /**
+         * Разобрать формат из query-параметра (регистр не важен).
+         */
+        public static Format parse(String value) {
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Unsupported export format: " + value + " (expected ndjson or csv)");
+            }
+        }
+    }
+
+    private final RoomRepository roomRepository;
+    private final ObjectMapper objectMapper;
+    private final TimesBookedCounter timesBookedCounter;
+
+    public StatsExportService(RoomRepository roomRepository, ObjectMapper objectMapper, TimesBookedCounter timesBookedCounter) {
+        this.roomRepository = roomRepository;
+        this.objectMapper = objectMapper;
+        this.timesBookedCounter = timesBookedCounter;
+    }
+
+    /**
+     * Проверить параметры до начала выгрузки: после первого байта ответа код ошибки уже не отдать.
+     */
+    public void validate(LocalDate start, LocalDate end) {
+        if (start == null || end == null) {
+            throw new BadRequestException("start and end must be provided");
+        }
+        if (!start.isBefore(end)) {
+            throw new BadRequestException("start must be before end");
+        }
+    }
+
+    /**
+     * Записать статистику всех номеров за период в out.
+     * Транзакция держит курсор открытым на всё время записи.
+     *
+     * @param start  начало периода
+     * @param end    конец периода
+     * @param format формат выгрузки
+     * @param out    поток ответа (не закрывается)
+     */
+    @Transactional(readOnly = true)
+    public void write(LocalDate start, LocalDate end, Format format, OutputStream out) throws IOException {
+        try (Stream<RoomStatsDto> rows = roomRepository.streamAllStats(start, end)) {
+            switch (format) {
+                case NDJSON -> writeNdjson(rows.iterator(), out);
+                case CSV -> writeCsv(rows.iterator(), out);
+            }
+        }
+    }
+
+    private void writeNdjson(Iterator<RoomStatsDto> rows, OutputStream out) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.setRootValueSeparator(null);
+
+            int written = 0;
+            while (rows.hasNext()) {
+                RoomStatsDto row = rows.next();
+                gen.writeStartObject();
+                gen.writeNumberField("hotelId", row.hotelId());
+                gen.writeNumberField("roomId", row.roomId());
+                gen.writeStringField("number", row.number());
+                gen.writeNumberField("timesBooked", timesBookedCounter.live(row.roomId(), row.timesBooked()));
+                gen.writeNumberField("locksCountInRange", row.locksCountInRange());
+                gen.writeNumberField("bookedDaysInRange", row.bookedDaysInRange());
+                gen.writeEndObject();
+                gen.writeRaw('\n');
+
+                if (++written % FLUSH_EVERY == 0) {
+                    gen.flush();
+                }
+            }
+        }
+    }
+
+    private void writeCsv(Iterator<RoomStatsDto> rows, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("hotelId,roomId,number,timesBooked,locksCountInRange,bookedDaysInRange\n");
+
+        int written = 0;
+        while (rows.hasNext()) {
+            RoomStatsDto row = rows.next();
+            writer.write(row.hotelId() + "," + row.roomId() + "," + csvField(row.number()) + ","
+                    + timesBookedCounter.live(row.roomId(), row.timesBooked()) + "," + row.locksCountInRange() + "," + row.bookedDaysInRange() + "\n");
+
+            if (++written % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+    }
+
+    private String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,170 @@
+package ru.mifi.booking.hotelservice.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Метрика справедливости timesBooked с отложенной записью (write-behind).
+ *
+ * <p>
+ * confirm/release больше не делают read-modify-write строки rooms: после коммита
+ * я добавляю ±1 в LongAdder номера, а периодически сбрасываю накопленные дельты
+ * в БД одним batch UPDATE (и при остановке сервиса).
+ * Живое значение = сохранённое в rooms.times_booked + ещё не сброшенная дельта.
+ * </p>
+ *
+ * <p>
+ * Компромиссы:
+ * - при аварийном завершении теряются дельты за последний интервал сброса (это метрика ранжирования, не учёт);
+ * - сразу после коммита сброса дельта вычитается из аккумулятора, и на этот короткий
+ *   момент живое значение может учесть дельту дважды;
+ * - нижняя граница 0 применяется при чтении и при сбросе, как раньше при release.
+ * </p>
+ *
+ * <p>
+ * Аккумулятор номера живёт, только пока у него есть несброшенная дельта: после сброса обнулившиеся
+ * записи удаляются, а удалённый номер убирается сразу после коммита удаления — иначе карта росла бы
+ * по всем номерам, которые когда-либо бронировали, включая давно удалённые.
+ * Изменения и удаление записи идут через compute карты (под блокировкой её корзины), поэтому
+ * инкремент не может попасть в аккумулятор, который в этот момент выбрасывается.
+ * </p>
+ */
+@Component
+public class TimesBookedCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(TimesBookedCounter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    /** Не synchronized: сброс идёт в JDBC, а на Java 21 монитор прикалывает виртуальный поток к carrier. */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public TimesBookedCounter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * +1 после коммита текущей транзакции (откат — без изменения).
+     */
+    public void increment(Long roomId) {
+        AfterCommit.run(() -> add(roomId, 1));
+    }
+
+    /**
+     * -1 после коммита текущей транзакции.
+     */
+    public void decrement(Long roomId) {
+        AfterCommit.run(() -> add(roomId, -1));
+    }
+
+    /**
+     * Забыть несброшенную дельту удалённого номера (после коммита удаления).
+     */
+    public void roomRemoved(Long roomId) {
+        AfterCommit.run(() -> pending.remove(roomId));
+    }
+
+    /**
+     * Живое значение метрики по сохранённому значению из БД.
+     *
+     * @param roomId идентификатор номера
+     * @param stored значение rooms.times_booked
+     * @return stored + несброшенная дельта, не ниже 0
+     */
+    public long live(Long roomId, long stored) {
+        LongAdder adder = pending.get(roomId);
+        return adder == null ? stored : Math.max(0, stored + adder.sum());
+    }
+
+    /**
+     * Сбросить накопленные дельты в БД одним batch UPDATE.
+     *
+     * <p>
+     * Дельту я не обнуляю (sumThenReset теряет конкурентные инкременты), а вычитаю ровно
+     * записанное значение после успешного UPDATE. Если UPDATE упал, дельты остаются до следующего сброса.
+     * </p>
+     */
+    @Scheduled(
+            initialDelayString = "${hotel.times-booked.flush-ms:5000}",
+            fixedDelayString = "${hotel.times-booked.flush-ms:5000}"
+    )
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLocked() {
+        List<Long> roomIds = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+
+        pending.forEach((roomId, adder) -> {
+            long delta = adder.sum();
+            if (delta != 0) {
+                roomIds.add(roomId);
+                deltas.add(delta);
+                batch.add(new Object[]{delta, roomId});
+            }
+        });
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(
+                "update rooms set times_booked = greatest(times_booked + ?, 0) where id = ?",
+                batch
+        );
+
+        for (int i = 0; i < roomIds.size(); i++) {
+            long flushed = deltas.get(i);
+            pending.computeIfPresent(roomIds.get(i), (id, adder) -> {
+                adder.add(-flushed);
+                return adder.sum() == 0 ? null : adder;
+            });
+        }
+        log.debug("Flushed timesBooked deltas for {} rooms", batch.size());
+    }
+
+    /**
+     * При остановке сервиса сбрасываю всё накопленное.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush timesBooked deltas on shutdown: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Число номеров с несброшенной дельтой (для тестов и диагностики).
+     */
+    public int pendingRooms() {
+        return pending.size();
+    }
+
+    private void add(Long roomId, long delta) {
+        pending.compute(roomId, (id, adder) -> {
+            LongAdder target = adder == null ? new LongAdder() : adder;
+            target.add(delta);
+            return target;
+        });
+    }
+}
@@ -0,0 +1,92 @@
+package ru.mifi.booking.hotelservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.dto.RoomDto;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.service.RoomService;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверки кэша доступности:
+ * <ul>
+ *     <li>повторный запрос того же периода не ходит в БД</li>
+ *     <li>confirm на пересекающийся период сбрасывает запись, на непересекающийся — нет</li>
+ *     <li>hit ratio публикуется в MeterRegistry (actuator/metrics)</li>
+ * </ul>
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "hotel.availability.cache.enabled=true"
+})
+class AvailabilityCacheIT {
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RoomLockRepository roomLockRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        roomLockRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void repeatedQueryIsServedFromCache() {
+        LocalDate start = LocalDate.now().plusDays(200);
+        LocalDate end = start.plusDays(2);
+
+        List<RoomDto> first = roomService.listAvailable(start, end);
+
+        statistics.clear();
+        List<RoomDto> second = roomService.listAvailable(start, end);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(meterRegistry.get("hotel.availability.cache.hit.ratio").gauge().value()).isGreaterThan(0.0);
+    }
+
+    @Test
+    void confirmInvalidatesOnlyOverlappingPeriods() {
+        LocalDate start = LocalDate.now().plusDays(300);
+        LocalDate end = start.plusDays(3);
+        LocalDate farStart = start.plusDays(30);
+        LocalDate farEnd = farStart.plusDays(3);
+
+        Long roomId = roomService.listAvailable(start, end).getFirst().id();
+        roomService.listAvailable(farStart, farEnd);
+
+        roomService.confirmAvailability(roomId, new ConfirmAvailabilityRequest(
+                start.plusDays(1), end, "cache-booking-" + UUID.randomUUID(), "cache-req-" + UUID.randomUUID()));
+
+        assertThat(roomService.listAvailable(start, end)).extracting(RoomDto::id).doesNotContain(roomId);
+
+        statistics.clear();
+        assertThat(roomService.listAvailable(farStart, farEnd)).extracting(RoomDto::id).contains(roomId);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+}
@@ -0,0 +1,24 @@
+package ru.mifi.booking.hotelservice;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Шторм confirm только на row-lock номера: in-JVM блокировки выключены, 63 запроса ждут друг друга в БД.
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "hotel.confirm.local-locks.enabled=false"
+})
+@AutoConfigureMockMvc
+class ConfirmStormDbLocksIT extends ConfirmStormSupport {
+
+    @BeforeEach
+    void checkMode() {
+        assertThat(roomStripedLocks.isEnabled()).isFalse();
+    }
+}
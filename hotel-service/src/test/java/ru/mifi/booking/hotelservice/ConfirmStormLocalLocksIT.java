@@ -0,0 +1,31 @@
+package ru.mifi.booking.hotelservice;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Шторм confirm со striped-блокировками: конкуренты паркуются на ReentrantLock до открытия транзакции.
+ *
+ * <p>
+ * Lock timeout БД здесь 100 мс — меньше, чем 63 транзакции отстояли бы друг за другом на row-lock.
+ * Если бы хоть часть запросов ждала в БД, они упали бы по тайм-ауту с 5xx вместо 409,
+ * так что зелёный шторм значит: на row-lock номера никто не ждал.
+ * </p>
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "hotel.confirm.local-locks.enabled=true",
+        "spring.datasource.hikari.connection-init-sql=SET LOCK_TIMEOUT 100"
+})
+@AutoConfigureMockMvc
+class ConfirmStormLocalLocksIT extends ConfirmStormSupport {
+
+    @BeforeEach
+    void checkMode() {
+        assertThat(roomStripedLocks.isEnabled()).isTrue();
+    }
+}
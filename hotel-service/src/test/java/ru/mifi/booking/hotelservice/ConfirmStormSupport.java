@@ -0,0 +1,133 @@
+package ru.mifi.booking.hotelservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.RoomStripedLocks;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Шторм из 64 одновременных confirm-availability на один номер.
+ *
+ * <p>
+ * Общий сценарий для двух контекстов — с in-JVM striped-блокировками ({@link ConfirmStormLocalLocksIT})
+ * и только с row-lock в БД ({@link ConfirmStormDbLocksIT}): режим задаётся свойством
+ * {@code hotel.confirm.local-locks.enabled} при старте, бин не переключается на ходу.
+ * В обоих режимах ни одно подтверждение не теряется и не дублируется: ровно один 200, остальные 409,
+ * в room_locks одна строка. Время и p99 пишутся в лог для сравнения режимов.
+ * </p>
+ */
+abstract class ConfirmStormSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfirmStormSupport.class);
+
+    private static final int THREADS = 64;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private RoomLockRepository roomLockRepository;
+
+    @Autowired
+    protected RoomStripedLocks roomStripedLocks;
+
+    private Long roomId;
+
+    @BeforeEach
+    void setUp() {
+        Room room = roomRepository.findAllAvailable().stream()
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Для тестов нужен хотя бы один доступный номер"));
+        this.roomId = room.getId();
+        roomLockRepository.deleteAll();
+    }
+
+    @Test
+    void confirmStorm_shouldLockOnce_andRejectTheRestWith409() throws Exception {
+        LocalDate start = LocalDate.now().plusDays(40);
+        StormResult result = confirmStorm(start, start.plusDays(2));
+
+        log.info("confirm storm x{} (local locks {}): total={}ms p99={}ms",
+                THREADS, roomStripedLocks.isEnabled(), result.totalMs(), result.p99Ms());
+
+        assertThat(result.statuses()).filteredOn(s -> s == 200).hasSize(1);
+        assertThat(result.statuses()).filteredOn(s -> s == 409).hasSize(THREADS - 1);
+        assertThat(roomLockRepository.count()).isEqualTo(1);
+    }
+
+    private StormResult confirmStorm(LocalDate start, LocalDate end) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch ready = new CountDownLatch(THREADS);
+        CountDownLatch startLatch = new CountDownLatch(1);
+
+        List<CompletableFuture<long[]>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            ConfirmAvailabilityRequest body = new ConfirmAvailabilityRequest(
+                    start, end, "booking-storm-" + i + "-" + UUID.randomUUID(), "req-storm-" + i + "-" + UUID.randomUUID());
+
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    ready.countDown();
+                    startLatch.await();
+
+                    long t0 = System.nanoTime();
+                    int status = mockMvc.perform(
+                                    post("/api/rooms/{id}/confirm-availability", roomId)
+                                            .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                            .contentType("application/json")
+                                            .content(objectMapper.writeValueAsString(body))
+                            )
+                            .andReturn()
+                            .getResponse()
+                            .getStatus();
+                    return new long[]{status, System.nanoTime() - t0};
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, pool));
+        }
+
+        ready.await();
+        long t0 = System.nanoTime();
+        startLatch.countDown();
+
+        List<long[]> results = futures.stream().map(CompletableFuture::join).toList();
+        long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        pool.shutdownNow();
+
+        long[] latencies = results.stream().mapToLong(r -> r[1]).sorted().toArray();
+        long p99Ms = TimeUnit.NANOSECONDS.toMillis(latencies[(int) Math.ceil(latencies.length * 0.99) - 1]);
+
+        return new StormResult(results.stream().map(r -> (int) r[0]).toList(), totalMs, p99Ms);
+    }
+
+    private record StormResult(List<Integer> statuses, long totalMs, long p99Ms) {}
+}
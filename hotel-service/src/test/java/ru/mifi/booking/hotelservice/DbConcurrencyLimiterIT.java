@@ -0,0 +1,112 @@
+package ru.mifi.booking.hotelservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.mifi.booking.common.exception.ServiceUnavailableException;
+import ru.mifi.booking.hotelservice.service.DbConcurrencyLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверки семафора транзакций записи при виртуальных потоках:
+ * <ul>
+ *     <li>сотня виртуальных потоков разом — внутри одновременно не больше max-concurrent, все дожидаются своей очереди</li>
+ *     <li>когда все разрешения заняты дольше wait-ms — 503, и разрешения не утекают ни после успеха, ни после ошибки</li>
+ * </ul>
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "spring.threads.virtual.enabled=true",
+        "hotel.db.limiter.max-concurrent=4",
+        "hotel.db.limiter.wait-ms=2000"
+})
+class DbConcurrencyLimiterIT {
+
+    private static final int PERMITS = 4;
+
+    @Autowired
+    private DbConcurrencyLimiter limiter;
+
+    @Test
+    void virtualThreadStorm_shouldNeverExceedPermits() throws Exception {
+        assertThat(limiter.isEnabled()).isTrue();
+
+        int tasks = 100;
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < tasks; i++) {
+                int n = i;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return limiter.call(() -> {
+                        peak.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            inside.decrementAndGet();
+                        }
+                        return n;
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> f : results) {
+                f.get(30, TimeUnit.SECONDS);
+            }
+        }
+
+        assertThat(peak.get()).isGreaterThan(1).isLessThanOrEqualTo(PERMITS);
+        assertThat(limiter.availablePermits()).isEqualTo(PERMITS);
+    }
+
+    @Test
+    void allPermitsHeld_shouldFailFastWith503_andReleasePermits() throws Exception {
+        CountDownLatch holding = new CountDownLatch(PERMITS);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < PERMITS; i++) {
+                pool.submit(() -> limiter.run(() -> {
+                    holding.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            assertThat(holding.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(limiter.availablePermits()).isZero();
+
+            long t0 = System.nanoTime();
+            assertThatThrownBy(() -> limiter.run(() -> {
+            })).isInstanceOf(ServiceUnavailableException.class);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0)).isGreaterThanOrEqualTo(1900);
+
+            release.countDown();
+        }
+
+        assertThatThrownBy(() -> limiter.run(() -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(limiter.availablePermits()).isEqualTo(PERMITS);
+    }
+}
@@ -0,0 +1,174 @@
+package ru.mifi.booking.hotelservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.dto.HotelDeletionJobDto;
+import ru.mifi.booking.hotelservice.entity.Hotel;
+import ru.mifi.booking.hotelservice.repository.HotelRepository;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.HotelService;
+import ru.mifi.booking.hotelservice.service.RoomService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверки удаления отеля порциями (chunk-size=2):
+ * <ul>
+ *     <li>прогресс приходит по порциям, номера и блокировки удаляются полностью</li>
+ *     <li>DELETE ?async=true отдаёт 202 с задачей, по GET /delete-jobs/{id} видно DONE и счётчики</li>
+ *     <li>порция ждёт row-lock номера, как confirm: пока его держит чужая транзакция, задача падает
+ *     в FAILED по lock timeout с уже удалёнными порциями, а повторный запуск дочищает остальное</li>
+ * </ul>
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "hotel.delete.chunk-size=2",
+        "spring.datasource.hikari.connection-init-sql=SET LOCK_TIMEOUT 500"
+})
+@AutoConfigureMockMvc
+class HotelDeletionIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private HotelService hotelService;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private HotelRepository hotelRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private RoomLockRepository roomLockRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void delete_shouldReportProgressPerChunk() {
+        Hotel hotel = newHotel("Chunked delete", 5);
+
+        List<int[]> chunks = new ArrayList<>();
+        hotelService.delete(hotel.getId(), (rooms, locks) -> chunks.add(new int[]{rooms, locks}));
+
+        assertThat(chunks).extracting(c -> c[0]).containsExactly(2, 2, 1);
+        assertThat(chunks).extracting(c -> c[1]).containsExactly(2, 2, 1);
+        assertThat(hotelRepository.findById(hotel.getId())).isEmpty();
+        assertThat(roomRepository.countByHotelId(hotel.getId())).isZero();
+    }
+
+    @Test
+    void asyncDelete_shouldFinishJobWithProgress() throws Exception {
+        Hotel hotel = newHotel("Async delete", 3);
+
+        HotelDeletionJobDto job = awaitFinished(startAsync(hotel.getId()).jobId());
+
+        assertThat(job.status()).isEqualTo(HotelDeletionJobDto.Status.DONE);
+        assertThat(job.hotelId()).isEqualTo(hotel.getId());
+        assertThat(job.totalRooms()).isEqualTo(3);
+        assertThat(job.deletedRooms()).isEqualTo(3);
+        assertThat(job.deletedLocks()).isEqualTo(3);
+        assertThat(job.error()).isNull();
+        assertThat(hotelRepository.findById(hotel.getId())).isEmpty();
+    }
+
+    @Test
+    void asyncDelete_blockedByRoomLock_shouldFail_thenRerunShouldFinish() throws Exception {
+        Hotel hotel = newHotel("Failed delete", 5);
+        List<Long> roomIds = roomRepository.findIdsByHotelId(hotel.getId(), 0L, Limit.of(5));
+
+        // Держу row-lock номера из второй порции, как его держал бы долгий confirm.
+        HotelDeletionJobDto failed = new TransactionTemplate(transactionManager).execute(status -> {
+            roomRepository.lockHotelIdIfAvailable(roomIds.get(2));
+            try {
+                return awaitFinished(startAsync(hotel.getId()).jobId());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThat(failed.status()).isEqualTo(HotelDeletionJobDto.Status.FAILED);
+        assertThat(failed.error()).isNotBlank();
+        assertThat(failed.totalRooms()).isEqualTo(5);
+        assertThat(failed.deletedRooms()).isEqualTo(2);
+        assertThat(hotelRepository.findById(hotel.getId())).isPresent();
+        assertThat(roomRepository.countByHotelId(hotel.getId())).isEqualTo(3);
+
+        HotelDeletionJobDto rerun = awaitFinished(startAsync(hotel.getId()).jobId());
+
+        assertThat(rerun.status()).isEqualTo(HotelDeletionJobDto.Status.DONE);
+        assertThat(rerun.totalRooms()).isEqualTo(3);
+        assertThat(rerun.deletedRooms()).isEqualTo(3);
+        assertThat(rerun.deletedLocks()).isEqualTo(3);
+        assertThat(hotelRepository.findById(hotel.getId())).isEmpty();
+        assertThat(roomLockRepository.findAll()).noneMatch(l -> roomIds.contains(l.getRoom().getId()));
+    }
+
+    private Hotel newHotel(String name, int rooms) {
+        Hotel hotel = hotelRepository.save(new Hotel(null, name + " " + UUID.randomUUID(), "Somewhere"));
+        LocalDate start = LocalDate.now().plusDays(200);
+        IntStream.range(0, rooms).forEach(i -> {
+            Long roomId = roomService.addRoom(hotel, "DEL-" + i, true).id();
+            roomService.confirmAvailability(roomId, new ConfirmAvailabilityRequest(
+                    start, start.plusDays(3), "del-booking-" + UUID.randomUUID(), "del-req-" + UUID.randomUUID()));
+        });
+        return hotel;
+    }
+
+    private HotelDeletionJobDto startAsync(Long hotelId) throws Exception {
+        MvcResult result = mockMvc.perform(delete("/api/hotels/{id}", hotelId)
+                        .with(SecurityMockMvcRequestPostProcessors.user("1").roles("ADMIN"))
+                        .param("async", "true"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andReturn();
+        return objectMapper.readValue(result.getResponse().getContentAsString(), HotelDeletionJobDto.class);
+    }
+
+    private HotelDeletionJobDto awaitFinished(String jobId) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (true) {
+            String body = mockMvc.perform(get("/api/hotels/delete-jobs/{jobId}", jobId)
+                            .with(SecurityMockMvcRequestPostProcessors.user("1").roles("ADMIN")))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            HotelDeletionJobDto job = objectMapper.readValue(body, HotelDeletionJobDto.class);
+            if (job.status() != HotelDeletionJobDto.Status.RUNNING || System.nanoTime() > deadline) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+    }
+}
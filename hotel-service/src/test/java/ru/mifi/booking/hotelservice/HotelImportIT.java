@@ -0,0 +1,134 @@
+package ru.mifi.booking.hotelservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.mifi.booking.hotelservice.dto.HotelImportReportDto;
+import ru.mifi.booking.hotelservice.entity.Hotel;
+import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.repository.HotelRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.HotelImportService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Массовый импорт: отели создаются один раз на имя+адрес, номера пишутся порциями,
+ * ошибочные строки попадают в отчёт и не мешают остальным; оборванное тело не дописывает
+ * незавершённую порцию, а отчёт совпадает с тем, что реально сохранено.
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "hotel.import.chunk-size=3"
+})
+class HotelImportIT {
+
+    @Autowired
+    private HotelImportService importService;
+
+    @Autowired
+    private HotelRepository hotelRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Test
+    void ndjson_shouldCreateHotelsAndRoomsAndReportBadRows() {
+        String chain = "Chain " + UUID.randomUUID();
+        Hotel existing = hotelRepository.findAll().getFirst();
+        long existingRooms = roomRepository.countByHotelId(existing.getId());
+
+        String body = String.join("\n",
+                "{\"hotelName\":\"" + chain + "\",\"hotelAddress\":\"Tver\",\"number\":\"1\"}",
+                "{\"hotelName\":\"" + chain + "\",\"hotelAddress\":\"Tver\",\"number\":\"2\",\"available\":false}",
+                "{\"hotelName\":\"" + chain + "\",\"hotelAddress\":\"Tver\",\"number\":\"3\"}",
+                "not json",
+                "",
+                "{\"hotelName\":\"" + chain + "\",\"hotelAddress\":\"Tver\",\"number\":\"4\"}",
+                "{\"hotelId\":" + existing.getId() + ",\"number\":\"IMP-1\"}",
+                "{\"hotelId\":-1,\"number\":\"X\"}",
+                "{\"number\":\"orphan\"}");
+
+        HotelImportReportDto report = importService.importRows(stream(body), HotelImportService.Format.NDJSON);
+
+        assertThat(report.rows()).isEqualTo(8);
+        assertThat(report.hotelsCreated()).isEqualTo(1);
+        assertThat(report.roomsCreated()).isEqualTo(5);
+        assertThat(report.failedRows()).isEqualTo(3);
+        assertThat(report.complete()).isTrue();
+        assertThat(report.errors()).extracting(HotelImportReportDto.RowError::line).containsExactly(4L, 8L, 9L);
+
+        List<Hotel> created = hotelRepository.findByNameAndAddress(chain, "Tver");
+        assertThat(created).hasSize(1);
+        assertThat(roomRepository.findAllByHotelId(created.getFirst().getId()))
+                .extracting(Room::getNumber)
+                .containsExactlyInAnyOrder("1", "2", "3", "4");
+        assertThat(roomRepository.countByHotelId(existing.getId())).isEqualTo(existingRooms + 1);
+    }
+
+    @Test
+    void csv_shouldParseQuotedFieldsAndReuseExistingHotel() {
+        String chain = "Chain, \"quoted\" " + UUID.randomUUID();
+        String quoted = '"' + chain.replace("\"", "\"\"") + '"';
+
+        String body = String.join("\n",
+                "number,hotelName,hotelAddress,available",
+                "101," + quoted + ",Omsk,true",
+                "102," + quoted + ",Omsk,maybe",
+                "103," + quoted + ",Omsk,");
+        HotelImportReportDto first = importService.importRows(stream(body), HotelImportService.Format.CSV);
+
+        assertThat(first.hotelsCreated()).isEqualTo(1);
+        assertThat(first.roomsCreated()).isEqualTo(2);
+        assertThat(first.errors()).extracting(HotelImportReportDto.RowError::line).containsExactly(3L);
+
+        HotelImportReportDto second = importService.importRows(stream(body), HotelImportService.Format.CSV);
+        assertThat(second.hotelsCreated()).isZero();
+        assertThat(hotelRepository.findByNameAndAddress(chain, "Omsk")).hasSize(1);
+    }
+
+    @Test
+    void cutOffBody_shouldKeepCommittedChunks_andNotSavePartialOne() {
+        String chain = "Chain " + UUID.randomUUID();
+        StringBuilder body = new StringBuilder();
+        for (int i = 1; i <= 5; i++) {
+            body.append("{\"hotelName\":\"").append(chain).append("\",\"hotelAddress\":\"Kostroma\",\"number\":\"")
+                    .append(i).append("\"}\n");
+        }
+        InputStream cutOff = new SequenceInputStream(stream(body.toString()), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        });
+
+        HotelImportReportDto report = importService.importRows(cutOff, HotelImportService.Format.NDJSON);
+
+        // Первая порция из 3 строк закоммичена, строки 4–5 так и не дождались конца тела.
+        assertThat(report.complete()).isFalse();
+        assertThat(report.rows()).isEqualTo(5);
+        assertThat(report.hotelsCreated()).isEqualTo(1);
+        assertThat(report.roomsCreated()).isEqualTo(3);
+        assertThat(report.failedRows()).isEqualTo(2);
+        assertThat(report.errors()).extracting(HotelImportReportDto.RowError::line).containsExactly(4L, 5L);
+
+        List<Hotel> created = hotelRepository.findByNameAndAddress(chain, "Kostroma");
+        assertThat(created).hasSize(1);
+        assertThat(roomRepository.findAllByHotelId(created.getFirst().getId()))
+                .extracting(Room::getNumber)
+                .containsExactlyInAnyOrder("1", "2", "3");
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,252 @@
+package ru.mifi.booking.hotelservice;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.dto.DailyOccupancyDto;
+import ru.mifi.booking.hotelservice.dto.HotelOccupancyDto;
+import ru.mifi.booking.hotelservice.entity.Hotel;
+import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.entity.RoomLock;
+import ru.mifi.booking.hotelservice.repository.HotelOccupancyRepository;
+import ru.mifi.booking.hotelservice.repository.HotelRepository;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.HotelService;
+import ru.mifi.booking.hotelservice.service.OccupancyService;
+import ru.mifi.booking.hotelservice.service.RoomService;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверки материализованной дневной загрузки:
+ * <ul>
+ *     <li>confirm/release инкрементально поддерживают таблицу, она совпадает с подсчётом по room_locks</li>
+ *     <li>параллельные confirm разных номеров на ещё не существующие дни не теряют ни одной дельты</li>
+ *     <li>rebuild восстанавливает таблицу после потери данных</li>
+ *     <li>bulk-удаление номера и отеля вычитает/удаляет загрузку вместе с блокировками</li>
+ *     <li>сборщик просроченных удержаний снимает порцию одним DELETE и вычитает загрузку по периодам</li>
+ * </ul>
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false"
+})
+class HotelOccupancyIT {
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private HotelService hotelService;
+
+    @Autowired
+    private OccupancyService occupancyService;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private RoomLockRepository roomLockRepository;
+
+    @Autowired
+    private HotelRepository hotelRepository;
+
+    @Autowired
+    private HotelOccupancyRepository occupancyRepository;
+
+    @BeforeEach
+    void setUp() {
+        roomLockRepository.deleteAll();
+        occupancyService.rebuild(null);
+    }
+
+    @Test
+    void confirmAndRelease_shouldKeepOccupancyInSyncWithLocks() {
+        Hotel hotel = hotelRepository.findAll().getFirst();
+        List<Room> rooms = roomRepository.findAllByHotelId(hotel.getId());
+        assertThat(rooms).hasSizeGreaterThan(1);
+
+        LocalDate start = LocalDate.now().plusDays(150);
+        LocalDate end = start.plusDays(14);
+
+        String releasedBooking = "occ-booking-" + UUID.randomUUID();
+        confirm(rooms.get(0), start.minusDays(2), start.plusDays(3), releasedBooking);
+        confirm(rooms.get(0), start.plusDays(5), start.plusDays(9), "occ-booking-" + UUID.randomUUID());
+        confirm(rooms.get(1), start.plusDays(2), start.plusDays(7), "occ-booking-" + UUID.randomUUID());
+        confirm(rooms.get(1), start.plusDays(12), end.plusDays(4), "occ-booking-" + UUID.randomUUID());
+
+        HotelOccupancyDto occupancy = occupancyService.occupancy(hotel.getId(), start, end);
+        assertThat(occupancy.roomsCount()).isEqualTo(rooms.size());
+        assertThat(occupancy.days()).hasSize(14).containsExactlyElementsOf(expected(hotel, start, end));
+        assertThat(occupancy.days().get(2).occupiedRooms()).isEqualTo(2);
+
+        roomService.releaseBooking(releasedBooking);
+        assertThat(occupancyService.occupancy(hotel.getId(), start, end).days())
+                .containsExactlyElementsOf(expected(hotel, start, end));
+    }
+
+    @Test
+    void concurrentConfirms_onNewDays_shouldAllCountWithoutLockingHotel() throws Exception {
+        Hotel hotel = hotelRepository.save(new Hotel(null, "Concurrent occupancy " + UUID.randomUUID(), "Somewhere"));
+        List<Long> roomIds = IntStream.range(0, 8)
+                .mapToObj(i -> roomService.addRoom(hotel, "CO-" + i, true).id())
+                .toList();
+
+        // Дней ещё нет ни одного: все confirm разом гонятся за вставкой одних и тех же строк MERGE.
+        LocalDate start = LocalDate.now().plusDays(340);
+        LocalDate end = start.plusDays(6);
+        ExecutorService pool = Executors.newFixedThreadPool(roomIds.size());
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Long roomId : roomIds) {
+            futures.add(pool.submit(() -> {
+                startLatch.await();
+                confirm(roomRepository.findById(roomId).orElseThrow(), start, end, "occ-booking-" + UUID.randomUUID());
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> f : futures) {
+            f.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdownNow();
+
+        assertThat(occupancyService.occupancy(hotel.getId(), start, end).days())
+                .allMatch(d -> d.occupiedRooms() == roomIds.size())
+                .containsExactlyElementsOf(expected(hotel, start, end));
+        assertThat(occupancyRepository.findAll())
+                .filteredOn(o -> hotel.getId().equals(o.getHotelId()))
+                .hasSize(6);
+    }
+
+    @Test
+    void rebuild_shouldRestoreOccupancyFromLocks() {
+        Hotel hotel = hotelRepository.findAll().getFirst();
+        Room room = roomRepository.findAllByHotelId(hotel.getId()).getFirst();
+
+        LocalDate start = LocalDate.now().plusDays(250);
+        LocalDate end = start.plusDays(10);
+        confirm(room, start.plusDays(1), start.plusDays(4), "occ-booking-" + UUID.randomUUID());
+
+        List<DailyOccupancyDto> before = occupancyService.occupancy(hotel.getId(), start, end).days();
+
+        occupancyRepository.deleteAll();
+        assertThat(occupancyService.occupancy(hotel.getId(), start, end).days())
+                .allMatch(d -> d.occupiedRooms() == 0);
+
+        occupancyService.rebuild(hotel.getId());
+        assertThat(occupancyService.occupancy(hotel.getId(), start, end).days())
+                .containsExactlyElementsOf(before)
+                .containsExactlyElementsOf(expected(hotel, start, end));
+    }
+
+    @Test
+    void bulkDelete_shouldRemoveLocksAndOccupancyOfRoomAndHotel() {
+        Hotel hotel = hotelRepository.save(new Hotel(null, "Bulk delete " + UUID.randomUUID(), "Somewhere"));
+        List<Long> roomIds = IntStream.range(0, 5)
+                .mapToObj(i -> roomService.addRoom(hotel, "BD-" + i, true).id())
+                .toList();
+
+        LocalDate start = LocalDate.now().plusDays(320);
+        LocalDate end = start.plusDays(5);
+        for (Long roomId : roomIds) {
+            confirm(roomRepository.findById(roomId).orElseThrow(), start, end, "occ-booking-" + UUID.randomUUID());
+        }
+        assertThat(occupancyService.occupancy(hotel.getId(), start, end).days())
+                .allMatch(d -> d.occupiedRooms() == roomIds.size());
+
+        roomService.delete(roomIds.getFirst());
+        assertThat(occupancyService.occupancy(hotel.getId(), start, end).days())
+                .allMatch(d -> d.occupiedRooms() == roomIds.size() - 1)
+                .containsExactlyElementsOf(expected(hotel, start, end));
+
+        AtomicInteger rooms = new AtomicInteger();
+        AtomicInteger locks = new AtomicInteger();
+        hotelService.delete(hotel.getId(), (r, l) -> {
+            rooms.addAndGet(r);
+            locks.addAndGet(l);
+        });
+
+        assertThat(rooms.get()).isEqualTo(roomIds.size() - 1);
+        assertThat(locks.get()).isEqualTo(roomIds.size() - 1);
+        assertThat(hotelRepository.findById(hotel.getId())).isEmpty();
+        assertThat(roomRepository.countByHotelId(hotel.getId())).isZero();
+        assertThat(roomLockRepository.findAll())
+                .noneMatch(l -> roomIds.contains(l.getRoom().getId()));
+        assertThat(occupancyRepository.findAll())
+                .noneMatch(o -> hotel.getId().equals(o.getHotelId()));
+    }
+
+    @Test
+    void expireHolds_shouldRemoveBatchAndSubtractOccupancyPerSpan() {
+        Hotel hotel = hotelRepository.save(new Hotel(null, "Expired holds " + UUID.randomUUID(), "Somewhere"));
+        List<Long> roomIds = IntStream.range(0, 4)
+                .mapToObj(i -> roomService.addRoom(hotel, "EH-" + i, true).id())
+                .toList();
+
+        // Три удержания с одним периодом и одно со сдвинутым: загрузка вычитается двумя UPDATE.
+        LocalDate start = LocalDate.now().plusDays(360);
+        LocalDate end = start.plusDays(4);
+        for (int i = 0; i < roomIds.size(); i++) {
+            LocalDate from = i < 3 ? start : start.plusDays(2);
+            confirm(roomRepository.findById(roomIds.get(i)).orElseThrow(), from, from.plusDays(2), "occ-booking-" + UUID.randomUUID());
+        }
+        assertThat(occupancyService.occupancy(hotel.getId(), start, end).days())
+                .extracting(DailyOccupancyDto::occupiedRooms)
+                .containsExactly(3L, 3L, 1L, 1L);
+
+        List<RoomLock> held = roomLockRepository.findAll().stream()
+                .filter(l -> roomIds.contains(l.getRoom().getId()))
+                .toList();
+        held.forEach(l -> l.setExpiresAt(Instant.now().minusSeconds(1)));
+        roomLockRepository.saveAllAndFlush(held);
+
+        List<Long> expired = roomService.expireHolds(Instant.now(), 0L, 100);
+
+        assertThat(expired).containsExactlyInAnyOrderElementsOf(held.stream().map(RoomLock::getId).toList());
+        assertThat(roomLockRepository.findAllById(expired)).isEmpty();
+        assertThat(occupancyService.occupancy(hotel.getId(), start, end).days())
+                .allMatch(d -> d.occupiedRooms() == 0)
+                .containsExactlyElementsOf(expected(hotel, start, end));
+        assertThat(roomService.listAvailablePage(start, end, null, 50, hotel.getId(), null))
+                .extracting(r -> r.id())
+                .containsExactlyElementsOf(roomIds);
+    }
+
+    private void confirm(Room room, LocalDate start, LocalDate end, String bookingId) {
+        roomService.confirmAvailability(room.getId(),
+                new ConfirmAvailabilityRequest(start, end, bookingId, "occ-req-" + UUID.randomUUID()));
+    }
+
+    /**
+     * Эталон: для каждой ночи окна считаю блокировки номеров отеля, которые её покрывают.
+     */
+    private List<DailyOccupancyDto> expected(Hotel hotel, LocalDate start, LocalDate end) {
+        List<Long> roomIds = roomRepository.findAllByHotelId(hotel.getId()).stream().map(Room::getId).toList();
+        List<RoomLock> locks = roomLockRepository.findAll().stream()
+                .filter(l -> roomIds.contains(l.getRoom().getId()))
+                .toList();
+
+        return start.datesUntil(end)
+                .map(day -> new DailyOccupancyDto(day, locks.stream()
+                        .filter(l -> !l.getStartDate().isAfter(day) && l.getEndDate().isAfter(day))
+                        .count()))
+                .toList();
+    }
+}
@@ -0,0 +1,174 @@
+package ru.mifi.booking.hotelservice;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.entity.Hotel;
+import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.entity.RoomLock;
+import ru.mifi.booking.hotelservice.repository.HotelRepository;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.HotelService;
+import ru.mifi.booking.hotelservice.service.RoomService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Замер вставок с id из последовательностей и JDBC batching.
+ *
+ * <p>
+ * Базовая линия — flush после каждой сущности: ровно так вели себя IDENTITY-id (INSERT сразу на save).
+ * Сравниваю число JDBC statements по статистике Hibernate (детерминированно) и пишу в лог
+ * время и строки в секунду для обоих режимов — сами времена не проверяются, они зависят от машины.
+ * </p>
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class InsertBatchingIT {
+
+    private static final Logger log = LoggerFactory.getLogger(InsertBatchingIT.class);
+
+    private static final int ROWS = 1000;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private HotelRepository hotelRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private RoomLockRepository roomLockRepository;
+
+    @Autowired
+    private HotelService hotelService;
+
+    @Autowired
+    private RoomService roomService;
+
+    private Statistics statistics;
+    private TransactionTemplate tx;
+    private Hotel hotel;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        tx = new TransactionTemplate(transactionManager);
+        hotel = hotelRepository.save(new Hotel(null, "Batching " + UUID.randomUUID(), "Bench"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        hotelService.delete(hotel.getId());
+    }
+
+    @Test
+    void roomSeeding_shouldBeBatched() {
+        long perRow = measure("rooms, flush per row", () -> {
+            EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+            for (int i = 0; i < ROWS; i++) {
+                em.persist(new Room(null, hotel, "S-" + i, true, 0));
+                em.flush();
+            }
+        });
+        long batched = measure("rooms, saveAll", () -> {
+            List<Room> rooms = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                rooms.add(new Room(null, hotel, "B-" + i, true, 0));
+            }
+            roomRepository.saveAll(rooms);
+        });
+
+        assertThat(perRow).isGreaterThanOrEqualTo(ROWS);
+        assertThat(batched).isLessThan(ROWS / 10);
+        assertThat(roomRepository.countByHotelId(hotel.getId())).isEqualTo(2L * ROWS);
+    }
+
+    @Test
+    void lockInserts_shouldBeBatched_andNotCollideWithNativeConfirm() {
+        Room room = roomRepository.save(new Room(null, hotel, "L-1", true, 0));
+        LocalDate base = LocalDate.now().plusYears(5);
+
+        long perRow = measure("locks, flush per row", () -> {
+            EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+            for (int i = 0; i < ROWS; i++) {
+                em.persist(lock(room, base.plusDays(2L * i)));
+                em.flush();
+            }
+        });
+
+        // Нативный confirm между пачками Hibernate: id из той же последовательности не должны пересечься.
+        roomService.confirmAvailability(room.getId(), new ConfirmAvailabilityRequest(
+                base.minusDays(10), base.minusDays(9), "batch-" + UUID.randomUUID(), "batch-req-" + UUID.randomUUID()));
+
+        long batched = measure("locks, saveAll", () -> {
+            List<RoomLock> locks = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                locks.add(lock(room, base.plusDays(2L * i + 1)));
+            }
+            roomLockRepository.saveAll(locks);
+        });
+
+        roomService.confirmAvailability(room.getId(), new ConfirmAvailabilityRequest(
+                base.minusDays(8), base.minusDays(7), "batch-" + UUID.randomUUID(), "batch-req-" + UUID.randomUUID()));
+
+        assertThat(perRow).isGreaterThanOrEqualTo(ROWS);
+        assertThat(batched).isLessThan(ROWS / 10);
+
+        List<RoomLock> all = roomLockRepository.findAll().stream()
+                .filter(l -> l.getRoom().getId().equals(room.getId()))
+                .toList();
+        Set<Long> ids = new HashSet<>();
+        all.forEach(l -> ids.add(l.getId()));
+        assertThat(all).hasSize(2 * ROWS + 2);
+        assertThat(ids).hasSize(all.size());
+    }
+
+    /**
+     * Выполнить вставки в одной транзакции и вернуть число выполненных JDBC statements.
+     */
+    private long measure(String label, Runnable body) {
+        statistics.clear();
+        long startedAt = System.nanoTime();
+        tx.executeWithoutResult(status -> body.run());
+        long elapsedMs = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+
+        long statements = statistics.getPrepareStatementCount();
+        log.info("{}: {} rows in {} ms ({} rows/s), {} JDBC statements",
+                label, ROWS, elapsedMs, ROWS * 1000L / elapsedMs, statements);
+        return statements;
+    }
+
+    private static RoomLock lock(Room room, LocalDate start) {
+        return new RoomLock(null, room, start, start.plusDays(1),
+                "batch-" + UUID.randomUUID(), "batch-req-" + UUID.randomUUID());
+    }
+}
@@ -0,0 +1,150 @@
+package ru.mifi.booking.hotelservice;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.entity.RoomLock;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.RoomAvailabilityIndex;
+import ru.mifi.booking.hotelservice.service.RoomService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Property-проверки in-memory индекса доступности:
+ * на случайных (но воспроизводимых по seed) данных ответ индекса совпадает с JPA-запросом findOverlaps.
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "hotel.availability.in-memory.enabled=true"
+})
+class RoomAvailabilityIndexIT {
+
+    private static final LocalDate BASE = LocalDate.of(2031, 1, 1);
+    private static final int HORIZON_DAYS = 120;
+
+    @Autowired
+    private RoomAvailabilityIndex index;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private RoomLockRepository roomLockRepository;
+
+    private List<Room> rooms;
+
+    @BeforeEach
+    void setUp() {
+        roomLockRepository.deleteAll();
+        rooms = roomRepository.findAll();
+    }
+
+    @Test
+    void indexMatchesJpaQueryOnRandomData() {
+        for (long seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            roomLockRepository.deleteAll();
+            seedRandomLocks(random);
+
+            index.reload();
+            assertThat(index.isActive()).isTrue();
+
+            assertMatchesDatabase(random, 300);
+        }
+    }
+
+    @Test
+    void incrementalUpdatesMatchJpaQuery() {
+        Random random = new Random(42);
+        index.reload();
+
+        List<String> bookingIds = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Room room = rooms.get(random.nextInt(rooms.size()));
+            LocalDate start = BASE.plusDays(random.nextInt(HORIZON_DAYS));
+            LocalDate end = start.plusDays(1 + random.nextInt(7));
+            String bookingId = "prop-booking-" + UUID.randomUUID();
+
+            try {
+                roomService.confirmAvailability(room.getId(),
+                        new ConfirmAvailabilityRequest(start, end, bookingId, "prop-req-" + UUID.randomUUID()));
+                bookingIds.add(room.getId() + ":" + bookingId);
+            } catch (RuntimeException conflict) {
+                // пересечение — ожидаемый исход для части случайных запросов
+            }
+
+            if (!bookingIds.isEmpty() && random.nextInt(4) == 0) {
+                String[] parts = bookingIds.remove(random.nextInt(bookingIds.size())).split(":", 2);
+                roomService.release(Long.parseLong(parts[0]), parts[1]);
+            }
+        }
+
+        assertMatchesDatabase(random, 300);
+    }
+
+    @Test
+    void confirmRejectsKnownOverlapButStaysIdempotent() {
+        index.reload();
+        Room room = rooms.getFirst();
+        ConfirmAvailabilityRequest req = new ConfirmAvailabilityRequest(
+                BASE, BASE.plusDays(3), "idx-booking-" + UUID.randomUUID(), "idx-req-" + UUID.randomUUID());
+
+        roomService.confirmAvailability(room.getId(), req);
+        roomService.confirmAvailability(room.getId(), req);
+
+        ConfirmAvailabilityRequest other = new ConfirmAvailabilityRequest(
+                BASE.plusDays(1), BASE.plusDays(2), "idx-booking-" + UUID.randomUUID(), "idx-req-" + UUID.randomUUID());
+        assertThatThrownBy(() -> roomService.confirmAvailability(room.getId(), other))
+                .hasMessageContaining("not available");
+        assertThat(roomLockRepository.count()).isEqualTo(1);
+    }
+
+    /**
+     * Для каждого номера генерирую непересекающиеся блокировки — тот же инвариант, что держит confirmAvailability.
+     */
+    private void seedRandomLocks(Random random) {
+        List<RoomLock> locks = new ArrayList<>();
+        for (Room room : rooms) {
+            int day = random.nextInt(5);
+            while (day < HORIZON_DAYS) {
+                int length = 1 + random.nextInt(6);
+                if (random.nextBoolean()) {
+                    locks.add(new RoomLock(null, room, BASE.plusDays(day), BASE.plusDays(day + length),
+                            "rnd-booking-" + UUID.randomUUID(), "rnd-req-" + UUID.randomUUID()));
+                }
+                day += length + random.nextInt(4);
+            }
+        }
+        roomLockRepository.saveAll(locks);
+    }
+
+    private void assertMatchesDatabase(Random random, int queries) {
+        for (int i = 0; i < queries; i++) {
+            LocalDate start = BASE.plusDays(random.nextInt(HORIZON_DAYS + 10) - 5);
+            LocalDate end = start.plusDays(1 + random.nextInt(14));
+
+            for (Room room : rooms) {
+                boolean expected = !roomLockRepository.findOverlaps(room, start, end).isEmpty();
+                assertThat(index.hasOverlap(room.getId(), start, end))
+                        .as("room=%s, period=[%s, %s)", room.getId(), start, end)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+}
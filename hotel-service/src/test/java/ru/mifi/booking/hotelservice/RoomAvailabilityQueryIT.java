@@ -0,0 +1,197 @@
+package ru.mifi.booking.hotelservice;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.mifi.booking.hotelservice.dto.RoomCalendarDto;
+import ru.mifi.booking.hotelservice.dto.RoomDto;
+import ru.mifi.booking.hotelservice.entity.Hotel;
+import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.entity.RoomLock;
+import ru.mifi.booking.hotelservice.repository.HotelRepository;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.RoomService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверки поиска свободных номеров:
+ * <ul>
+ *     <li>listAvailable выполняется одним SQL-запросом независимо от числа номеров (нет N+1)</li>
+ *     <li>номера с пересекающейся блокировкой в выдачу не попадают</li>
+ *     <li>recommend с limit отдаёт top-K в порядке (timesBooked, id)</li>
+ *     <li>keyset-пагинация обходит все свободные номера по одному запросу на страницу, фильтры по отелю и адресу</li>
+ *     <li>календарь занятости отеля совпадает с поночной проверкой listAvailable</li>
+ * </ul>
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "hotel.availability.cache.enabled=false"
+})
+class RoomAvailabilityQueryIT {
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private RoomLockRepository roomLockRepository;
+
+    @Autowired
+    private HotelRepository hotelRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        roomLockRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void listAvailable_shouldExecuteSingleStatement() {
+        List<Room> rooms = roomRepository.findAllAvailable();
+        assertThat(rooms).hasSizeGreaterThan(1);
+
+        LocalDate start = LocalDate.now().plusDays(30);
+        LocalDate end = start.plusDays(2);
+
+        statistics.clear();
+        List<RoomDto> available = roomService.listAvailable(start, end);
+
+        assertThat(available).hasSize(rooms.size());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void listAvailable_shouldSkipRoomsWithOverlappingLock() {
+        Room locked = roomRepository.findAllAvailable().getFirst();
+
+        LocalDate start = LocalDate.now().plusDays(40);
+        LocalDate end = start.plusDays(3);
+
+        roomLockRepository.save(new RoomLock(null, locked, start.plusDays(1), end.plusDays(1),
+                "booking-" + UUID.randomUUID(), "req-" + UUID.randomUUID()));
+
+        List<Long> overlappingIds = roomService.listAvailable(start, end).stream().map(RoomDto::id).toList();
+        assertThat(overlappingIds).doesNotContain(locked.getId());
+
+        // Период, который заканчивается ровно в день начала блокировки, не пересекается с ней.
+        List<Long> adjacentIds = roomService.listAvailable(start.minusDays(2), start.plusDays(1)).stream()
+                .map(RoomDto::id)
+                .toList();
+        assertThat(adjacentIds).contains(locked.getId());
+    }
+
+    @Test
+    void recommend_withLimit_shouldReturnTopKInRecommendationOrder() {
+        LocalDate start = LocalDate.now().plusDays(50);
+        LocalDate end = start.plusDays(2);
+
+        List<RoomDto> all = roomService.recommend(start, end, null);
+        List<RoomDto> top = roomService.recommend(start, end, 2);
+
+        assertThat(all).isSortedAccordingTo(
+                Comparator.comparingLong(RoomDto::timesBooked).thenComparing(RoomDto::id));
+        assertThat(top).containsExactlyElementsOf(all.subList(0, 2));
+    }
+
+    @Test
+    void listAvailablePage_shouldWalkAllRoomsWithKeysetAndFilters() {
+        LocalDate start = LocalDate.now().plusDays(60);
+        LocalDate end = start.plusDays(2);
+        List<RoomDto> all = roomService.listAvailable(start, end);
+
+        List<RoomDto> walked = new ArrayList<>();
+        Long after = null;
+        while (true) {
+            statistics.clear();
+            List<RoomDto> page = roomService.listAvailablePage(start, end, after, 2, null, null);
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+            walked.addAll(page);
+            if (page.size() < 2) {
+                break;
+            }
+            after = page.getLast().id();
+        }
+        assertThat(walked).containsExactlyElementsOf(all);
+
+        Hotel kazan = hotelRepository.findAll().stream()
+                .filter(h -> h.getAddress().equals("Kazan"))
+                .findFirst()
+                .orElseThrow();
+
+        List<RoomDto> byAddress = roomService.listAvailablePage(start, end, null, 50, null, "Kaz");
+        List<RoomDto> byHotel = roomService.listAvailablePage(start, end, null, 50, kazan.getId(), null);
+
+        assertThat(byAddress).isNotEmpty().allMatch(r -> r.hotelId().equals(kazan.getId()));
+        assertThat(byHotel).containsExactlyElementsOf(byAddress);
+        assertThat(roomService.listAvailablePage(start, end, null, 50, null, "K%")).isEmpty();
+        assertThat(roomService.listAvailablePage(start, end, null, 50, kazan.getId(), "Kaz")).containsExactlyElementsOf(byHotel);
+        assertThat(roomService.listAvailablePage(start, end, null, 50, kazan.getId(), "Mos")).isEmpty();
+    }
+
+    @Test
+    void calendar_shouldMatchNightByNightAvailability() {
+        Hotel kazan = hotelRepository.findAll().stream()
+                .filter(h -> h.getAddress().equals("Kazan"))
+                .findFirst()
+                .orElseThrow();
+        Room locked = roomRepository.findAllByHotelId(kazan.getId()).getFirst();
+
+        LocalDate start = LocalDate.now().plusDays(70);
+        LocalDate end = start.plusDays(10);
+
+        // Одна блокировка начинается до окна, вторая внутри него.
+        roomLockRepository.save(new RoomLock(null, locked, start.minusDays(2), start.plusDays(2),
+                "booking-" + UUID.randomUUID(), "req-" + UUID.randomUUID()));
+        roomLockRepository.save(new RoomLock(null, locked, start.plusDays(5), start.plusDays(7),
+                "booking-" + UUID.randomUUID(), "req-" + UUID.randomUUID()));
+
+        statistics.clear();
+        List<RoomCalendarDto> calendar = roomService.calendar(kazan.getId(), start, end);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+
+        assertThat(calendar).extracting(RoomCalendarDto::roomId)
+                .containsExactlyInAnyOrderElementsOf(roomRepository.findAllByHotelId(kazan.getId()).stream()
+                        .map(Room::getId)
+                        .toList());
+
+        for (RoomCalendarDto room : calendar) {
+            assertThat(room.nights()).isEqualTo(10);
+            BitSet occupied = BitSet.valueOf(Base64.getDecoder().decode(room.occupied()));
+
+            for (int night = 0; night < room.nights(); night++) {
+                LocalDate day = start.plusDays(night);
+                boolean free = roomService.listAvailable(day, day.plusDays(1)).stream()
+                        .anyMatch(r -> r.id().equals(room.roomId()));
+                assertThat(occupied.get(night)).as("room %d night %s", room.roomId(), day).isEqualTo(room.available() && !free);
+            }
+        }
+        assertThat(calendar).filteredOn(r -> r.roomId().equals(locked.getId()))
+                .singleElement()
+                .extracting(RoomCalendarDto::occupied)
+                .isNotEqualTo("");
+    }
+}
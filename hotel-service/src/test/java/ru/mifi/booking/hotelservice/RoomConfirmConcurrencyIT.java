@@ -6,13 +6,21 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors;
 import org.springframework.test.web.servlet.MockMvc;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityBatchRequest;
 import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.dto.RoomOperationsRequest;
+import ru.mifi.booking.hotelservice.entity.LockStatus;
 import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.entity.RoomLock;
 import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
 import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.HoldSweeper;
+import ru.mifi.booking.hotelservice.service.TimesBookedCounter;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,9 +29,11 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -31,6 +41,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * <ul>
  *     <li>конкурентный confirm-availability (5 параллельных запросов) — ровно один успех, остальные 409</li>
  *     <li>идемпотентность confirm-availability по requestId</li>
+ *     <li>bookingId/requestId хранятся нативным UUID, поиск работает и для не-UUID значений</li>
+ *     <li>конкурентный reserve (autoSelect) — все запросы получают разные номера без 409</li>
+ *     <li>reserve-шторм сверх окна кандидатов и инвентаря — заняты все номера, лишним 409, повтор идемпотентен</li>
  * </ul>
  */
 @SpringBootTest(properties = {
@@ -52,6 +65,15 @@ class RoomConfirmConcurrencyIT {
     @Autowired
     private RoomLockRepository roomLockRepository;
 
+    @Autowired
+    private TimesBookedCounter timesBookedCounter;
+
+    @Autowired
+    private HoldSweeper holdSweeper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     private Long roomId;
 
     @BeforeEach
@@ -62,8 +84,11 @@ class RoomConfirmConcurrencyIT {
 
         this.roomId = room.getId();
 
-        // Чистим блокировки и статистику, чтобы тесты были независимыми.
+        // Чистим блокировки и статистику, чтобы тесты были независимыми. Дельты timesBooked прошлых тестов
+        // сначала сбрасываю в БД, иначе flush в проверке допишет их поверх обнулённого счётчика.
         roomLockRepository.deleteAll();
+        timesBookedCounter.flush();
+        room = roomRepository.findById(room.getId()).orElseThrow();
         room.setTimesBooked(0);
         roomRepository.saveAndFlush(room);
     }
@@ -122,6 +147,138 @@ class RoomConfirmConcurrencyIT {
         assertThat(roomLockRepository.count()).isEqualTo(1);
     }
 
+    @Test
+    void concurrentReserve_shouldPlaceEachRequestIntoDifferentRoom() throws Exception {
+        LocalDate start = LocalDate.now().plusDays(20);
+        LocalDate end = LocalDate.now().plusDays(22);
+
+        // Кандидатов в reserve перебирается не больше hotel.reserve.candidates (по умолчанию 5).
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            ConfirmAvailabilityRequest body = new ConfirmAvailabilityRequest(
+                    start, end, "booking-reserve-" + i + "-" + UUID.randomUUID(), "req-reserve-" + i + "-" + UUID.randomUUID());
+
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    startLatch.await();
+                    return mockMvc.perform(
+                                    post("/api/rooms/reserve")
+                                            .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                            .contentType("application/json")
+                                            .content(objectMapper.writeValueAsString(body))
+                            )
+                            .andExpect(status().isOk())
+                            .andReturn()
+                            .getResponse()
+                            .getContentAsString();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, pool));
+        }
+
+        startLatch.countDown();
+        List<Long> roomIds = futures.stream()
+                .map(CompletableFuture::join)
+                .map(json -> {
+                    try {
+                        return objectMapper.readTree(json).get("id").asLong();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .toList();
+        pool.shutdownNow();
+
+        assertThat(roomIds).doesNotHaveDuplicates().hasSize(threads);
+        assertThat(roomLockRepository.count()).isEqualTo(threads);
+    }
+
+    @Test
+    void reserveStorm_moreThreadsThanCandidates_shouldFillWholeInventory_thenConflict() throws Exception {
+        LocalDate start = LocalDate.now().plusDays(60);
+        LocalDate end = LocalDate.now().plusDays(62);
+
+        // Потоков больше, чем окно кандидатов (hotel.reserve.candidates = 5) и чем свободных номеров:
+        // все номера должны разойтись по разным запросам, лишние — честный 409, без deadlock и 500.
+        int rooms = roomRepository.findAllAvailable().size();
+        assertThat(rooms).isGreaterThan(5);
+        int threads = rooms + 3;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+
+        List<CompletableFuture<String[]>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            ConfirmAvailabilityRequest body = new ConfirmAvailabilityRequest(
+                    start, end, "booking-reserve-storm-" + i + "-" + UUID.randomUUID(),
+                    "req-reserve-storm-" + i + "-" + UUID.randomUUID());
+
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    startLatch.await();
+                    var response = mockMvc.perform(
+                                    post("/api/rooms/reserve")
+                                            .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                            .contentType("application/json")
+                                            .content(objectMapper.writeValueAsString(body))
+                            )
+                            .andReturn()
+                            .getResponse();
+                    return new String[]{String.valueOf(response.getStatus()), response.getContentAsString()};
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, pool));
+        }
+
+        startLatch.countDown();
+        List<String[]> results = futures.stream()
+                .map(f -> f.orTimeout(30, TimeUnit.SECONDS).join())
+                .toList();
+        pool.shutdownNow();
+
+        List<Long> roomIds = new ArrayList<>();
+        for (String[] result : results) {
+            if ("200".equals(result[0])) {
+                roomIds.add(objectMapper.readTree(result[1]).get("id").asLong());
+            }
+        }
+        assertThat(roomIds).doesNotHaveDuplicates().hasSize(rooms);
+        assertThat(results).filteredOn(r -> "409".equals(r[0])).hasSize(threads - rooms);
+        assertThat(roomLockRepository.count()).isEqualTo(rooms);
+    }
+
+    @Test
+    void reserveShouldBeIdempotentByRequestId() throws Exception {
+        LocalDate start = LocalDate.now().plusDays(70);
+        LocalDate end = LocalDate.now().plusDays(71);
+        ConfirmAvailabilityRequest body = new ConfirmAvailabilityRequest(
+                start, end, "booking-reserve-idem-" + UUID.randomUUID(), "req-reserve-idem-" + UUID.randomUUID());
+
+        List<Long> roomIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            String json = mockMvc.perform(
+                            post("/api/rooms/reserve")
+                                    .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                    .contentType("application/json")
+                                    .content(objectMapper.writeValueAsString(body))
+                    )
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            roomIds.add(objectMapper.readTree(json).get("id").asLong());
+        }
+
+        assertThat(roomIds.get(1)).isEqualTo(roomIds.get(0));
+        assertThat(roomLockRepository.count()).isEqualTo(1);
+    }
+
     @Test
     void confirmShouldBeIdempotentByRequestId() throws Exception {
         LocalDate start = LocalDate.now().plusDays(10);
@@ -150,8 +307,170 @@ class RoomConfirmConcurrencyIT {
                 )
                 .andExpect(status().isOk());
 
+        // timesBooked пишется в БД отложенно — сбрасываю накопленную дельту перед проверкой.
+        timesBookedCounter.flush();
         Room roomAfter = roomRepository.findById(roomId).orElseThrow();
         assertThat(roomAfter.getTimesBooked()).isEqualTo(1);
         assertThat(roomLockRepository.count()).isEqualTo(1);
     }
+
+    @Test
+    void lockIds_shouldBeStoredAsUuid_andFoundByOriginalValue() throws Exception {
+        LocalDate start = LocalDate.now().plusDays(20);
+        LocalDate end = LocalDate.now().plusDays(22);
+
+        UUID requestUuid = UUID.randomUUID();
+        String bookingId = "legacy-booking-" + UUID.randomUUID();
+        ConfirmAvailabilityRequest body = new ConfirmAvailabilityRequest(
+                start, end, bookingId, requestUuid.toString().toUpperCase());
+
+        mockMvc.perform(
+                        post("/api/rooms/{id}/confirm-availability", roomId)
+                                .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                .contentType("application/json")
+                                .content(objectMapper.writeValueAsString(body))
+                )
+                .andExpect(status().isOk());
+
+        assertThat(jdbcTemplate.queryForList("""
+                select data_type from information_schema.columns
+                where lower(table_name) = 'room_locks' and lower(column_name) in ('booking_id', 'request_id')
+                """, String.class)).containsOnly("UUID");
+
+        // UUID в любом регистре — тот же ключ; не-UUID строка находится по исходному значению.
+        RoomLock lock = roomLockRepository.findByRequestId(requestUuid.toString()).orElseThrow();
+        assertThat(lock.getRequestId()).isEqualTo(requestUuid.toString());
+        assertThat(roomLockRepository.findByBookingId(bookingId)).get()
+                .extracting(RoomLock::getId)
+                .isEqualTo(lock.getId());
+    }
+
+    @Test
+    void confirmBatch_shouldBeAllOrNothing_andIdempotent() throws Exception {
+        List<Room> rooms = roomRepository.findAllAvailable().stream().limit(3).toList();
+        assertThat(rooms).hasSize(3);
+
+        LocalDate start = LocalDate.now().plusDays(20);
+        LocalDate end = LocalDate.now().plusDays(23);
+
+        // Третий номер уже занят одиночным confirm.
+        mockMvc.perform(
+                        post("/api/rooms/{id}/confirm-availability", rooms.get(2).getId())
+                                .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                .contentType("application/json")
+                                .content(objectMapper.writeValueAsString(new ConfirmAvailabilityRequest(
+                                        start, end, "booking-single-" + UUID.randomUUID(), "req-single-" + UUID.randomUUID())))
+                )
+                .andExpect(status().isOk());
+
+        // Группа из всех трёх — 409, и ни одна блокировка группы не остаётся.
+        ConfirmAvailabilityBatchRequest conflicting = new ConfirmAvailabilityBatchRequest(rooms.stream()
+                .map(r -> new ConfirmAvailabilityBatchRequest.Item(r.getId(), start, end,
+                        "booking-group-" + UUID.randomUUID(), "req-group-" + UUID.randomUUID()))
+                .toList());
+        mockMvc.perform(
+                        post("/api/rooms/confirm-availability/batch")
+                                .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                .contentType("application/json")
+                                .content(objectMapper.writeValueAsString(conflicting))
+                )
+                .andExpect(status().isConflict());
+        assertThat(roomLockRepository.count()).isEqualTo(1);
+
+        // Группа из двух свободных (в обратном порядке id) — обе блокировки; повтор — тот же результат.
+        ConfirmAvailabilityBatchRequest free = new ConfirmAvailabilityBatchRequest(List.of(
+                new ConfirmAvailabilityBatchRequest.Item(rooms.get(1).getId(), start, end,
+                        "booking-group-" + UUID.randomUUID(), "req-group-" + UUID.randomUUID()),
+                new ConfirmAvailabilityBatchRequest.Item(rooms.get(0).getId(), start, end,
+                        "booking-group-" + UUID.randomUUID(), "req-group-" + UUID.randomUUID())
+        ));
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(
+                            post("/api/rooms/confirm-availability/batch")
+                                    .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                    .contentType("application/json")
+                                    .content(objectMapper.writeValueAsString(free))
+                    )
+                    .andExpect(status().isOk());
+        }
+        assertThat(roomLockRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void operations_shouldReturnPerItemStatuses() throws Exception {
+        LocalDate start = LocalDate.now().plusDays(30);
+        LocalDate end = LocalDate.now().plusDays(32);
+        String bookingId = "booking-op-" + UUID.randomUUID();
+
+        RoomOperationsRequest body = new RoomOperationsRequest(List.of(
+                new RoomOperationsRequest.Operation(RoomOperationsRequest.Type.CONFIRM, roomId, start, end,
+                        bookingId, "req-op-" + UUID.randomUUID(), "rq-op-1"),
+                new RoomOperationsRequest.Operation(RoomOperationsRequest.Type.CONFIRM, roomId, start, end,
+                        "booking-op-" + UUID.randomUUID(), "req-op-" + UUID.randomUUID(), "rq-op-2"),
+                new RoomOperationsRequest.Operation(RoomOperationsRequest.Type.CONFIRM, Long.MAX_VALUE, start, end,
+                        "booking-op-" + UUID.randomUUID(), "req-op-" + UUID.randomUUID(), null),
+                // release через пачку идёт в своей транзакции (дневная загрузка требует MANDATORY)
+                new RoomOperationsRequest.Operation(RoomOperationsRequest.Type.RELEASE, roomId, null, null,
+                        bookingId, null, "rq-op-1")
+        ));
+
+        mockMvc.perform(
+                        post("/api/rooms/operations")
+                                .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                .contentType("application/json")
+                                .content(objectMapper.writeValueAsString(body))
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value(200))
+                .andExpect(jsonPath("$[1].status").value(409))
+                .andExpect(jsonPath("$[2].status").value(404))
+                .andExpect(jsonPath("$[3].status").value(200));
+
+        assertThat(roomLockRepository.count()).isZero();
+    }
+
+    @Test
+    void expiredHold_shouldBeSwept_committedHoldShouldStay() throws Exception {
+        LocalDate start = LocalDate.now().plusDays(50);
+        String expiredBooking = "booking-hold-" + UUID.randomUUID();
+        String committedBooking = "booking-hold-" + UUID.randomUUID();
+
+        for (String bookingId : List.of(expiredBooking, committedBooking)) {
+            LocalDate from = bookingId.equals(expiredBooking) ? start : start.plusDays(5);
+            mockMvc.perform(
+                            post("/api/rooms/{id}/confirm-availability", roomId)
+                                    .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                    .contentType("application/json")
+                                    .content(objectMapper.writeValueAsString(new ConfirmAvailabilityRequest(
+                                            from, from.plusDays(2), bookingId, "req-hold-" + UUID.randomUUID())))
+                    )
+                    .andExpect(status().isOk());
+        }
+
+        mockMvc.perform(
+                        post("/api/rooms/commit")
+                                .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                .param("bookingId", committedBooking)
+                )
+                .andExpect(status().isOk());
+
+        // Сага первой брони «упала»: срок удержания истёк.
+        RoomLock held = roomLockRepository.findByBookingId(expiredBooking).orElseThrow();
+        assertThat(held.getStatus()).isEqualTo(LockStatus.HELD);
+        held.setExpiresAt(Instant.now().minusSeconds(1));
+        roomLockRepository.saveAndFlush(held);
+
+        assertThat(holdSweeper.sweep()).isEqualTo(1);
+        assertThat(roomLockRepository.findByBookingId(expiredBooking)).isEmpty();
+        assertThat(roomLockRepository.findByBookingId(committedBooking)).get()
+                .extracting(RoomLock::getStatus).isEqualTo(LockStatus.COMMITTED);
+
+        // Подтверждение истёкшего удержания — 404.
+        mockMvc.perform(
+                        post("/api/rooms/commit")
+                                .with(SecurityMockMvcRequestPostProcessors.user("svc").roles("SERVICE"))
+                                .param("bookingId", expiredBooking)
+                )
+                .andExpect(status().isNotFound());
+    }
 }
@@ -0,0 +1,210 @@
+package ru.mifi.booking.hotelservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.mifi.booking.hotelservice.dto.ConfirmAvailabilityRequest;
+import ru.mifi.booking.hotelservice.dto.RoomStatsDto;
+import ru.mifi.booking.hotelservice.entity.Hotel;
+import ru.mifi.booking.hotelservice.entity.Room;
+import ru.mifi.booking.hotelservice.entity.RoomLock;
+import ru.mifi.booking.hotelservice.repository.HotelRepository;
+import ru.mifi.booking.hotelservice.repository.RoomLockRepository;
+import ru.mifi.booking.hotelservice.repository.RoomRepository;
+import ru.mifi.booking.hotelservice.service.RoomService;
+import ru.mifi.booking.hotelservice.service.TimesBookedCounter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверки статистики номеров:
+ * <ul>
+ *     <li>агрегирующий запрос совпадает с эталонным подсчётом в Java по всем блокировкам отеля
+ *     (пересечения с границами периода, блокировки вне периода, номера без блокировок)</li>
+ *     <li>потоковая выгрузка NDJSON/CSV по всей сети совпадает с постраничной статистикой по отелям</li>
+ *     <li>write-behind счётчик timesBooked не держит аккумуляторы сброшенных и удалённых номеров</li>
+ * </ul>
+ */
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.enabled=false"
+})
+@AutoConfigureMockMvc
+class RoomStatsIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private RoomLockRepository roomLockRepository;
+
+    @Autowired
+    private HotelRepository hotelRepository;
+
+    @Autowired
+    private TimesBookedCounter timesBookedCounter;
+
+    @BeforeEach
+    void setUp() {
+        roomLockRepository.deleteAll();
+        // эталон читает timesBooked из БД — дельты других тестов сбрасываю заранее
+        timesBookedCounter.flush();
+    }
+
+    @Test
+    void stats_shouldMatchJavaReference() {
+        Hotel hotel = hotelRepository.findAll().getFirst();
+        List<Room> rooms = roomRepository.findAllByHotelId(hotel.getId());
+        assertThat(rooms).hasSizeGreaterThan(1);
+
+        LocalDate start = LocalDate.now().plusDays(100);
+        LocalDate end = start.plusDays(30);
+
+        // Первый номер оставляю без блокировок, остальным раздаю непересекающиеся блокировки вокруг периода.
+        Random random = new Random(42);
+        for (Room room : rooms.subList(1, rooms.size())) {
+            LocalDate cursor = start.minusDays(10);
+            while (cursor.isBefore(end.plusDays(10))) {
+                LocalDate lockStart = cursor.plusDays(random.nextInt(4));
+                LocalDate lockEnd = lockStart.plusDays(1 + random.nextInt(6));
+                roomLockRepository.save(new RoomLock(null, room, lockStart, lockEnd,
+                        "booking-" + UUID.randomUUID(), "req-" + UUID.randomUUID()));
+                cursor = lockEnd;
+            }
+        }
+
+        List<RoomStatsDto> stats = roomService.stats(hotel.getId(), start, end);
+
+        List<RoomLock> locks = roomLockRepository.findAll();
+        List<RoomStatsDto> expected = rooms.stream()
+                .sorted(Comparator.comparingLong(Room::getId))
+                .map(room -> {
+                    List<RoomLock> overlapping = locks.stream()
+                            .filter(l -> l.getRoom().getId().equals(room.getId()))
+                            .filter(l -> l.getStartDate().isBefore(end) && l.getEndDate().isAfter(start))
+                            .toList();
+                    long bookedDays = overlapping.stream()
+                            .mapToLong(l -> ChronoUnit.DAYS.between(
+                                    l.getStartDate().isAfter(start) ? l.getStartDate() : start,
+                                    l.getEndDate().isBefore(end) ? l.getEndDate() : end))
+                            .sum();
+                    return new RoomStatsDto(room.getId(), hotel.getId(), room.getNumber(), room.getTimesBooked(),
+                            overlapping.size(), bookedDays);
+                })
+                .toList();
+
+        assertThat(stats).containsExactlyElementsOf(expected);
+        assertThat(stats.getFirst().locksCountInRange()).isZero();
+        assertThat(stats.getFirst().bookedDaysInRange()).isZero();
+        assertThat(stats).anyMatch(s -> s.bookedDaysInRange() > 0);
+    }
+
+    @Test
+    void timesBookedCounter_shouldPruneFlushedRooms_andForgetDeletedOnes() {
+        Hotel hotel = hotelRepository.save(new Hotel(null, "Counter " + UUID.randomUUID(), "Somewhere"));
+        Long kept = roomService.addRoom(hotel, "TB-1", true).id();
+        Long deleted = roomService.addRoom(hotel, "TB-2", true).id();
+        assertThat(timesBookedCounter.pendingRooms()).isZero();
+
+        LocalDate start = LocalDate.now().plusDays(300);
+        for (Long roomId : List.of(kept, deleted)) {
+            roomService.confirmAvailability(roomId, new ConfirmAvailabilityRequest(
+                    start, start.plusDays(2), "booking-" + UUID.randomUUID(), "req-" + UUID.randomUUID()));
+        }
+        assertThat(timesBookedCounter.pendingRooms()).isEqualTo(2);
+        assertThat(timesBookedCounter.live(deleted, 0)).isEqualTo(1);
+
+        // Удалённый номер выпадает из аккумуляторов сразу, не дожидаясь сброса.
+        roomService.delete(deleted);
+        assertThat(timesBookedCounter.pendingRooms()).isEqualTo(1);
+        assertThat(timesBookedCounter.live(deleted, 0)).isZero();
+
+        // После сброса дельта уже в БД, обнулившийся аккумулятор не остаётся в памяти.
+        timesBookedCounter.flush();
+        assertThat(timesBookedCounter.pendingRooms()).isZero();
+        assertThat(roomRepository.findById(kept).orElseThrow().getTimesBooked()).isEqualTo(1);
+    }
+
+    @Test
+    void export_shouldStreamStatsOfAllHotels() throws Exception {
+        LocalDate start = LocalDate.now().plusDays(100);
+        LocalDate end = start.plusDays(30);
+
+        Room room = roomRepository.findAll().getFirst();
+        roomLockRepository.save(new RoomLock(null, room, start.plusDays(3), start.plusDays(8),
+                "booking-" + UUID.randomUUID(), "req-" + UUID.randomUUID()));
+
+        List<RoomStatsDto> expected = hotelRepository.findAll().stream()
+                .sorted(Comparator.comparingLong(Hotel::getId))
+                .flatMap(h -> roomService.stats(h.getId(), start, end).stream())
+                .toList();
+
+        String ndjson = export(start, end, "ndjson", "application/x-ndjson");
+        List<RoomStatsDto> parsed = new ArrayList<>();
+        for (String line : ndjson.split("\n")) {
+            parsed.add(objectMapper.readValue(line, RoomStatsDto.class));
+        }
+        assertThat(parsed).containsExactlyElementsOf(expected);
+        assertThat(parsed).anyMatch(s -> s.roomId().equals(room.getId()) && s.bookedDaysInRange() == 5);
+
+        String[] csv = export(start, end, "csv", "text/csv").split("\n");
+        assertThat(csv[0]).isEqualTo("hotelId,roomId,number,timesBooked,locksCountInRange,bookedDaysInRange");
+        assertThat(csv).hasSize(expected.size() + 1);
+        RoomStatsDto first = expected.getFirst();
+        assertThat(csv[1]).isEqualTo(first.hotelId() + "," + first.roomId() + "," + first.number() + ","
+                + first.timesBooked() + "," + first.locksCountInRange() + "," + first.bookedDaysInRange());
+
+        mockMvc.perform(get("/api/rooms/stats/export")
+                        .with(SecurityMockMvcRequestPostProcessors.user("1").roles("ADMIN"))
+                        .param("start", start.toString())
+                        .param("end", end.toString())
+                        .param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private String export(LocalDate start, LocalDate end, String format, String contentType) throws Exception {
+        MvcResult started = mockMvc.perform(get("/api/rooms/stats/export")
+                        .with(SecurityMockMvcRequestPostProcessors.user("1").roles("ADMIN"))
+                        .param("start", start.toString())
+                        .param("end", end.toString())
+                        .param("format", format))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(contentType))
+                .andReturn()
+                .getResponse()
+                .getContentAsString(StandardCharsets.UTF_8);
+    }
+}